@@ -0,0 +1,159 @@
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Counts the votes in a binary ballot file of little-endian 32-bit candidate identifiers.
+ * The file is memory-mapped rather than read onto the heap, so its size is limited only by the
+ * address space. A single mapping cannot exceed 2 GB, so larger files are mapped as a series of
+ * chunks and each chunk is counted through an {@link IntBuffer} view of its mapping.
+ */
+public class BallotFileReader {
+
+    /**
+     * The byte order of the candidate identifiers in a ballot file. Streams of ballots, as read by
+     * {@link VoteTally#addAll(java.io.InputStream)}, use the same order.
+     */
+    public static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    /**
+     * The default size of each mapped chunk, in bytes.
+     */
+    public static final long DEFAULT_CHUNK_BYTES = 1L << 30;
+
+    // Parallel counts split the file into at least this many chunks per worker
+    private static final int CHUNKS_PER_WORKER = 4;
+
+    // Parallel counts never map chunks smaller than this
+    private static final long MIN_PARALLEL_CHUNK_BYTES = 1L << 20;
+
+    private final Path file;
+    private final long chunkBytes;
+
+    /**
+     * Creates a reader for a ballot file using the default chunk size.
+     *
+     * @param file the ballot file to read
+     */
+    public BallotFileReader(Path file) {
+        this(file, DEFAULT_CHUNK_BYTES);
+    }
+
+    /**
+     * Creates a reader for a ballot file using the given chunk size.
+     *
+     * @param file the ballot file to read
+     * @param chunkBytes the largest number of bytes to map at once, a positive multiple of 4 below 2 GB
+     */
+    public BallotFileReader(Path file, long chunkBytes) {
+        if (chunkBytes <= 0 || chunkBytes % Integer.BYTES != 0 || chunkBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("chunkBytes must be a positive multiple of 4 below 2 GB");
+        }
+        this.file = file;
+        this.chunkBytes = chunkBytes;
+    }
+
+    /**
+     * Counts every vote in the file on the calling thread, one chunk at a time.
+     *
+     * @return a tally of the votes in the file
+     * @throws IOException if the file cannot be read or its length is not a multiple of 4
+     */
+    public VoteTally tally() throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long length = checkedLength(channel);
+            VoteTally tally = new VoteTally();
+            for (long position = 0; position < length; position += chunkBytes) {
+                tally.addAll(map(channel, position, Math.min(chunkBytes, length - position)));
+            }
+            return tally;
+        }
+    }
+
+    /**
+     * Counts every vote in the file on the common fork/join pool. The file is cut into chunks
+     * small enough to keep every worker busy, each chunk is counted into its own tally, and the
+     * partial tallies are merged.
+     *
+     * @return a tally of the votes in the file
+     * @throws IOException if the file cannot be read or its length is not a multiple of 4
+     */
+    public VoteTally tallyParallel() throws IOException {
+        return tallyParallel(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Counts every vote in the file in the given pool.
+     *
+     * @param pool the pool to count the chunks in
+     * @return a tally of the votes in the file
+     * @throws IOException if the file cannot be read or its length is not a multiple of 4
+     */
+    public VoteTally tallyParallel(ForkJoinPool pool) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long length = checkedLength(channel);
+            long target = length / ((long) pool.getParallelism() * CHUNKS_PER_WORKER);
+            long size = Math.min(chunkBytes, Math.max(MIN_PARALLEL_CHUNK_BYTES, target & ~3L));
+            List<IntBuffer> chunks = new ArrayList<>();
+            for (long position = 0; position < length; position += size) {
+                chunks.add(map(channel, position, Math.min(size, length - position)));
+            }
+            if (chunks.isEmpty()) {
+                return new VoteTally();
+            }
+            return pool.invoke(new ChunkTask(chunks, 0, chunks.size()));
+        }
+    }
+
+    /**
+     * A fork/join task that counts a range of mapped chunks.
+     */
+    private static class ChunkTask extends RecursiveTask<VoteTally> {
+        private final List<IntBuffer> chunks;
+        private final int from;
+        private final int to;
+
+        ChunkTask(List<IntBuffer> chunks, int from, int to) {
+            this.chunks = chunks;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected VoteTally compute() {
+            if (to - from == 1) {
+                VoteTally tally = new VoteTally();
+                tally.addAll(chunks.get(from));
+                return tally;
+            }
+            int mid = (from + to) >>> 1;
+            ChunkTask left = new ChunkTask(chunks, from, mid);
+            left.fork();
+            VoteTally merged = new ChunkTask(chunks, mid, to).compute();
+            merged.merge(left.join());
+            return merged;
+        }
+    }
+
+    // Maps part of the file and returns a little-endian view of its votes
+    private static IntBuffer map(FileChannel channel, long position, long size) throws IOException {
+        MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+        return mapped.order(BYTE_ORDER).asIntBuffer();
+    }
+
+    private long checkedLength(FileChannel channel) throws IOException {
+        long length = channel.size();
+        if (length % Integer.BYTES != 0) {
+            throw new IOException(file + " is " + length + " bytes, which is not a whole number of votes");
+        }
+        return length;
+    }
+}
@@ -0,0 +1,90 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Key sequences shared by the benchmarks. Every sequence draws from the keys 0 to n - 1, and
+ * the popular keys of the skewed sequences are scattered over that range rather than clustered
+ * at its start, so that they do not all sit in one corner of a tree.
+ */
+final class BenchmarkKeys {
+
+    private BenchmarkKeys() {
+    }
+
+    /**
+     * Returns the keys 0 to n - 1 in order.
+     *
+     * @param n the number of keys
+     * @return the keys in ascending order
+     */
+    static Integer[] sequential(int n) {
+        Integer[] keys = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = i;
+        }
+        return keys;
+    }
+
+    /**
+     * Returns the keys 0 to n - 1 in random order.
+     *
+     * @param n the number of keys
+     * @param random the source of randomness
+     * @return the keys, shuffled
+     */
+    static Integer[] shuffled(int n, Random random) {
+        Integer[] keys = sequential(n);
+        for (int i = n - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            Integer t = keys[i];
+            keys[i] = keys[j];
+            keys[j] = t;
+        }
+        return keys;
+    }
+
+    /**
+     * Returns n keys drawn from 0 to n - 1, where the key of popularity rank r is drawn with
+     * probability proportional to 1 / r^exponent.
+     *
+     * @param n the number of keys to draw, and of distinct keys to draw from
+     * @param exponent the skew of the distribution; 0 is uniform, and larger is more skewed
+     * @param random the source of randomness
+     * @return the keys drawn
+     */
+    static Integer[] zipf(int n, double exponent, Random random) {
+        double[] cumulative = new double[n];
+        double total = 0;
+        for (int rank = 0; rank < n; rank++) {
+            total += 1 / Math.pow(rank + 1, exponent);
+            cumulative[rank] = total;
+        }
+        Integer[] byRank = shuffled(n, random);
+        Integer[] keys = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            int rank = Arrays.binarySearch(cumulative, random.nextDouble() * total);
+            keys[i] = byRank[Math.min(n - 1, rank < 0 ? -rank - 1 : rank)];
+        }
+        return keys;
+    }
+
+    /**
+     * Returns n keys drawn from 0 to n - 1, where a random set of hot keys takes a fixed share of
+     * the draws and the rest are uniform over all the keys.
+     *
+     * @param n the number of keys to draw, and of distinct keys to draw from
+     * @param hotKeys the fraction of the keys that are hot
+     * @param hotDraws the fraction of the draws that go to the hot keys
+     * @param random the source of randomness
+     * @return the keys drawn
+     */
+    static Integer[] hotSet(int n, double hotKeys, double hotDraws, Random random) {
+        Integer[] byHeat = shuffled(n, random);
+        int hot = Math.max(1, (int) (n * hotKeys));
+        Integer[] keys = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = random.nextDouble() < hotDraws ? byHeat[random.nextInt(hot)] : byHeat[random.nextInt(n)];
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,120 @@
+import java.util.Random;
+import java.util.function.Supplier;
+import question_1.RestructureableNodeBinaryTree;
+import question_1.RestructureableNodeBinaryTree.Policy;
+import question_2.AVLTreeMap;
+
+/**
+ * A benchmark of {@link RestructureableNodeBinaryTree} under each of its policies, against
+ * {@link AVLTreeMap}, so that the policies can be chosen per workload: the balancing policies
+ * trade the cost of keeping balance on writes against shorter paths on reads, and the splaying
+ * ones adapt to skewed lookups. Each round inserts every key in random order, then looks keys up
+ * from three distributions, then deletes every key in random order. The lookups draw keys from a
+ * Zipf distribution, from a hot set where 5% of the keys take 90% of the lookups, and uniformly.
+ */
+public class BinaryTreeBenchmark {
+
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int MEASURED_ROUNDS = 5;
+    private static final double ZIPF_EXPONENT = 0.99;
+    private static final double HOT_KEYS = 0.05;
+    private static final double HOT_LOOKUPS = 0.9;
+    private static final String[] OPERATIONS = {"insert", "find zipf", "find hot5%", "find uniform", "delete"};
+
+    // Written by every case so the JIT cannot discard the work being timed
+    private static long sink;
+
+    /**
+     * The operations a benchmark round times, implemented once for each kind of tree.
+     */
+    private interface Subject {
+        void insert(Integer key);
+
+        boolean find(Integer key);
+
+        void delete(Integer key);
+    }
+
+    /**
+     * Runs every benchmark case.
+     *
+     * @param args an optional comma-separated list of tree sizes, 10K to 1M by default
+     */
+    public static void main(String[] args) {
+        String sizes = args.length > 0 ? args[0] : "10000,100000,1000000";
+        System.out.printf("%-26s %-10s %-14s %12s%n", "tree", "size", "op", "ns/op");
+        for (String size : sizes.split(",")) {
+            int n = Integer.parseInt(size.trim());
+            Random random = new Random(n);
+            Integer[][] keys = {
+                BenchmarkKeys.shuffled(n, random),
+                BenchmarkKeys.zipf(n, ZIPF_EXPONENT, random),
+                BenchmarkKeys.hotSet(n, HOT_KEYS, HOT_LOOKUPS, random),
+                BenchmarkKeys.shuffled(n, random),
+                BenchmarkKeys.shuffled(n, random)
+            };
+            for (Policy policy : Policy.values()) {
+                run("BinaryTree " + policy.name().toLowerCase(), n, keys, () -> {
+                    RestructureableNodeBinaryTree<Integer> tree = new RestructureableNodeBinaryTree<>(policy);
+                    return new Subject() {
+                        public void insert(Integer key) {
+                            tree.insert(key);
+                        }
+
+                        public boolean find(Integer key) {
+                            return tree.find(key) != null;
+                        }
+
+                        public void delete(Integer key) {
+                            tree.delete(key);
+                        }
+                    };
+                });
+            }
+            run("AVLTreeMap", n, keys, () -> {
+                AVLTreeMap<Integer, Integer> map = new AVLTreeMap<>();
+                return new Subject() {
+                    public void insert(Integer key) {
+                        map.put(key, key);
+                    }
+
+                    public boolean find(Integer key) {
+                        return map.get(key) != null;
+                    }
+
+                    public void delete(Integer key) {
+                        map.remove(key);
+                    }
+                };
+            });
+        }
+        System.out.println("(checksum " + sink + ")");
+    }
+
+    // Warms up and then measures every operation on one kind of tree
+    private static void run(String name, int n, Integer[][] keys, Supplier<Subject> factory) {
+        long[] nanos = new long[OPERATIONS.length];
+        for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; round++) {
+            Subject subject = factory.get();
+            for (int op = 0; op < OPERATIONS.length; op++) {
+                long start = System.nanoTime();
+                for (Integer key : keys[op]) {
+                    if (op == 0) {
+                        subject.insert(key);
+                    } else if (op == OPERATIONS.length - 1) {
+                        subject.delete(key);
+                    } else {
+                        sink += subject.find(key) ? 1 : 0;
+                    }
+                }
+                if (round >= WARMUP_ROUNDS) {
+                    nanos[op] += System.nanoTime() - start;
+                }
+            }
+        }
+        for (int op = 0; op < OPERATIONS.length; op++) {
+            System.out.printf("%-26s %-10d %-14s %12.1f%n", name, n, OPERATIONS[op],
+                    (double) nanos[op] / ((long) MEASURED_ROUNDS * keys[op].length));
+        }
+    }
+}
@@ -0,0 +1,98 @@
+import java.util.Arrays;
+
+/**
+ * The leading candidates of an election and their vote counts, best first.
+ * Candidates with equal counts are ordered by identifier, lowest first. The ranking is held in
+ * two parallel primitive arrays, so building and reading it boxes nothing.
+ */
+public final class CandidateRanking {
+
+    private final int[] candidates;
+    private final long[] votes;
+
+    /**
+     * Creates a ranking from parallel arrays that are already in rank order.
+     *
+     * @param candidates the candidate identifiers, best first
+     * @param votes the vote count of each candidate
+     */
+    CandidateRanking(int[] candidates, long[] votes) {
+        this.candidates = candidates;
+        this.votes = votes;
+    }
+
+    /**
+     * Returns the number of candidates in this ranking.
+     *
+     * @return the number of candidates in this ranking
+     */
+    public int size() {
+        return candidates.length;
+    }
+
+    /**
+     * Returns the candidate at the given rank.
+     *
+     * @param rank the rank, where 0 is the winner
+     * @return the identifier of the candidate at that rank
+     * @throws IndexOutOfBoundsException if the rank is not less than {@link #size()}
+     */
+    public int candidate(int rank) {
+        return candidates[rank];
+    }
+
+    /**
+     * Returns the number of votes received by the candidate at the given rank.
+     *
+     * @param rank the rank, where 0 is the winner
+     * @return the vote count of the candidate at that rank
+     * @throws IndexOutOfBoundsException if the rank is not less than {@link #size()}
+     */
+    public long votes(int rank) {
+        return votes[rank];
+    }
+
+    /**
+     * Returns a copy of the ranked candidate identifiers, best first.
+     *
+     * @return the candidate identifiers in rank order
+     */
+    public int[] candidates() {
+        return candidates.clone();
+    }
+
+    /**
+     * Returns a copy of the vote counts, in rank order.
+     *
+     * @return the vote counts in rank order
+     */
+    public long[] voteCounts() {
+        return votes.clone();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof CandidateRanking)) {
+            return false;
+        }
+        CandidateRanking other = (CandidateRanking) o;
+        return Arrays.equals(candidates, other.candidates) && Arrays.equals(votes, other.votes);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(candidates) + Arrays.hashCode(votes);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < candidates.length; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(candidates[i]).append('=').append(votes[i]);
+        }
+        return sb.append(']').toString();
+    }
+}
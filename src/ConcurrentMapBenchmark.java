@@ -0,0 +1,167 @@
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CyclicBarrier;
+import java.util.function.Supplier;
+import question_2.AVLTreeMap;
+import question_2.ConcurrentAVLTreeMap;
+
+/**
+ * A contention benchmark that compares {@link ConcurrentAVLTreeMap} against
+ * {@link ConcurrentSkipListMap}, with an {@link AVLTreeMap} behind a single lock as the
+ * baseline. For every map, workload and thread count, the threads run random operations on a
+ * shared map for a fixed time and the benchmark reports the total throughput.
+ *
+ * <p>Each workload is a mix of {@code get}, {@code put} and {@code remove} over a fixed range of
+ * keys, half of which are in the map at the start. Puts and removes are equally likely, so the
+ * map stays at about half the key range throughout.
+ */
+public class ConcurrentMapBenchmark {
+
+    private static final long WARMUP_MILLIS = 500;
+    private static final long MEASURED_MILLIS = 2000;
+
+    // Written by every thread so the JIT cannot discard the work being timed
+    private static volatile long sink;
+
+    /**
+     * A mix of operations, given as the percentage of each that are reads and writes.
+     */
+    private enum Workload {
+        READ_MOSTLY(90), MIXED(50), WRITE_ONLY(0);
+
+        final int readPercent;
+
+        Workload(int readPercent) {
+            this.readPercent = readPercent;
+        }
+    }
+
+    /**
+     * Runs every benchmark case.
+     *
+     * @param args an optional comma-separated list of thread counts, 1 to 64 by default, and an
+     *             optional key range, 100000 by default
+     */
+    public static void main(String[] args) throws Exception {
+        String threadCounts = args.length > 0 ? args[0] : "1,2,4,8,16,32,64";
+        int keyRange = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+        String[] names = {"ConcurrentAVLTreeMap", "ConcurrentSkipListMap", "synchronized AVLTreeMap"};
+        @SuppressWarnings("unchecked")
+        Supplier<Map<Integer, Integer>>[] maps = new Supplier[] {
+            ConcurrentAVLTreeMap::new,
+            ConcurrentSkipListMap::new,
+            () -> Collections.synchronizedNavigableMap(new AVLTreeMap<Integer, Integer>())
+        };
+        System.out.printf("Processors available: %d, key range: %d%n",
+                Runtime.getRuntime().availableProcessors(), keyRange);
+        System.out.printf("%-24s %-12s %8s %14s%n", "map", "workload", "threads", "ops/ms");
+        for (Workload workload : Workload.values()) {
+            for (String count : threadCounts.split(",")) {
+                int threads = Integer.parseInt(count.trim());
+                for (int m = 0; m < maps.length; m++) {
+                    double throughput = run(maps[m].get(), keyRange, workload, threads);
+                    System.out.printf("%-24s %-12s %8d %14.1f%n", names[m], workload, threads, throughput);
+                }
+            }
+        }
+        System.out.println("(checksum " + sink + ")");
+    }
+
+    // Fills a map to half the key range, then runs the workload on it with the given number of threads
+    private static double run(Map<Integer, Integer> map, int keyRange, Workload workload, int threads)
+            throws Exception {
+        for (int key = 0; key < keyRange; key += 2) {
+            map.put(key, key);
+        }
+        Worker[] workers = new Worker[threads];
+        CyclicBarrier start = new CyclicBarrier(threads + 1);
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Worker(map, keyRange, workload.readPercent, 31L * t + 17, start);
+            workers[t].start();
+        }
+        start.await();
+        Thread.sleep(WARMUP_MILLIS);
+        long before = 0;
+        for (Worker worker : workers) {
+            before += worker.ops;
+        }
+        long begin = System.nanoTime();
+        Thread.sleep(MEASURED_MILLIS);
+        long after = 0;
+        for (Worker worker : workers) {
+            after += worker.ops;
+        }
+        long elapsed = System.nanoTime() - begin;
+        for (Worker worker : workers) {
+            worker.running = false;
+        }
+        for (Worker worker : workers) {
+            worker.join();
+        }
+        return (after - before) / (elapsed / 1e6);
+    }
+
+    /**
+     * A thread that runs random operations until it is told to stop, publishing how many it has done.
+     */
+    private static final class Worker extends Thread {
+        private final Map<Integer, Integer> map;
+        private final int keyRange;
+        private final int readPercent;
+        private final CyclicBarrier start;
+        private long seed;
+        volatile boolean running = true;
+        volatile long ops;
+
+        Worker(Map<Integer, Integer> map, int keyRange, int readPercent, long seed, CyclicBarrier start) {
+            this.map = map;
+            this.keyRange = keyRange;
+            this.readPercent = readPercent;
+            this.seed = seed;
+            this.start = start;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                start.await();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+            long checksum = 0;
+            long done = 0;
+            while (running) {
+                // Publish the count in batches so the volatile write does not dominate
+                for (int i = 0; i < 64; i++) {
+                    int r = nextInt();
+                    Integer key = (r >>> 8) % keyRange;
+                    int choice = (r & 0xFF) % 100;
+                    Integer value;
+                    if (choice < readPercent) {
+                        value = map.get(key);
+                    } else if ((choice & 1) == 0) {
+                        value = map.put(key, key);
+                    } else {
+                        value = map.remove(key);
+                    }
+                    if (value != null) {
+                        checksum += value;
+                    }
+                }
+                done += 64;
+                ops = done;
+            }
+            sink += checksum;
+        }
+
+        // A xorshift generator, so threads do not contend on a shared Random
+        private int nextInt() {
+            seed ^= seed << 13;
+            seed ^= seed >>> 7;
+            seed ^= seed << 17;
+            return (int) seed;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/**
+ * A Count-Min sketch of vote counts: a fixed grid of counters that overestimates the number of
+ * votes for any candidate by at most {@code epsilon * n} with probability at least
+ * {@code 1 - delta}, using memory that depends only on those two bounds and not on the number of
+ * distinct candidates. Sketches built with the same dimensions and seed over separate parts of a
+ * ballot can be combined with {@link #merge}.
+ */
+public class CountMinSketch {
+
+    private final int width;
+    private final int depth;
+    private final long seed;
+    private final long[] multipliers;
+    private final long[] table;
+    private long total;
+
+    /**
+     * Creates an empty sketch with the given dimensions.
+     *
+     * @param width the number of counters in each row
+     * @param depth the number of rows, each with its own hash function
+     * @param seed the seed the hash functions are derived from
+     */
+    public CountMinSketch(int width, int depth, long seed) {
+        if (width < 1 || depth < 1 || (long) width * depth > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid sketch dimensions");
+        }
+        this.width = width;
+        this.depth = depth;
+        this.seed = seed;
+        this.table = new long[width * depth];
+        this.multipliers = new long[depth];
+        long state = seed;
+        for (int row = 0; row < depth; row++) {
+            // SplitMix64 steps give each row an independent odd multiplier
+            state += 0x9E3779B97F4A7C15L;
+            long z = state;
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            multipliers[row] = (z ^ (z >>> 31)) | 1;
+        }
+    }
+
+    /**
+     * Creates an empty sketch that overestimates by at most {@code epsilon * n} with probability
+     * at least {@code 1 - delta}.
+     *
+     * @param epsilon the largest error as a fraction of the total number of votes, between 0 and 1
+     * @param delta the probability of exceeding that error, between 0 and 1
+     * @param seed the seed the hash functions are derived from
+     * @return an empty sketch of width {@code ceil(e / epsilon)} and depth {@code ceil(ln(1 / delta))}
+     */
+    public static CountMinSketch forError(double epsilon, double delta, long seed) {
+        if (!(epsilon > 0 && epsilon < 1) || !(delta > 0 && delta < 1)) {
+            throw new IllegalArgumentException("epsilon and delta must be between 0 and 1");
+        }
+        int width = (int) Math.ceil(Math.E / epsilon);
+        int depth = (int) Math.ceil(Math.log(1 / delta));
+        return new CountMinSketch(width, depth, seed);
+    }
+
+    /**
+     * Records a single vote for a candidate.
+     *
+     * @param candidate the identifier of the candidate voted for
+     */
+    public void add(int candidate) {
+        add(candidate, 1);
+    }
+
+    /**
+     * Records a number of votes for a candidate.
+     *
+     * @param candidate the identifier of the candidate voted for
+     * @param votes the number of votes to record
+     */
+    public void add(int candidate, long votes) {
+        for (int row = 0; row < depth; row++) {
+            table[row * width + column(row, candidate)] += votes;
+        }
+        total += votes;
+    }
+
+    /**
+     * Records every vote in an array.
+     *
+     * @param votes the votes to record
+     */
+    public void addAll(int[] votes) {
+        for (int vote : votes) {
+            add(vote, 1);
+        }
+    }
+
+    /**
+     * Returns an upper bound on the number of votes for a candidate.
+     *
+     * @param candidate the identifier of the candidate
+     * @return the smallest of the candidate's counters
+     */
+    public long estimate(int candidate) {
+        long min = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            min = Math.min(min, table[row * width + column(row, candidate)]);
+        }
+        return min;
+    }
+
+    /**
+     * Returns the overestimate that any single estimate stays within with probability
+     * {@code 1 - delta}, given the votes recorded so far.
+     *
+     * @return {@code ceil(e * totalVotes() / width)}
+     */
+    public long errorBound() {
+        return (long) Math.ceil(Math.E * total / width);
+    }
+
+    /**
+     * Returns the total number of votes recorded.
+     *
+     * @return the total number of votes
+     */
+    public long totalVotes() {
+        return total;
+    }
+
+    /**
+     * Adds the counters of another sketch to this one.
+     *
+     * @param other a sketch with the same width, depth and seed
+     * @throws IllegalArgumentException if the sketches were built with different dimensions or seeds
+     */
+    public void merge(CountMinSketch other) {
+        if (other.width != width || other.depth != depth || other.seed != seed) {
+            throw new IllegalArgumentException("Cannot merge sketches with different dimensions or seeds");
+        }
+        for (int i = 0; i < table.length; i++) {
+            table[i] += other.table[i];
+        }
+        total += other.total;
+    }
+
+    // Multiply-shift hashing of the candidate into one of the row's columns
+    private int column(int row, int candidate) {
+        long hash = (multipliers[row] * (candidate + 0x9E3779B97F4A7C15L)) >>> 32;
+        return (int) ((hash * width) >>> 32);
+    }
+}
@@ -0,0 +1,66 @@
+import java.util.Random;
+import java.util.function.IntSupplier;
+
+/**
+ * A benchmark that times the different ways of finding the winner of an election.
+ * Each case is warmed up before it is measured, and the average time per call is printed.
+ */
+public class ElectionBenchmark {
+
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int MEASURED_ROUNDS = 10;
+
+    // Written by every case so the JIT cannot discard the work being timed
+    private static int sink;
+
+    /**
+     * Runs every benchmark case on ballots of the given size.
+     *
+     * @param args an optional number of votes per ballot, one million by default
+     */
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        Random random = new Random(42);
+        int[] majority = ballot(random, size, 1000, 0.6);
+        int[] plurality = ballot(random, size, 1000, 0.0);
+
+        System.out.println("Votes per ballot: " + size);
+        run("findMajority, majority ballot", () -> ElectionWinner.findMajority(majority).orElse(-1));
+        run("findMajority, no-majority ballot", () -> ElectionWinner.findMajority(plurality).orElse(-1));
+        run("findWinner, majority ballot", () -> ElectionWinner.findWinner(majority));
+        run("findWinner, no-majority ballot", () -> ElectionWinner.findWinner(plurality));
+        run("VoteTally only, majority ballot", () -> tally(majority));
+        run("VoteTally only, no-majority ballot", () -> tally(plurality));
+        run("findWinnerParallel, no-majority ballot", () -> ElectionWinner.findWinnerParallel(plurality));
+        System.out.println("(checksum " + sink + ")");
+    }
+
+    // Counts every candidate without trying the majority fast path
+    private static int tally(int[] votes) {
+        VoteTally tally = new VoteTally();
+        tally.addAll(votes);
+        return tally.winner();
+    }
+
+    // Builds a ballot where one candidate takes the given share and the rest is spread evenly
+    private static int[] ballot(Random random, int size, int candidates, double leaderShare) {
+        int[] votes = new int[size];
+        for (int i = 0; i < size; i++) {
+            votes[i] = random.nextDouble() < leaderShare ? 0 : random.nextInt(candidates);
+        }
+        return votes;
+    }
+
+    // Warms up and then times a single benchmark case
+    private static void run(String name, IntSupplier benchmark) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            sink += benchmark.getAsInt();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            sink += benchmark.getAsInt();
+        }
+        double millis = (System.nanoTime() - start) / 1e6 / MEASURED_ROUNDS;
+        System.out.printf("%-40s %10.3f ms/op%n", name, millis);
+    }
+}
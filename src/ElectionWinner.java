@@ -1,42 +1,208 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.IntStream;
 
 /**
  * A class to find the winner of a presidential election.
  */
 public class ElectionWinner {
 
+    // Runs at or below this length are insertion sorted before merging
+    private static final int INSERTION_SORT_RUN = 32;
+
+    // Arrays at or below this length are sorted sequentially by parallelMergeSort
+    private static final int PARALLEL_SORT_THRESHOLD = 1 << 13;
+
     /**
      * Finds the identifier of the candidate with the most votes in an array of votes.
+     * Ties go to the candidate with the lowest identifier. The array is not modified.
+     * An outright majority is detected with {@link #findMajority(int[])} before falling
+     * back to counting every candidate.
      *
      * @param votes an array of integers representing the votes for each candidate
-     * @return the identifier of the candidate with the most votes
+     * @return the identifier of the candidate with the most votes, or -1 if there are no votes
      */
     public static int findWinner(int[] votes) {
-        // Use merge-sort to sort the votes
-        mergeSort(votes, 0, votes.length - 1);
+        // Most elections have an outright majority, which needs no counters at all
+        OptionalInt majority = findMajority(votes);
+        if (majority.isPresent()) {
+            return majority.getAsInt();
+        }
+        VoteTally tally = new VoteTally();
+        tally.addAll(votes);
+        return tally.winner();
+    }
 
-        // Use a TreeMap to count the votes for each candidate
-        TreeMap<Integer, Integer> voteCounts = new TreeMap<>();
-        for (int i = 0; i < votes.length; i++) {
-            int candidate = votes[i];
-            int count = voteCounts.getOrDefault(candidate, 0);
-            voteCounts.put(candidate, count + 1);
+    /**
+     * Finds the candidate that received more than half of the votes, using the Boyer-Moore
+     * majority vote algorithm. One pass finds the only candidate that could hold a majority
+     * and a second pass verifies it, so no counters beyond two integers are needed.
+     *
+     * @param votes an array of integers representing the votes for each candidate
+     * @return the identifier of the majority candidate, or an empty result if no candidate has a majority
+     */
+    public static OptionalInt findMajority(int[] votes) {
+        int candidate = 0;
+        int lead = 0;
+        for (int vote : votes) {
+            // Written as selects rather than branches, which mispredict on shuffled ballots
+            candidate = lead == 0 ? vote : candidate;
+            lead += vote == candidate ? 1 : -1;
         }
+        if (lead == 0) {
+            return OptionalInt.empty();
+        }
+        int count = 0;
+        for (int vote : votes) {
+            count += vote == candidate ? 1 : 0;
+        }
+        return count > votes.length / 2 ? OptionalInt.of(candidate) : OptionalInt.empty();
+    }
+
+    /**
+     * Finds the identifier of the candidate with the most votes in a stream of votes.
+     *
+     * @param votes a stream of integers representing the votes for each candidate
+     * @return the identifier of the candidate with the most votes, or -1 if there are no votes
+     */
+    public static int findWinner(IntStream votes) {
+        VoteTally tally = new VoteTally();
+        tally.addAll(votes);
+        return tally.winner();
+    }
 
-        // Find the candidate with the most votes
+    /**
+     * Finds the identifier of the candidate with the most votes in a stream of ballots. The stream
+     * holds little-endian 32-bit votes, the same format as a ballot file read by {@link BallotFileReader}.
+     *
+     * @param in the stream to read the votes from
+     * @return the identifier of the candidate with the most votes, or -1 if there are no votes
+     * @throws IOException if reading the stream fails
+     */
+    public static int findWinner(InputStream in) throws IOException {
+        VoteTally tally = new VoteTally();
+        tally.addAll(in);
+        return tally.winner();
+    }
+
+    /**
+     * Finds the identifier of the candidate with the most votes, counting the array in parallel.
+     * The result, including tie-breaking, is the same as {@link #findWinner(int[])}.
+     *
+     * @param votes an array of integers representing the votes for each candidate
+     * @return the identifier of the candidate with the most votes, or -1 if there are no votes
+     */
+    public static int findWinnerParallel(int[] votes) {
+        return VoteTally.countParallel(votes).winner();
+    }
+
+    /**
+     * Finds the identifier of the candidate with the most votes, counting the array in parallel
+     * once it holds more than {@code threshold} votes.
+     *
+     * @param votes an array of integers representing the votes for each candidate
+     * @param threshold the largest number of votes counted by a single fork/join task
+     * @return the identifier of the candidate with the most votes, or -1 if there are no votes
+     */
+    public static int findWinnerParallel(int[] votes, int threshold) {
+        return VoteTally.countParallel(votes, threshold, ForkJoinPool.commonPool()).winner();
+    }
+
+    /**
+     * Finds the likely winner using a fixed number of counters, however many distinct candidates
+     * there are. The result is exact whenever the winner leads the runner-up by more than
+     * {@code epsilon} of the votes; {@link MisraGriesSummary#recount(int[])} can confirm it.
+     *
+     * @param votes an array of integers representing the votes for each candidate
+     * @param epsilon the largest counting error as a fraction of the votes, between 0 and 1
+     * @return the identifier of the likely winner, or -1 if there are no votes
+     */
+    public static int findLikelyWinner(int[] votes, double epsilon) {
+        MisraGriesSummary summary = MisraGriesSummary.forError(epsilon);
+        summary.addAll(votes);
+        return summary.winner();
+    }
+
+    /**
+     * Ranks the candidates with the most votes, best first. Ties go to the candidate with the
+     * lowest identifier, so the first entry is always the candidate returned by {@link #findWinner(int[])}.
+     *
+     * @param votes an array of integers representing the votes for each candidate
+     * @param k the largest number of candidates to rank
+     * @return the top {@code k} candidates and their vote counts
+     */
+    public static CandidateRanking rankCandidates(int[] votes, int k) {
+        VoteTally tally = new VoteTally();
+        tally.addAll(votes);
+        return tally.topK(k);
+    }
+
+    /**
+     * Finds the identifier of the candidate with the most votes while holding at most
+     * {@code maxCandidates} counters in memory at once. The candidates are split into
+     * partitions by hash and each partition is counted in its own pass over the array.
+     * A partition with too many candidates is split in two by one more bit of the hash and
+     * each half is counted again; partitions already counted are kept, so the number of
+     * passes grows with the number of distinct candidates.
+     *
+     * @param votes an array of integers representing the votes for each candidate
+     * @param maxCandidates the largest number of candidates to count at once
+     * @return the identifier of the candidate with the most votes, or -1 if there are no votes
+     */
+    public static int findWinner(int[] votes, int maxCandidates) {
+        if (maxCandidates < 1) {
+            throw new IllegalArgumentException("maxCandidates must be positive");
+        }
         int winner = -1;
-        int maxVotes = 0;
-        for (int candidate : voteCounts.keySet()) {
-            int votesForCandidate = voteCounts.get(candidate);
-            if (votesForCandidate > maxVotes) {
-                winner = candidate;
-                maxVotes = votesForCandidate;
+        long maxVotes = 0;
+        // Each pending partition is a number of low hash bits and the value those bits must have
+        Deque<int[]> pending = new ArrayDeque<>();
+        pending.push(new int[] {0, 0});
+        // Starts small and grows only as far as the candidates seen, up to the bound
+        VoteTally tally = new VoteTally(0, maxCandidates);
+        while (!pending.isEmpty()) {
+            int[] next = pending.pop();
+            int bits = next[0];
+            int partition = next[1];
+            int mask = (int) ((1L << bits) - 1);
+            tally.clear();
+            boolean full = false;
+            for (int vote : votes) {
+                if ((partitionHash(vote) & mask) == partition && !tally.addIfPresent(vote)) {
+                    if (tally.isFull()) {
+                        full = true;
+                        break;
+                    }
+                    tally.add(vote);
+                }
+            }
+            if (full) {
+                // Too many candidates in this partition: its candidates fall into exactly two
+                // partitions of the next bit, so count those instead
+                pending.push(new int[] {bits + 1, partition});
+                pending.push(new int[] {bits + 1, partition | 1 << bits});
+                continue;
+            }
+            int partitionWinner = tally.winner();
+            long partitionVotes = tally.winnerCount();
+            if (partitionVotes > maxVotes || partitionVotes == maxVotes && partitionVotes > 0 && partitionWinner < winner) {
+                winner = partitionWinner;
+                maxVotes = partitionVotes;
             }
         }
-
         return winner;
     }
 
+    // Hash used to assign candidates to partitions, independent of the tally's own hashing
+    private static int partitionHash(int candidate) {
+        int h = candidate * 0x85EBCA6B;
+        return h ^ (h >>> 13);
+    }
+
     /**
      * Sorts an array of integers using the merge-sort algorithm.
      *
@@ -46,10 +212,120 @@ public class ElectionWinner {
      */
     public static void mergeSort(int[] array, int left, int right) {
         if (left < right) {
-            int mid = (left + right) / 2;
-            mergeSort(array, left, mid);
-            mergeSort(array, mid + 1, right);
-            merge(array, left, mid, right);
+            mergeSort(array, left, right, new int[(right - left) / 2 + 1]);
+        }
+    }
+
+    /**
+     * Sorts an array of integers using the merge-sort algorithm and a caller-supplied scratch buffer.
+     * The sort is bottom-up, so it does not recurse: short runs are insertion sorted and then merged
+     * in passes of doubling width, skipping any merge whose runs are already in order. Only the shorter
+     * run of each merge is copied, so the buffer needs room for half of the subarray.
+     *
+     * @param array the array to be sorted
+     * @param left the leftmost index of the subarray to be sorted
+     * @param right the rightmost index of the subarray to be sorted
+     * @param scratch a buffer of at least {@code (right - left) / 2 + 1} elements
+     */
+    public static void mergeSort(int[] array, int left, int right, int[] scratch) {
+        if (left >= right) {
+            return;
+        }
+        if (scratch.length < (right - left) / 2 + 1) {
+            throw new IllegalArgumentException("Scratch buffer is too small");
+        }
+        for (int lo = left; lo <= right; lo += INSERTION_SORT_RUN) {
+            insertionSort(array, lo, Math.min(lo + INSERTION_SORT_RUN - 1, right));
+        }
+        for (long width = INSERTION_SORT_RUN; width <= right - left; width *= 2) {
+            for (long lo = left; lo <= right - width; lo += 2 * width) {
+                merge(array, (int) lo, (int) (lo + width - 1), (int) Math.min(lo + 2 * width - 1, right), scratch);
+            }
+        }
+    }
+
+    /**
+     * Sorts an array of integers in parallel using the merge-sort algorithm.
+     *
+     * @param array the array to be sorted
+     */
+    public static void parallelMergeSort(int[] array) {
+        parallelMergeSort(array, PARALLEL_SORT_THRESHOLD);
+    }
+
+    /**
+     * Sorts an array of integers in parallel using the merge-sort algorithm. The array is split in
+     * half until a piece holds no more than {@code threshold} elements, the pieces are sorted on the
+     * common fork/join pool, and the halves are merged as they complete. All tasks share a single
+     * scratch buffer, each using the region that lines up with its piece of the array.
+     *
+     * @param array the array to be sorted
+     * @param threshold the largest piece sorted by a single task
+     */
+    public static void parallelMergeSort(int[] array, int threshold) {
+        if (threshold < 1) {
+            throw new IllegalArgumentException("threshold must be positive");
+        }
+        if (array.length <= threshold) {
+            mergeSort(array, 0, array.length - 1);
+            return;
+        }
+        ForkJoinPool.commonPool().invoke(new SortTask(array, 0, array.length - 1, new int[array.length], threshold));
+    }
+
+    /**
+     * A fork/join task that sorts a subarray and merges its halves.
+     */
+    private static class SortTask extends RecursiveAction {
+        private final int[] array;
+        private final int left;
+        private final int right;
+        private final int[] scratch;
+        private final int threshold;
+
+        SortTask(int[] array, int left, int right, int[] scratch, int threshold) {
+            this.array = array;
+            this.left = left;
+            this.right = right;
+            this.scratch = scratch;
+            this.threshold = threshold;
+        }
+
+        @Override
+        protected void compute() {
+            if (right - left < threshold) {
+                // Sort in the slice of the shared buffer that lines up with this piece
+                sortSlice(left, right);
+                return;
+            }
+            int mid = (left + right) >>> 1;
+            invokeAll(new SortTask(array, left, mid, scratch, threshold),
+                    new SortTask(array, mid + 1, right, scratch, threshold));
+            mergeSlice(left, mid, right);
+        }
+
+        private void sortSlice(int lo, int hi) {
+            for (int start = lo; start <= hi; start += INSERTION_SORT_RUN) {
+                insertionSort(array, start, Math.min(start + INSERTION_SORT_RUN - 1, hi));
+            }
+            for (long width = INSERTION_SORT_RUN; width <= hi - lo; width *= 2) {
+                for (long start = lo; start <= hi - width; start += 2 * width) {
+                    mergeSlice((int) start, (int) (start + width - 1), (int) Math.min(start + 2 * width - 1, hi));
+                }
+            }
+        }
+
+        private void mergeSlice(int lo, int mid, int hi) {
+            if (array[mid] <= array[mid + 1]) {
+                return;
+            }
+            if (mid - lo < hi - mid) {
+                System.arraycopy(array, lo, scratch, lo, mid - lo + 1);
+                mergeLow(array, lo, mid, hi, scratch, lo);
+            } else {
+                System.arraycopy(array, mid + 1, scratch, mid + 1, hi - mid);
+                mergeHigh(array, lo, mid, hi, scratch, mid + 1);
+            }
         }
     }
 
@@ -62,30 +338,89 @@ public class ElectionWinner {
      * @param right the rightmost index of the right subarray
      */
     public static void merge(int[] array, int left, int mid, int right) {
-        int[] leftArray = Arrays.copyOfRange(array, left, mid + 1);
-        int[] rightArray = Arrays.copyOfRange(array, mid + 1, right + 1);
-        int i = 0, j = 0, k = left;
-        while (i < leftArray.length && j < rightArray.length) {
-            if (leftArray[i] <= rightArray[j]) {
-                array[k++] = leftArray[i++];
+        merge(array, left, mid, right, new int[Math.min(mid - left + 1, right - mid)]);
+    }
+
+    /**
+     * Merges two sorted subarrays into a single sorted array, copying only the shorter subarray into
+     * the scratch buffer. Nothing is copied if the subarrays are already in order.
+     *
+     * @param array the array containing the subarrays to be merged
+     * @param left the leftmost index of the left subarray
+     * @param mid the rightmost index of the left subarray
+     * @param right the rightmost index of the right subarray
+     * @param scratch a buffer at least as long as the shorter subarray
+     */
+    public static void merge(int[] array, int left, int mid, int right, int[] scratch) {
+        if (mid >= right || array[mid] <= array[mid + 1]) {
+            return;
+        }
+        if (mid - left < right - mid) {
+            System.arraycopy(array, left, scratch, 0, mid - left + 1);
+            mergeLow(array, left, mid, right, scratch, 0);
+        } else {
+            System.arraycopy(array, mid + 1, scratch, 0, right - mid);
+            mergeHigh(array, left, mid, right, scratch, 0);
+        }
+    }
+
+    // Merges forwards, with the left run copied to scratch[offset..] and the right run still in place
+    private static void mergeLow(int[] array, int left, int mid, int right, int[] scratch, int offset) {
+        int i = offset, iEnd = offset + mid - left + 1;
+        int j = mid + 1, k = left;
+        while (i < iEnd && j <= right) {
+            if (scratch[i] <= array[j]) {
+                array[k++] = scratch[i++];
             } else {
-                array[k++] = rightArray[j++];
+                array[k++] = array[j++];
             }
         }
-        while (i < leftArray.length) {
-            array[k++] = leftArray[i++];
+        // Whatever remains of the right run is already in place
+        System.arraycopy(scratch, i, array, k, iEnd - i);
+    }
+
+    // Merges backwards, with the right run copied to scratch[offset..] and the left run still in place
+    private static void mergeHigh(int[] array, int left, int mid, int right, int[] scratch, int offset) {
+        int i = mid, j = offset + right - mid - 1, k = right;
+        while (i >= left && j >= offset) {
+            if (array[i] > scratch[j]) {
+                array[k--] = array[i--];
+            } else {
+                array[k--] = scratch[j--];
+            }
         }
-        while (j < rightArray.length) {
-            array[k++] = rightArray[j++];
+        // Whatever remains of the left run is already in place
+        System.arraycopy(scratch, offset, array, left, j - offset + 1);
+    }
+
+    // Sorts a short subarray in place by insertion
+    private static void insertionSort(int[] array, int left, int right) {
+        for (int i = left + 1; i <= right; i++) {
+            int value = array[i];
+            int j = i - 1;
+            while (j >= left && array[j] > value) {
+                array[j + 1] = array[j];
+                j--;
+            }
+            array[j + 1] = value;
         }
     }
 
     /**
-     * A test program that creates an example input array and calls findWinner to find the winner of the election.
+     * A test program that finds the winner of the election. With no arguments it uses an example
+     * input array; otherwise it counts the binary ballot file named by the first argument.
      *
-     * @param args the command-line arguments
+     * @param args the command-line arguments: an optional ballot file of little-endian 32-bit votes
+     * @throws IOException if the ballot file cannot be read
      */
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
+        if (args.length > 0) {
+            VoteTally tally = new BallotFileReader(Paths.get(args[0])).tallyParallel();
+            System.out.println("Counted " + tally.totalVotes() + " votes for "
+                    + tally.distinctCandidates() + " candidates");
+            System.out.println("The winner is candidate " + tally.winner());
+            return;
+        }
         int[] votes = {3, 4, 1, 2, 4, 4, 3, 3, 1};
         int winner = findWinner(votes);
         System.out.println("The winner is candidate " + winner);
@@ -0,0 +1,397 @@
+import java.util.Arrays;
+
+/**
+ * A running election tally that accepts votes while it is being queried.
+ * Candidates are spread over independently locked stripes, so threads recording votes for
+ * different candidates rarely contend. Each stripe keeps its candidates in an indexed max-heap
+ * ordered by vote count, so a vote moves its candidate in O(log n) time and the leader of every
+ * stripe is always at the top of its heap. As with {@link ElectionWinner#findWinner(int[])},
+ * ties go to the candidate with the lowest identifier.
+ *
+ * <p>Queries that span several stripes, such as {@link #leader()} and {@link #topK(int)}, lock
+ * one stripe at a time, so while votes are arriving they reflect each stripe as of the moment it
+ * was read rather than a single instant.
+ */
+public class LiveTally {
+
+    private final Stripe[] stripes;
+    private final int stripeMask;
+
+    /**
+     * Creates an empty tally with a number of stripes suited to the available processors.
+     */
+    public LiveTally() {
+        this(4 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates an empty tally with at least the given number of stripes.
+     *
+     * @param concurrency the expected number of threads recording votes at once
+     */
+    public LiveTally(int concurrency) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("concurrency must be positive");
+        }
+        int count = Integer.highestOneBit(Math.min(concurrency, 1 << 16) * 2 - 1);
+        stripes = new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new Stripe();
+        }
+        stripeMask = count - 1;
+    }
+
+    /**
+     * Records a vote for a candidate.
+     *
+     * @param candidate the identifier of the candidate voted for
+     */
+    public void addVote(int candidate) {
+        Stripe stripe = stripeFor(candidate);
+        synchronized (stripe) {
+            stripe.adjust(candidate, 1);
+        }
+    }
+
+    /**
+     * Records a batch of votes. The batch is counted on the calling thread first, so each stripe
+     * is locked at most once however many votes the batch holds.
+     *
+     * @param batch the votes to record
+     */
+    public void addVotes(int[] batch) {
+        VoteTally local = new VoteTally();
+        local.addAll(batch);
+        int distinct = local.distinctCandidates();
+        int[] candidates = new int[distinct];
+        long[] counts = new long[distinct];
+        local.copyTo(candidates, counts);
+
+        // Group the candidates by stripe with a counting sort
+        int[] starts = new int[stripes.length + 1];
+        for (int candidate : candidates) {
+            starts[stripeIndex(candidate) + 1]++;
+        }
+        for (int i = 0; i < stripes.length; i++) {
+            starts[i + 1] += starts[i];
+        }
+        int[] next = starts.clone();
+        int[] order = new int[distinct];
+        for (int i = 0; i < distinct; i++) {
+            order[next[stripeIndex(candidates[i])]++] = i;
+        }
+        for (int s = 0; s < stripes.length; s++) {
+            if (starts[s] == starts[s + 1]) {
+                continue;
+            }
+            Stripe stripe = stripes[s];
+            synchronized (stripe) {
+                for (int i = starts[s]; i < starts[s + 1]; i++) {
+                    stripe.adjust(candidates[order[i]], counts[order[i]]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Takes back a vote previously recorded for a candidate.
+     *
+     * @param candidate the identifier of the candidate whose vote is retracted
+     * @return true if a vote was retracted, or false if the candidate had no votes
+     */
+    public boolean retractVote(int candidate) {
+        Stripe stripe = stripeFor(candidate);
+        synchronized (stripe) {
+            int slot = stripe.find(candidate);
+            if (slot < 0 || stripe.counts[slot] == 0) {
+                return false;
+            }
+            stripe.adjust(candidate, -1);
+            return true;
+        }
+    }
+
+    /**
+     * Returns the number of votes currently recorded for a candidate.
+     *
+     * @param candidate the identifier of the candidate
+     * @return the number of votes recorded for the candidate
+     */
+    public long countOf(int candidate) {
+        Stripe stripe = stripeFor(candidate);
+        synchronized (stripe) {
+            int slot = stripe.find(candidate);
+            return slot < 0 ? 0 : stripe.counts[slot];
+        }
+    }
+
+    /**
+     * Returns the candidate currently in the lead, reading only the top of each stripe's heap.
+     *
+     * @return the identifier of the leading candidate, or -1 if no votes are recorded
+     */
+    public int leader() {
+        int leader = -1;
+        long maxVotes = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                if (stripe.heapSize == 0) {
+                    continue;
+                }
+                int top = stripe.heap[0];
+                long votes = stripe.counts[top];
+                int candidate = stripe.keys[top];
+                if (votes > maxVotes || votes == maxVotes && votes > 0 && candidate < leader) {
+                    leader = candidate;
+                    maxVotes = votes;
+                }
+            }
+        }
+        return leader;
+    }
+
+    /**
+     * Returns the candidates with the most votes, best first.
+     *
+     * @param k the largest number of candidates to return
+     * @return the identifiers of up to {@code k} leading candidates with at least one vote
+     */
+    public int[] topK(int k) {
+        return ranking(k).candidates();
+    }
+
+    /**
+     * Returns the candidates with the most votes and their counts, best first. Each stripe
+     * contributes at most {@code k} candidates read from its heap in O(k log k) time, and the
+     * stripes' lists are then merged.
+     *
+     * @param k the largest number of candidates to return
+     * @return a ranking of up to {@code k} leading candidates with at least one vote
+     */
+    public CandidateRanking ranking(int k) {
+        if (k < 0) {
+            throw new IllegalArgumentException("k must not be negative");
+        }
+        int[][] ids = new int[stripes.length][];
+        long[][] votes = new long[stripes.length][];
+        // No more candidates than the stripes hold between them, however large k is
+        int limit = 0;
+        for (int s = 0; s < stripes.length; s++) {
+            Stripe stripe = stripes[s];
+            synchronized (stripe) {
+                int n = Math.min(k, stripe.heapSize);
+                ids[s] = new int[n];
+                votes[s] = new long[n];
+                stripe.top(ids[s], votes[s]);
+            }
+            limit += ids[s].length;
+        }
+        limit = Math.min(k, limit);
+        int[] heads = new int[stripes.length];
+        int[] result = new int[limit];
+        long[] counts = new long[limit];
+        int found = 0;
+        while (found < limit) {
+            int best = -1;
+            for (int s = 0; s < stripes.length; s++) {
+                int h = heads[s];
+                if (h < ids[s].length && votes[s][h] > 0 && (best < 0
+                        || better(votes[s][h], ids[s][h], votes[best][heads[best]], ids[best][heads[best]]))) {
+                    best = s;
+                }
+            }
+            if (best < 0) {
+                break;
+            }
+            counts[found] = votes[best][heads[best]];
+            result[found++] = ids[best][heads[best]++];
+        }
+        return found == limit
+                ? new CandidateRanking(result, counts)
+                : new CandidateRanking(Arrays.copyOf(result, found), Arrays.copyOf(counts, found));
+    }
+
+    private Stripe stripeFor(int candidate) {
+        return stripes[stripeIndex(candidate)];
+    }
+
+    // Uses a different hash from the stripe tables so a stripe's candidates do not cluster
+    private int stripeIndex(int candidate) {
+        int h = candidate * 0x85EBCA6B;
+        return (h ^ (h >>> 15)) & stripeMask;
+    }
+
+    // Returns true if the first candidate ranks ahead of the second
+    static boolean better(long votes, int candidate, long otherVotes, int otherCandidate) {
+        return votes > otherVotes || votes == otherVotes && candidate < otherCandidate;
+    }
+
+    /**
+     * One stripe of the tally: an open-addressing table of candidates and their counts, plus an
+     * indexed max-heap over the table's slots. All access is guarded by the stripe's monitor.
+     */
+    private static class Stripe {
+        int[] keys = new int[16];
+        long[] counts = new long[16];
+        boolean[] used = new boolean[16];
+        // heap[i] is a table slot; position[slot] is that slot's index in the heap
+        int[] heap = new int[16];
+        int[] position = new int[16];
+        int heapSize;
+
+        // Returns the table slot of a candidate, or -1 if it has never received a vote
+        int find(int candidate) {
+            int mask = keys.length - 1;
+            int slot = VoteTally.mix(candidate) & mask;
+            while (used[slot]) {
+                if (keys[slot] == candidate) {
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+
+        // Changes a candidate's count and moves it to its new place in the heap
+        void adjust(int candidate, long delta) {
+            int slot = find(candidate);
+            if (slot < 0) {
+                if (heapSize + 1 > (keys.length >> 1) + (keys.length >> 2)) {
+                    resize(keys.length << 1);
+                }
+                int mask = keys.length - 1;
+                slot = VoteTally.mix(candidate) & mask;
+                while (used[slot]) {
+                    slot = (slot + 1) & mask;
+                }
+                used[slot] = true;
+                keys[slot] = candidate;
+                heap[heapSize] = slot;
+                position[slot] = heapSize++;
+            }
+            counts[slot] += delta;
+            if (delta > 0) {
+                siftUp(position[slot]);
+            } else {
+                siftDown(position[slot]);
+            }
+        }
+
+        // Copies the best candidates into the arrays, best first, without disturbing the heap
+        void top(int[] ids, long[] votes) {
+            if (ids.length == 0) {
+                return;
+            }
+            // A second heap of heap indices holds the frontier of candidates still to be taken
+            int[] frontier = new int[2 * ids.length + 1];
+            int frontierSize = 1;
+            frontier[0] = 0;
+            for (int taken = 0; taken < ids.length; taken++) {
+                int index = frontier[0];
+                frontier[0] = frontier[--frontierSize];
+                frontierDown(frontier, frontierSize, 0);
+                ids[taken] = keys[heap[index]];
+                votes[taken] = counts[heap[index]];
+                for (int child = 2 * index + 1; child <= 2 * index + 2 && child < heapSize; child++) {
+                    frontier[frontierSize] = child;
+                    frontierUp(frontier, frontierSize++);
+                }
+            }
+        }
+
+        private void frontierUp(int[] frontier, int i) {
+            while (i > 0) {
+                int parent = (i - 1) / 2;
+                if (!ahead(heap[frontier[i]], heap[frontier[parent]])) {
+                    break;
+                }
+                swapInts(frontier, i, parent);
+                i = parent;
+            }
+        }
+
+        private void frontierDown(int[] frontier, int size, int i) {
+            while (true) {
+                int best = i;
+                for (int child = 2 * i + 1; child <= 2 * i + 2 && child < size; child++) {
+                    if (ahead(heap[frontier[child]], heap[frontier[best]])) {
+                        best = child;
+                    }
+                }
+                if (best == i) {
+                    return;
+                }
+                swapInts(frontier, i, best);
+                i = best;
+            }
+        }
+
+        private boolean ahead(int slot, int otherSlot) {
+            return better(counts[slot], keys[slot], counts[otherSlot], keys[otherSlot]);
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                int parent = (i - 1) / 2;
+                if (!ahead(heap[i], heap[parent])) {
+                    break;
+                }
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i) {
+            while (true) {
+                int best = i;
+                for (int child = 2 * i + 1; child <= 2 * i + 2 && child < heapSize; child++) {
+                    if (ahead(heap[child], heap[best])) {
+                        best = child;
+                    }
+                }
+                if (best == i) {
+                    return;
+                }
+                swap(i, best);
+                i = best;
+            }
+        }
+
+        private void swap(int i, int j) {
+            swapInts(heap, i, j);
+            position[heap[i]] = i;
+            position[heap[j]] = j;
+        }
+
+        private static void swapInts(int[] array, int i, int j) {
+            int t = array[i];
+            array[i] = array[j];
+            array[j] = t;
+        }
+
+        // Rehashes into a larger table; heap order is unchanged, only the slots are renumbered
+        private void resize(int capacity) {
+            int[] oldKeys = keys;
+            long[] oldCounts = counts;
+            int[] oldHeap = heap;
+            keys = new int[capacity];
+            counts = new long[capacity];
+            used = new boolean[capacity];
+            heap = new int[capacity];
+            position = new int[capacity];
+            int mask = capacity - 1;
+            for (int i = 0; i < heapSize; i++) {
+                int old = oldHeap[i];
+                int slot = VoteTally.mix(oldKeys[old]) & mask;
+                while (used[slot]) {
+                    slot = (slot + 1) & mask;
+                }
+                used[slot] = true;
+                keys[slot] = oldKeys[old];
+                counts[slot] = oldCounts[old];
+                heap[i] = slot;
+                position[slot] = i;
+            }
+        }
+    }
+}
@@ -0,0 +1,130 @@
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Supplier;
+import question_2.AVLTreeMap;
+
+/**
+ * A benchmark that compares {@link AVLTreeMap} against {@link TreeMap} and
+ * {@link ConcurrentSkipListMap}. For every map, map size and key pattern it times {@code get},
+ * {@code put}, {@code remove} and a full iteration, and reports the average time and the bytes
+ * allocated per operation, so that regressions in either show up.
+ *
+ * <p>Keys come in three patterns: sequential, uniformly shuffled, and skewed, where the keys
+ * used are drawn from a Zipf distribution over the keys in the map.
+ */
+public class MapBenchmark {
+
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int MEASURED_ROUNDS = 5;
+
+    // Small maps run more rounds so that every case times at least this many operations
+    private static final int MIN_MEASURED_OPS = 1_000_000;
+    private static final double ZIPF_EXPONENT = 0.99;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    // Written by every case so the JIT cannot discard the work being timed
+    private static long sink;
+
+    /**
+     * The operation timed by a benchmark case.
+     */
+    private enum Operation { GET, PUT, REMOVE, ITERATE }
+
+    /**
+     * Runs every benchmark case.
+     *
+     * @param args an optional comma-separated list of map sizes, 1K to 10M by default
+     */
+    public static void main(String[] args) {
+        String sizes = args.length > 0 ? args[0] : "1000,10000,100000,1000000,10000000";
+        String[] names = {"AVLTreeMap", "TreeMap", "ConcurrentSkipListMap"};
+        @SuppressWarnings("unchecked")
+        Supplier<SortedMap<Integer, Integer>>[] maps = new Supplier[] {
+            AVLTreeMap::new, TreeMap::new, ConcurrentSkipListMap::new
+        };
+        System.out.printf("%-22s %-10s %-10s %-8s %12s %12s%n", "map", "size", "pattern", "op", "ns/op", "B/op");
+        for (String size : sizes.split(",")) {
+            int n = Integer.parseInt(size.trim());
+            Random random = new Random(n);
+            Integer[][] patterns = {
+                BenchmarkKeys.sequential(n), BenchmarkKeys.shuffled(n, random), BenchmarkKeys.zipf(n, ZIPF_EXPONENT, random)
+            };
+            String[] patternNames = {"sequential", "random", "zipf"};
+            for (int p = 0; p < patterns.length; p++) {
+                for (int m = 0; m < maps.length; m++) {
+                    for (Operation op : Operation.values()) {
+                        run(names[m], maps[m], n, patternNames[p], patterns[p], op);
+                    }
+                }
+            }
+        }
+        System.out.println("(checksum " + sink + ")");
+    }
+
+    // Warms up and then measures one map, size, pattern and operation
+    private static void run(String name, Supplier<SortedMap<Integer, Integer>> factory, int n,
+            String pattern, Integer[] keys, Operation op) {
+        Integer[] contents = BenchmarkKeys.sequential(n);
+        long nanos = 0;
+        long bytes = 0;
+        long ops = 0;
+        int rounds = Math.max(MEASURED_ROUNDS, MIN_MEASURED_OPS / n);
+        int warmup = Math.max(WARMUP_ROUNDS, rounds / 2);
+        for (int round = 0; round < warmup + rounds; round++) {
+            SortedMap<Integer, Integer> map = factory.get();
+            if (op != Operation.PUT) {
+                for (Integer key : contents) {
+                    map.put(key, key);
+                }
+            }
+            long allocatedBefore = THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+            long start = System.nanoTime();
+            sink += execute(map, keys, op);
+            long elapsed = System.nanoTime() - start;
+            long allocated = THREADS.getThreadAllocatedBytes(Thread.currentThread().getId()) - allocatedBefore;
+            if (round >= warmup) {
+                nanos += elapsed;
+                bytes += allocated;
+                ops += op == Operation.ITERATE ? n : keys.length;
+            }
+        }
+        System.out.printf("%-22s %-10d %-10s %-8s %12.1f %12.1f%n",
+                name, n, pattern, op.name().toLowerCase(), (double) nanos / ops, (double) bytes / ops);
+    }
+
+    // Performs the operation once for every key, or iterates the whole map once
+    private static long execute(Map<Integer, Integer> map, Integer[] keys, Operation op) {
+        long sum = 0;
+        switch (op) {
+            case GET:
+                for (Integer key : keys) {
+                    Integer value = map.get(key);
+                    sum += value == null ? 0 : value;
+                }
+                break;
+            case PUT:
+                for (Integer key : keys) {
+                    map.put(key, key);
+                }
+                sum = map.size();
+                break;
+            case REMOVE:
+                for (Integer key : keys) {
+                    Integer value = map.remove(key);
+                    sum += value == null ? 0 : value;
+                }
+                break;
+            default:
+                for (Map.Entry<Integer, Integer> entry : map.entrySet()) {
+                    sum += entry.getValue();
+                }
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,285 @@
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * A fixed-size summary of the candidates that received the most votes, using the Misra-Gries
+ * frequent items algorithm. At most {@code k} counters are kept however many distinct candidates
+ * there are. Every candidate with more than {@code n / (k + 1)} of {@code n} votes is guaranteed
+ * to hold a counter, and each counter undercounts its candidate by at most {@link #errorBound()}.
+ *
+ * <p>Summaries built over separate parts of a ballot can be combined with {@link #merge}, and the
+ * counters that survive can be checked with an exact {@link #recount(int[])} of only those
+ * candidates.
+ */
+public class MisraGriesSummary {
+
+    private final int k;
+    private int[] candidates;
+    private long[] counts;
+    private boolean[] used;
+    private int size;
+    private long total;
+    private long error;
+
+    /**
+     * Creates an empty summary with the given number of counters.
+     *
+     * @param k the number of counters to keep
+     */
+    public MisraGriesSummary(int k) {
+        if (k < 1) {
+            throw new IllegalArgumentException("k must be positive");
+        }
+        this.k = k;
+        int capacity = Integer.highestOneBit(Math.max(4, 2 * (k + 1)) - 1) << 1;
+        candidates = new int[capacity];
+        counts = new long[capacity];
+        used = new boolean[capacity];
+    }
+
+    /**
+     * Creates an empty summary whose counts are within {@code epsilon * n} of the truth.
+     *
+     * @param epsilon the largest error as a fraction of the total number of votes, between 0 and 1
+     * @return an empty summary with {@code ceil(1 / epsilon)} counters
+     */
+    public static MisraGriesSummary forError(double epsilon) {
+        if (!(epsilon > 0 && epsilon < 1)) {
+            throw new IllegalArgumentException("epsilon must be between 0 and 1");
+        }
+        return new MisraGriesSummary((int) Math.min(1 << 28, Math.ceil(1 / epsilon)));
+    }
+
+    /**
+     * Records a single vote for a candidate.
+     *
+     * @param candidate the identifier of the candidate voted for
+     */
+    public void add(int candidate) {
+        add(candidate, 1);
+    }
+
+    /**
+     * Records a number of votes for a candidate.
+     *
+     * @param candidate the identifier of the candidate voted for
+     * @param votes the number of votes to record
+     */
+    public void add(int candidate, long votes) {
+        total += votes;
+        insert(candidate, votes);
+        if (size > k) {
+            // k + 1 counters: the smallest is the (k + 1)-th largest, so subtract it from all
+            long min = Long.MAX_VALUE;
+            for (int i = 0; i < counts.length; i++) {
+                if (used[i]) {
+                    min = Math.min(min, counts[i]);
+                }
+            }
+            subtract(min);
+        }
+    }
+
+    /**
+     * Records every vote in an array.
+     *
+     * @param votes the votes to record
+     */
+    public void addAll(int[] votes) {
+        for (int vote : votes) {
+            add(vote, 1);
+        }
+    }
+
+    /**
+     * Adds the counters of another summary with the same number of counters to this one. The
+     * result is the summary of both ballots combined, with an error bound no larger than the sum
+     * of the two bounds plus the count subtracted to bring the counters back down to {@code k}.
+     *
+     * @param other the summary to merge into this one
+     * @throws IllegalArgumentException if the other summary keeps a different number of counters
+     */
+    public void merge(MisraGriesSummary other) {
+        if (other.k != k) {
+            throw new IllegalArgumentException("Cannot merge summaries of different sizes");
+        }
+        for (int i = 0; i < other.counts.length; i++) {
+            if (other.used[i]) {
+                insert(other.candidates[i], other.counts[i]);
+            }
+        }
+        total += other.total;
+        error += other.error;
+        if (size > k) {
+            long[] sorted = new long[size];
+            int n = 0;
+            for (int i = 0; i < counts.length; i++) {
+                if (used[i]) {
+                    sorted[n++] = counts[i];
+                }
+            }
+            Arrays.sort(sorted);
+            subtract(sorted[size - k - 1]);
+        }
+    }
+
+    /**
+     * Returns a lower bound on the number of votes for a candidate. The true count is at most
+     * {@link #errorBound()} higher.
+     *
+     * @param candidate the identifier of the candidate
+     * @return the candidate's counter, or 0 if it holds none
+     */
+    public long estimate(int candidate) {
+        int slot = find(candidate);
+        return slot < 0 ? 0 : counts[slot];
+    }
+
+    /**
+     * Returns the most that any counter may undercount its candidate by. This never exceeds
+     * {@code totalVotes() / (k + 1)}.
+     *
+     * @return the largest possible undercount
+     */
+    public long errorBound() {
+        return error;
+    }
+
+    /**
+     * Returns the total number of votes recorded.
+     *
+     * @return the total number of votes
+     */
+    public long totalVotes() {
+        return total;
+    }
+
+    /**
+     * Returns the candidate with the largest counter. This is the true winner whenever the
+     * winner's lead over the runner-up is greater than {@link #errorBound()}.
+     *
+     * @return the identifier of the likely winner, or -1 if no counters remain
+     */
+    public int winner() {
+        CandidateRanking top = topK(1);
+        return top.size() == 0 ? -1 : top.candidate(0);
+    }
+
+    /**
+     * Returns the candidates holding the largest counters and their estimated counts, best first.
+     *
+     * @param k the largest number of candidates to return
+     * @return a ranking of up to {@code k} candidates by their lower-bound counts
+     */
+    public CandidateRanking topK(int k) {
+        VoteTally tally = new VoteTally(size);
+        for (int i = 0; i < counts.length; i++) {
+            if (used[i]) {
+                tally.add(candidates[i], counts[i]);
+            }
+        }
+        return tally.topK(k);
+    }
+
+    /**
+     * Counts the votes for the candidates that hold counters exactly, ignoring every other
+     * candidate, and ranks them. Memory stays bounded by the number of counters.
+     *
+     * @param votes the ballot this summary was built from
+     * @return a ranking of the surviving candidates by their exact counts
+     */
+    public CandidateRanking recount(int[] votes) {
+        VoteTally tally = survivors();
+        for (int vote : votes) {
+            tally.addIfPresent(vote);
+        }
+        return tally.ranking();
+    }
+
+    /**
+     * Counts the votes remaining in a buffer for the candidates that hold counters exactly.
+     * The buffer's position is not changed.
+     *
+     * @param votes the ballot this summary was built from
+     * @return a ranking of the surviving candidates by their exact counts
+     */
+    public CandidateRanking recount(IntBuffer votes) {
+        VoteTally tally = survivors();
+        for (int i = votes.position(); i < votes.limit(); i++) {
+            tally.addIfPresent(votes.get(i));
+        }
+        return tally.ranking();
+    }
+
+    // Returns a tally holding every surviving candidate with a count of zero
+    private VoteTally survivors() {
+        VoteTally tally = new VoteTally(size);
+        for (int i = 0; i < counts.length; i++) {
+            if (used[i]) {
+                tally.add(candidates[i], 0);
+            }
+        }
+        return tally;
+    }
+
+    private int find(int candidate) {
+        int mask = candidates.length - 1;
+        int slot = VoteTally.mix(candidate) & mask;
+        while (used[slot]) {
+            if (candidates[slot] == candidate) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    // Adds to a candidate's counter, creating it if needed and growing the table if it fills up
+    private void insert(int candidate, long votes) {
+        int mask = candidates.length - 1;
+        int slot = VoteTally.mix(candidate) & mask;
+        while (used[slot]) {
+            if (candidates[slot] == candidate) {
+                counts[slot] += votes;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        used[slot] = true;
+        candidates[slot] = candidate;
+        counts[slot] = votes;
+        if (++size > (candidates.length >> 1) + (candidates.length >> 2)) {
+            rebuild(candidates.length << 1, 0);
+        }
+    }
+
+    // Subtracts an amount from every counter and drops the counters that reach zero
+    private void subtract(long amount) {
+        error += amount;
+        rebuild(candidates.length, amount);
+    }
+
+    // Rehashes the counters into a table of the given capacity, less the given amount each
+    private void rebuild(int capacity, long amount) {
+        int[] oldCandidates = candidates;
+        long[] oldCounts = counts;
+        boolean[] oldUsed = used;
+        candidates = new int[capacity];
+        counts = new long[capacity];
+        used = new boolean[capacity];
+        size = 0;
+        int mask = capacity - 1;
+        for (int i = 0; i < oldCandidates.length; i++) {
+            if (oldUsed[i] && oldCounts[i] > amount) {
+                int slot = VoteTally.mix(oldCandidates[i]) & mask;
+                while (used[slot]) {
+                    slot = (slot + 1) & mask;
+                }
+                used[slot] = true;
+                candidates[slot] = oldCandidates[i];
+                counts[slot] = oldCounts[i] - amount;
+                size++;
+            }
+        }
+    }
+}
@@ -0,0 +1,512 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.IntStream;
+
+/**
+ * A single-pass vote counter that tallies candidate identifiers without boxing or sorting.
+ * Counts are kept in an open-addressing hash table of primitive arrays, so any 32-bit
+ * candidate identifier can be counted and the input is never modified.
+ */
+public class VoteTally {
+
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final int READ_BUFFER_SIZE = 1 << 16;
+
+    /**
+     * The default number of votes below which a parallel count stops splitting the array.
+     */
+    public static final int DEFAULT_PARALLEL_THRESHOLD = 1 << 16;
+
+    private int[] candidates;
+    private long[] counts;
+    private boolean[] used;
+    private int distinct;
+    private long total;
+    private final int maxDistinct;
+
+    /**
+     * Creates an empty tally that grows as new candidates are seen.
+     */
+    public VoteTally() {
+        this(DEFAULT_CAPACITY, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Creates an empty tally sized for the expected number of distinct candidates.
+     *
+     * @param expectedCandidates the expected number of distinct candidates
+     */
+    public VoteTally(int expectedCandidates) {
+        this(expectedCandidates, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Creates an empty tally that holds at most the given number of distinct candidates.
+     *
+     * @param expectedCandidates the expected number of distinct candidates
+     * @param maxDistinct the largest number of distinct candidates this tally may hold
+     */
+    VoteTally(int expectedCandidates, int maxDistinct) {
+        if (expectedCandidates < 0 || maxDistinct < 1) {
+            throw new IllegalArgumentException("Invalid tally size");
+        }
+        this.maxDistinct = maxDistinct;
+        int capacity = tableSizeFor(Math.min(expectedCandidates, maxDistinct));
+        candidates = new int[capacity];
+        counts = new long[capacity];
+        used = new boolean[capacity];
+    }
+
+    /**
+     * Records a single vote for a candidate.
+     *
+     * @param candidate the identifier of the candidate voted for
+     * @throws IllegalStateException if this tally is bounded and the candidate would exceed the bound
+     */
+    public void add(int candidate) {
+        add(candidate, 1);
+    }
+
+    /**
+     * Records a number of votes for a candidate.
+     *
+     * @param candidate the identifier of the candidate voted for
+     * @param votes the number of votes to record
+     * @throws IllegalStateException if this tally is bounded and the candidate would exceed the bound
+     */
+    public void add(int candidate, long votes) {
+        int mask = candidates.length - 1;
+        int slot = mix(candidate) & mask;
+        while (used[slot]) {
+            if (candidates[slot] == candidate) {
+                counts[slot] += votes;
+                total += votes;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (distinct == maxDistinct) {
+            throw new IllegalStateException("More than " + maxDistinct + " distinct candidates");
+        }
+        used[slot] = true;
+        candidates[slot] = candidate;
+        counts[slot] = votes;
+        total += votes;
+        if (++distinct > (candidates.length >> 1) + (candidates.length >> 2)) {
+            resize(candidates.length << 1);
+        }
+    }
+
+    /**
+     * Records a vote for a candidate only if the candidate is already in this tally.
+     *
+     * @param candidate the identifier of the candidate voted for
+     * @return true if the vote was recorded
+     */
+    boolean addIfPresent(int candidate) {
+        int mask = candidates.length - 1;
+        int slot = mix(candidate) & mask;
+        while (used[slot]) {
+            if (candidates[slot] == candidate) {
+                counts[slot]++;
+                total++;
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * Returns true if this tally is bounded and already holds as many candidates as it may, so
+     * that a vote for a new candidate would be rejected by {@link #add(int)}.
+     *
+     * @return true if no new candidate can be added
+     */
+    boolean isFull() {
+        return distinct == maxDistinct;
+    }
+
+    /**
+     * Removes every vote from this tally, keeping its table for reuse.
+     */
+    void clear() {
+        Arrays.fill(used, false);
+        distinct = 0;
+        total = 0;
+    }
+
+    /**
+     * Records every vote in an array. The array is not modified.
+     *
+     * @param votes the votes to record
+     */
+    public void addAll(int[] votes) {
+        addAll(votes, 0, votes.length);
+    }
+
+    /**
+     * Records the votes in a range of an array. The array is not modified.
+     *
+     * @param votes the array containing the votes
+     * @param from the first index to record, inclusive
+     * @param to the last index to record, exclusive
+     */
+    public void addAll(int[] votes, int from, int to) {
+        for (int i = from; i < to; i++) {
+            add(votes[i], 1);
+        }
+    }
+
+    /**
+     * Records every vote produced by a stream. The stream is consumed sequentially.
+     *
+     * @param votes the stream of votes to record
+     */
+    public void addAll(IntStream votes) {
+        votes.sequential().forEach(this::add);
+    }
+
+    /**
+     * Records every vote remaining in a buffer. The buffer's position is not changed.
+     *
+     * @param votes the buffer of votes to record
+     */
+    public void addAll(IntBuffer votes) {
+        if (votes.hasArray()) {
+            addAll(votes.array(), votes.arrayOffset() + votes.position(), votes.arrayOffset() + votes.limit());
+            return;
+        }
+        for (int i = votes.position(); i < votes.limit(); i++) {
+            add(votes.get(i), 1);
+        }
+    }
+
+    /**
+     * Records every vote read from a stream in the ballot file format: 32-bit integers in
+     * {@link BallotFileReader#BYTE_ORDER}, which is little-endian.
+     *
+     * @param in the stream to read the votes from
+     * @throws IOException if reading fails or the stream ends in the middle of a vote
+     */
+    public void addAll(InputStream in) throws IOException {
+        addAll(in, BallotFileReader.BYTE_ORDER);
+    }
+
+    /**
+     * Records every vote read from a stream of 32-bit integers in the given byte order.
+     *
+     * @param in the stream to read the votes from
+     * @param order the byte order of the integers in the stream
+     * @throws IOException if reading fails or the stream ends in the middle of a vote
+     */
+    public void addAll(InputStream in, ByteOrder order) throws IOException {
+        byte[] bytes = new byte[READ_BUFFER_SIZE];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(order);
+        int pending = 0;
+        int read;
+        while ((read = in.read(bytes, pending, bytes.length - pending)) != -1) {
+            int available = pending + read;
+            int whole = available & ~3;
+            for (int i = 0; i < whole; i += 4) {
+                add(buffer.getInt(i), 1);
+            }
+            // Carry any partial vote over to the start of the buffer
+            pending = available - whole;
+            System.arraycopy(bytes, whole, bytes, 0, pending);
+        }
+        if (pending != 0) {
+            throw new IOException("Stream ended in the middle of a vote");
+        }
+    }
+
+    /**
+     * Counts an array of votes in parallel on the common fork/join pool.
+     *
+     * @param votes the votes to count
+     * @return a tally of the votes
+     */
+    public static VoteTally countParallel(int[] votes) {
+        return countParallel(votes, DEFAULT_PARALLEL_THRESHOLD, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Counts an array of votes in parallel. The array is split in half until a piece holds
+     * no more than {@code threshold} votes; each piece is counted into its own tally and the
+     * partial tallies are merged as the halves complete. Inputs no larger than the threshold
+     * are counted on the calling thread.
+     *
+     * @param votes the votes to count
+     * @param threshold the largest number of votes counted by a single task
+     * @param pool the pool to run the count in
+     * @return a tally of the votes
+     */
+    public static VoteTally countParallel(int[] votes, int threshold, ForkJoinPool pool) {
+        if (threshold < 1) {
+            throw new IllegalArgumentException("threshold must be positive");
+        }
+        if (votes.length <= threshold) {
+            VoteTally tally = new VoteTally();
+            tally.addAll(votes);
+            return tally;
+        }
+        return pool.invoke(new CountTask(votes, 0, votes.length, threshold));
+    }
+
+    /**
+     * A fork/join task that counts a range of a vote array into its own tally.
+     */
+    private static class CountTask extends RecursiveTask<VoteTally> {
+        private final int[] votes;
+        private final int from;
+        private final int to;
+        private final int threshold;
+
+        CountTask(int[] votes, int from, int to, int threshold) {
+            this.votes = votes;
+            this.from = from;
+            this.to = to;
+            this.threshold = threshold;
+        }
+
+        @Override
+        protected VoteTally compute() {
+            if (to - from <= threshold) {
+                VoteTally tally = new VoteTally();
+                tally.addAll(votes, from, to);
+                return tally;
+            }
+            int mid = (from + to) >>> 1;
+            CountTask left = new CountTask(votes, from, mid, threshold);
+            left.fork();
+            VoteTally right = new CountTask(votes, mid, to, threshold).compute();
+            VoteTally merged = left.join();
+            // Merge the smaller table into the larger one
+            if (merged.distinct < right.distinct) {
+                right.merge(merged);
+                return right;
+            }
+            merged.merge(right);
+            return merged;
+        }
+    }
+
+    /**
+     * Adds every count in another tally to this one.
+     *
+     * @param other the tally to merge into this one
+     */
+    public void merge(VoteTally other) {
+        for (int i = 0; i < other.candidates.length; i++) {
+            if (other.used[i]) {
+                add(other.candidates[i], other.counts[i]);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of votes recorded for a candidate.
+     *
+     * @param candidate the identifier of the candidate
+     * @return the number of votes recorded for the candidate
+     */
+    public long count(int candidate) {
+        int mask = candidates.length - 1;
+        int slot = mix(candidate) & mask;
+        while (used[slot]) {
+            if (candidates[slot] == candidate) {
+                return counts[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the number of distinct candidates that received votes.
+     *
+     * @return the number of distinct candidates
+     */
+    public int distinctCandidates() {
+        return distinct;
+    }
+
+    /**
+     * Returns the total number of votes recorded.
+     *
+     * @return the total number of votes
+     */
+    public long totalVotes() {
+        return total;
+    }
+
+    /**
+     * Returns the candidate with the most votes. Ties go to the candidate with the lowest identifier.
+     *
+     * @return the identifier of the winning candidate, or -1 if no votes were recorded
+     */
+    public int winner() {
+        int winner = -1;
+        long maxVotes = 0;
+        for (int i = 0; i < candidates.length; i++) {
+            if (used[i] && (counts[i] > maxVotes || counts[i] == maxVotes && candidates[i] < winner)) {
+                winner = candidates[i];
+                maxVotes = counts[i];
+            }
+        }
+        return winner;
+    }
+
+    /**
+     * Returns the number of votes received by the winning candidate.
+     *
+     * @return the winning vote count, or 0 if no votes were recorded
+     */
+    public long winnerCount() {
+        return distinct == 0 ? 0 : count(winner());
+    }
+
+    /**
+     * Returns the candidates with the most votes and their counts, best first. A bounded min-heap
+     * of table slots holds the best {@code k} seen so far, so this takes O(n log k) time and O(k)
+     * extra space for n distinct candidates.
+     *
+     * @param k the largest number of candidates to return
+     * @return a ranking of up to {@code k} candidates
+     */
+    public CandidateRanking topK(int k) {
+        if (k < 0) {
+            throw new IllegalArgumentException("k must not be negative");
+        }
+        int size = Math.min(k, distinct);
+        int[] heap = new int[size];
+        int heapSize = 0;
+        for (int slot = 0; slot < candidates.length && size > 0; slot++) {
+            if (!used[slot]) {
+                continue;
+            }
+            if (heapSize < size) {
+                heap[heapSize] = slot;
+                worstUp(heap, heapSize++);
+            } else if (ranksAhead(slot, heap[0])) {
+                heap[0] = slot;
+                worstDown(heap, heapSize, 0);
+            }
+        }
+        // Repeatedly remove the worst candidate, filling the result from the back
+        int[] ranked = new int[size];
+        long[] votes = new long[size];
+        while (heapSize > 0) {
+            int slot = heap[0];
+            heap[0] = heap[--heapSize];
+            worstDown(heap, heapSize, 0);
+            ranked[heapSize] = candidates[slot];
+            votes[heapSize] = counts[slot];
+        }
+        return new CandidateRanking(ranked, votes);
+    }
+
+    /**
+     * Returns every candidate that received a vote and their counts, best first.
+     *
+     * @return a ranking of all candidates
+     */
+    public CandidateRanking ranking() {
+        return topK(distinct);
+    }
+
+    // Returns true if the candidate in the first slot ranks ahead of the one in the second
+    private boolean ranksAhead(int slot, int otherSlot) {
+        return counts[slot] > counts[otherSlot]
+                || counts[slot] == counts[otherSlot] && candidates[slot] < candidates[otherSlot];
+    }
+
+    // Moves a slot towards the root of a heap that keeps the worst-ranked candidate on top
+    private void worstUp(int[] heap, int i) {
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (!ranksAhead(heap[parent], heap[i])) {
+                break;
+            }
+            int t = heap[i];
+            heap[i] = heap[parent];
+            heap[parent] = t;
+            i = parent;
+        }
+    }
+
+    // Moves a slot away from the root of a heap that keeps the worst-ranked candidate on top
+    private void worstDown(int[] heap, int heapSize, int i) {
+        while (true) {
+            int worst = i;
+            for (int child = 2 * i + 1; child <= 2 * i + 2 && child < heapSize; child++) {
+                if (ranksAhead(heap[worst], heap[child])) {
+                    worst = child;
+                }
+            }
+            if (worst == i) {
+                return;
+            }
+            int t = heap[i];
+            heap[i] = heap[worst];
+            heap[worst] = t;
+            i = worst;
+        }
+    }
+
+    /**
+     * Copies every candidate and its count into the given arrays, in no particular order.
+     *
+     * @param candidates an array of at least {@link #distinctCandidates()} elements for the candidates
+     * @param votes an array of at least {@link #distinctCandidates()} elements for the counts
+     */
+    void copyTo(int[] candidates, long[] votes) {
+        int n = 0;
+        for (int i = 0; i < this.candidates.length; i++) {
+            if (used[i]) {
+                candidates[n] = this.candidates[i];
+                votes[n++] = counts[i];
+            }
+        }
+    }
+
+    // Rehashes every candidate into a table of the given power-of-two capacity
+    private void resize(int capacity) {
+        int[] oldCandidates = candidates;
+        long[] oldCounts = counts;
+        boolean[] oldUsed = used;
+        candidates = new int[capacity];
+        counts = new long[capacity];
+        used = new boolean[capacity];
+        int mask = capacity - 1;
+        for (int i = 0; i < oldCandidates.length; i++) {
+            if (oldUsed[i]) {
+                int slot = mix(oldCandidates[i]) & mask;
+                while (used[slot]) {
+                    slot = (slot + 1) & mask;
+                }
+                used[slot] = true;
+                candidates[slot] = oldCandidates[i];
+                counts[slot] = oldCounts[i];
+            }
+        }
+    }
+
+    // Spreads the bits of a candidate identifier so sequential ids do not cluster
+    static int mix(int candidate) {
+        int h = candidate * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    // Returns the smallest power-of-two table that keeps the given count under the load factor
+    private static int tableSizeFor(int expected) {
+        long needed = Math.max(DEFAULT_CAPACITY, (long) expected * 4 / 3 + 1);
+        return (int) Math.min(1 << 30, Long.highestOneBit(needed - 1) << 1);
+    }
+}
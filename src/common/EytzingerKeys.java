@@ -0,0 +1,210 @@
+package common;
+
+import java.util.Objects;
+
+/**
+ * Keys packed into an array in Eytzinger order, the search structure behind
+ * {@code question_1.FrozenBinaryTree} and {@code question_2.FrozenAVLTreeMap}; it lives in its
+ * own package so that neither of those depends on the other. The root of a complete binary
+ * search tree is at slot 1, and the children of the key at slot i are at slots 2i and 2i + 1;
+ * slot 0 is unused and stands for "no key". A search makes the same comparisons as a descent
+ * through a balanced tree, but computes each next slot from the comparison instead of loading a
+ * child pointer from a node, and always runs to the bottom, so its loop has no branch whose
+ * direction depends on the keys.
+ *
+ * <p>The first few levels share a handful of cache lines, which stay cached between searches.
+ * Deeper down, only keys at the same depth are adjacent: the sixteen keys four levels below slot
+ * i are in slots 16i to 16i + 15, but the three levels in between are elsewhere, so each of the
+ * lower levels of a search can still miss the cache, as in a tree. Java has no prefetch
+ * instruction, and no slots are fetched ahead of the search.
+ *
+ * <p>When every key is an Integer, or every key is a Long, the keys are also copied into a long
+ * array, and searches for a key of that class compare those instead of loading a key object at
+ * each level. A caller storing something alongside each key, such as a map's values, lays it out
+ * in the same order with {@link #layout(Object[], int)}.
+ * @param <K> the type of keys
+ */
+public final class EytzingerKeys<K extends Comparable<K>> {
+
+    private final Object[] keys;
+    // The keys again as longs, in the same order, if every key is an Integer or every key is a Long
+    private final long[] primitiveKeys;
+    private final Class<?> primitiveType;
+    private final int size;
+
+    /**
+     * Packs keys given in ascending order into Eytzinger order.
+     * @param sortedKeys the keys in strictly ascending order, none of them null
+     * @param size the number of keys, from the start of the array
+     */
+    public EytzingerKeys(Object[] sortedKeys, int size) {
+        this.size = size;
+        this.keys = layout(sortedKeys, size);
+        Class<?> type = size > 0 ? keys[1].getClass() : null;
+        boolean primitive = (type == Integer.class || type == Long.class) && allOfType(type);
+        primitiveType = primitive ? type : null;
+        primitiveKeys = primitive ? new long[size + 1] : null;
+        if (primitive) {
+            for (int slot = 1; slot <= size; slot++) {
+                primitiveKeys[slot] = ((Number) keys[slot]).longValue();
+            }
+        }
+    }
+
+    /**
+     * Returns a copy of the first {@code size} elements of a sorted array, moved to their slots in
+     * Eytzinger order: the element at index j of the sorted array goes to the slot of the j-th
+     * smallest key.
+     * @param sorted the elements in key order
+     * @param size the number of elements
+     * @return an array of {@code size + 1} elements, with slot 0 empty
+     */
+    public static Object[] layout(Object[] sorted, int size) {
+        Object[] slots = new Object[size + 1];
+        fill(sorted, slots, 0, 1);
+        return slots;
+    }
+
+    // Places the sorted elements from index next on in the subtree rooted at a slot, in order;
+    // returns the index of the first sorted element not placed
+    private static int fill(Object[] sorted, Object[] slots, int next, int slot) {
+        if (slot < slots.length) {
+            next = fill(sorted, slots, next, 2 * slot);
+            slots[slot] = sorted[next];
+            next = fill(sorted, slots, next + 1, 2 * slot + 1);
+        }
+        return next;
+    }
+
+    // Returns true if every key is exactly of the given class
+    private boolean allOfType(Class<?> type) {
+        for (int slot = 1; slot <= size; slot++) {
+            if (keys[slot].getClass() != type) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of keys.
+     * @return the number of keys
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the key in a slot.
+     * @param slot a slot from 1 to {@link #size()}
+     * @return the key in the slot
+     */
+    @SuppressWarnings("unchecked")
+    public K key(int slot) {
+        return (K) keys[slot];
+    }
+
+    /**
+     * Returns the slot holding a key equal to the given one.
+     * @param key the key to search for
+     * @return the slot of the key, or 0 if there is none
+     * @throws NullPointerException if the key is null
+     */
+    public int find(K key) {
+        int slot = ceilingSlot(Objects.requireNonNull(key, "Key cannot be null"));
+        return slot != 0 && key(slot).compareTo(key) == 0 ? slot : 0;
+    }
+
+    /**
+     * Returns the slot of the least key greater than or equal to the given key. The descent
+     * records each turn as one bit of the slot number, going right while the key is larger; the
+     * answer is the last slot where it went left, found by dropping the trailing right turns.
+     * @param key the key to search at or above
+     * @return the slot found, or 0 if every key is smaller
+     */
+    public int ceilingSlot(K key) {
+        int slot = 1;
+        if (primitiveKeys != null && key.getClass() == primitiveType) {
+            long[] a = primitiveKeys;
+            long k = ((Number) key).longValue();
+            while (slot <= size) {
+                slot = 2 * slot + (a[slot] < k ? 1 : 0);
+            }
+        } else {
+            while (slot <= size) {
+                slot = 2 * slot + (key(slot).compareTo(key) < 0 ? 1 : 0);
+            }
+        }
+        return slot >> (Integer.numberOfTrailingZeros(~slot) + 1);
+    }
+
+    /**
+     * Returns the slot of the greatest key less than or equal to the given key: the last slot
+     * where the descent went right, found by dropping the trailing left turns.
+     * @param key the key to search at or below
+     * @return the slot found, or 0 if every key is larger
+     */
+    public int floorSlot(K key) {
+        int slot = 1;
+        if (primitiveKeys != null && key.getClass() == primitiveType) {
+            long[] a = primitiveKeys;
+            long k = ((Number) key).longValue();
+            while (slot <= size) {
+                slot = 2 * slot + (a[slot] <= k ? 1 : 0);
+            }
+        } else {
+            while (slot <= size) {
+                slot = 2 * slot + (key(slot).compareTo(key) <= 0 ? 1 : 0);
+            }
+        }
+        return slot >> (Integer.numberOfTrailingZeros(slot) + 1);
+    }
+
+    /**
+     * Returns the slot of the smallest key: the leftmost slot.
+     * @return the slot of the first key, or 0 if there are no keys
+     */
+    public int first() {
+        if (size == 0) {
+            return 0;
+        }
+        int slot = 1;
+        while (2 * slot <= size) {
+            slot = 2 * slot;
+        }
+        return slot;
+    }
+
+    /**
+     * Returns the slot of the largest key: the rightmost slot.
+     * @return the slot of the last key, or 0 if there are no keys
+     */
+    public int last() {
+        if (size == 0) {
+            return 0;
+        }
+        int slot = 1;
+        while (2 * slot + 1 <= size) {
+            slot = 2 * slot + 1;
+        }
+        return slot;
+    }
+
+    /**
+     * Returns the slot of the key that follows the one in the given slot.
+     * @param slot a slot from 1 to {@link #size()}
+     * @return the slot of the next key in ascending order, or 0 after the last
+     */
+    public int next(int slot) {
+        if (2 * slot + 1 <= size) {
+            // The leftmost slot of the right subtree
+            slot = 2 * slot + 1;
+            while (2 * slot <= size) {
+                slot = 2 * slot;
+            }
+            return slot;
+        }
+        // Climb past the right turns, then once more to the parent of the last left turn
+        return slot >> (Integer.numberOfTrailingZeros(~slot) + 1);
+    }
+}
@@ -0,0 +1,132 @@
+package question_1;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import common.EytzingerKeys;
+
+/**
+ * An immutable search structure made by {@link RestructureableNodeBinaryTree#freeze()}, for
+ * values that are loaded once and then only searched. The values are packed into an
+ * {@link EytzingerKeys}, which searches them by computing array indexes instead of following
+ * node pointers.
+ *
+ * @param <T> the type of data stored in the tree
+ */
+public class FrozenBinaryTree<T extends Comparable<T>> implements Iterable<T> {
+
+    private final EytzingerKeys<T> values;
+
+    /**
+     * Packs values given in ascending order into Eytzinger order.
+     *
+     * @param sorted the values in ascending order
+     * @param size   the number of values
+     */
+    FrozenBinaryTree(Object[] sorted, int size) {
+        this.values = new EytzingerKeys<>(sorted, size);
+    }
+
+    /**
+     * Returns the number of values in this tree.
+     *
+     * @return the number of values
+     */
+    public int size() {
+        return values.size();
+    }
+
+    /**
+     * Returns the stored value equal to the given one.
+     *
+     * @param value the value to search for
+     * @return the equal value in the tree, or null if there is none
+     */
+    public T find(T value) {
+        int slot = values.find(value);
+        return slot == 0 ? null : values.key(slot);
+    }
+
+    /**
+     * Returns true if the tree holds a value equal to the given one.
+     *
+     * @param value the value to search for
+     * @return true if the value is in the tree
+     */
+    public boolean contains(T value) {
+        return find(value) != null;
+    }
+
+    /**
+     * Returns the greatest value in the tree that is less than or equal to the given one.
+     *
+     * @param value the value to search at or below
+     * @return the value found, or null if there is none
+     */
+    public T floor(T value) {
+        int slot = values.floorSlot(value);
+        return slot == 0 ? null : values.key(slot);
+    }
+
+    /**
+     * Returns the least value in the tree that is greater than or equal to the given one.
+     *
+     * @param value the value to search at or above
+     * @return the value found, or null if there is none
+     */
+    public T ceiling(T value) {
+        int slot = values.ceilingSlot(value);
+        return slot == 0 ? null : values.key(slot);
+    }
+
+    /**
+     * Returns an iterator over the values in ascending order.
+     *
+     * @return an iterator over the values
+     */
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<T>() {
+            private int slot = values.first();
+
+            @Override
+            public boolean hasNext() {
+                return slot != 0;
+            }
+
+            @Override
+            public T next() {
+                if (slot == 0) {
+                    throw new NoSuchElementException();
+                }
+                T value = values.key(slot);
+                slot = values.next(slot);
+                return value;
+            }
+        };
+    }
+
+    /**
+     * Returns a new mutable tree holding the values of this one, balanced and built in O(n) time.
+     *
+     * @return a mutable copy of this tree
+     */
+    public RestructureableNodeBinaryTree<T> thaw() {
+        return thaw(RestructureableNodeBinaryTree.Policy.NONE);
+    }
+
+    /**
+     * Returns a new mutable tree holding the values of this one, balanced and built in O(n) time,
+     * that reshapes itself by the given policy from then on.
+     *
+     * @param policy how the new tree reshapes itself after each operation
+     * @return a mutable copy of this tree
+     */
+    public RestructureableNodeBinaryTree<T> thaw(RestructureableNodeBinaryTree.Policy policy) {
+        Object[] sorted = new Object[values.size()];
+        int i = 0;
+        for (int slot = values.first(); slot != 0; slot = values.next(slot)) {
+            sorted[i++] = values.key(slot);
+        }
+        return RestructureableNodeBinaryTree.fromSorted(sorted, sorted.length, policy);
+    }
+}
@@ -1,23 +1,86 @@
 package question_1;
 
 import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Stack;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
 
 /**
  * A binary tree that can be restructured by moving nodes around.
  *
+ * <p>By default the tree only changes shape when {@link #restructure(Node)} is called. A tree
+ * created with a {@link Policy} other than {@link Policy#NONE} reshapes itself as it is used.
+ *
  * @param <T> the type of data stored in the tree
  */
-public class RestructureableNodeBinaryTree<T extends Comparable<T>> {
+public class RestructureableNodeBinaryTree<T extends Comparable<T>> implements Iterable<T> {
+
+    /**
+     * How the tree reshapes itself after each operation.
+     */
+    public enum Policy {
+        /**
+         * Never: the shape depends only on the order of insertions and deletions.
+         */
+        NONE,
+        /**
+         * Splay the node touched by every find, insert and delete to the root, by zig, zig-zig
+         * and zig-zag steps. Recently used values stay near the root, and any sequence of
+         * operations costs O(log n) amortized time each.
+         */
+        SPLAY,
+        /**
+         * Semi-splay the node touched by every operation: each step is one {@link #restructure}
+         * of the node, its parent and grandparent. A zig-zig step takes one rotation instead of
+         * two and continues from the parent, so paths are only halved in length, but the
+         * amortized bound is the same as for splaying.
+         */
+        SEMI_SPLAY,
+        /**
+         * Keep the heights of each node's subtrees within one of each other, restructuring the
+         * lowest unbalanced node after an insert and every unbalanced node on the way up after a
+         * delete. Lookups are the fastest of the balancing policies, with depth at most 1.44 log n.
+         */
+        AVL,
+        /**
+         * Colour the nodes red and black so that no red node has a red child and every path down
+         * has the same number of black nodes. Updates need at most two rotations for an insert
+         * and three for a delete, at the cost of depth up to 2 log n.
+         */
+        RED_BLACK,
+        /**
+         * Keep the size of each node's subtrees within a factor of three of each other. Subtree
+         * sizes are kept in every node, so rebalancing takes rotations near the root only rarely.
+         */
+        WEIGHT_BALANCED
+    }
+
+    // The weight-balance parameters of Hirai and Yamamoto, with weights of size + 1
+    private static final int DELTA = 3;
+    private static final int GAMMA = 2;
 
     private Node<T> root;
+    private final Policy policy;
+    // The number of insertions and deletions, used by the iterators to fail fast
+    private int modCount;
 
     /**
      * Creates a new, empty RestructureableNodeBinaryTree.
      */
     public RestructureableNodeBinaryTree() {
+        this(Policy.NONE);
+    }
+
+    /**
+     * Creates a new, empty RestructureableNodeBinaryTree that reshapes itself by a policy.
+     *
+     * @param policy how the tree reshapes itself after each operation
+     */
+    public RestructureableNodeBinaryTree(Policy policy) {
         root = null;
+        this.policy = policy;
     }
 
     /**
@@ -28,6 +91,10 @@ public class RestructureableNodeBinaryTree<T extends Comparable<T>> {
     public class Node<T> {
         T data;
         Node<T> left, right, parent;
+        // Balance metadata, kept up to date only under the policy that uses it
+        int height = 1;
+        int size = 1;
+        boolean red = true;
 
          /**
          * Creates a new Node with the specified data and parent.
@@ -79,45 +146,47 @@ public class RestructureableNodeBinaryTree<T extends Comparable<T>> {
         }
     }
 
-    // Method to find a node with a given value in the tree
+    // Method to find a node with a given value in the tree, splaying it (or the last node visited) if enabled
     public Node<T> find(T value) {
         Node<T> current = root;
+        Node<T> last = null;
         while (current != null) {
             int cmp = value.compareTo(current.data);
             if (cmp == 0) {
+                afterAccess(current);
                 return current;
-            } else if (cmp < 0) {
-                current = current.left;
-            } else {
-                current = current.right;
             }
+            last = current;
+            current = cmp < 0 ? current.left : current.right;
         }
+        afterAccess(last);
         return null;
     }
 
-    // Method to insert a value into the tree
+    // Method to insert a value into the tree, walking down from the root without recursion
     public void insert(T value) {
+        modCount++;
         if (root == null) {
             root = new Node<T>(value, null);
-        } else {
-            insert(value, root);
+            root.red = false;
+            return;
         }
-    }
-
-    // Recursive helper method to insert a value into the tree
-    private void insert(T value, Node<T> node) {
-        int cmp = value.compareTo(node.data);
-        if (cmp < 0) {
-            if (node.hasLeftChild()) {
-                insert(value, node.left);
-            } else {
-                node.left = new Node<T>(value, node);
-            }
-        } else {
-            if (node.hasRightChild()) {
-                insert(value, node.right);
+        Node<T> node = root;
+        while (true) {
+            if (value.compareTo(node.data) < 0) {
+                if (!node.hasLeftChild()) {
+                    node.left = new Node<T>(value, node);
+                    afterInsert(node.left);
+                    return;
+                }
+                node = node.left;
             } else {
-                node.right = new Node<T>(value, node);
+                if (!node.hasRightChild()) {
+                    node.right = new Node<T>(value, node);
+                    afterInsert(node.right);
+                    return;
+                }
+                node = node.right;
             }
         }
     }
@@ -130,22 +199,249 @@ public class RestructureableNodeBinaryTree<T extends Comparable<T>> {
         }
     }
 
-    // Helper method to delete a node from the tree
-    private void delete(Node<T> node) {
+    // Helper method to delete a node from the tree, returning the node that now holds its successor's value
+    private Node<T> delete(Node<T> node) {
+        modCount++;
+        Node<T> next;
+        // The node actually unlinked, which has at most one child, and the child that takes its place
+        Node<T> removed;
+        Node<T> replacement;
         if (node.hasLeftChild() && node.hasRightChild()) {
-            // Node to be deleted has two children
-            Node<T> successor = findMin(node.right);
-            node.data = successor.data;
-            delete(successor);
-        } else if (node.hasLeftChild()) {
-            // Node to be deleted has only left child
-            replace(node, node.left);
-        } else if (node.hasRightChild()) {
-            // Node to be deleted has only right child
-            replace(node, node.right);
+            // Node to be deleted has two children: it takes its successor's value, and the
+            // successor, which has no left child, is spliced out instead
+            removed = findMin(node.right);
+            node.data = removed.data;
+            replacement = removed.right;
+            next = node;
+        } else {
+            removed = node;
+            next = successor(node);
+            // Node to be deleted has only a left child, only a right child, or no children
+            replacement = node.hasLeftChild() ? node.left : node.right;
+        }
+        Node<T> removedParent = removed.parent;
+        replace(removed, replacement);
+        afterDelete(removedParent, replacement, removed.red);
+        return next;
+    }
+
+    // Reshapes the tree after a find touched the given node, according to the policy
+    private void afterAccess(Node<T> node) {
+        if (node == null) {
+            return;
+        }
+        if (policy == Policy.SPLAY) {
+            splay(node);
+        } else if (policy == Policy.SEMI_SPLAY) {
+            semiSplay(node);
+        }
+    }
+
+    // Reshapes the tree after a leaf was inserted, according to the policy
+    private void afterInsert(Node<T> leaf) {
+        switch (policy) {
+            case SPLAY:
+            case SEMI_SPLAY:
+                afterAccess(leaf);
+                break;
+            case AVL:
+            case WEIGHT_BALANCED:
+                rebalanceFrom(leaf.parent);
+                break;
+            case RED_BLACK:
+                fixRedRed(leaf);
+                break;
+            default:
+                break;
+        }
+    }
+
+    // Reshapes the tree after a node was unlinked from below the given parent, according to the policy
+    private void afterDelete(Node<T> parent, Node<T> replacement, boolean removedRed) {
+        switch (policy) {
+            case SPLAY:
+            case SEMI_SPLAY:
+                afterAccess(parent);
+                break;
+            case AVL:
+            case WEIGHT_BALANCED:
+                rebalanceFrom(parent);
+                break;
+            case RED_BLACK:
+                if (!removedRed) {
+                    fixDoubleBlack(replacement, parent);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    // Walks from a node to the root, updating heights and sizes and restructuring every node out of balance
+    private void rebalanceFrom(Node<T> node) {
+        while (node != null) {
+            update(node);
+            Node<T> grandchild = policy == Policy.AVL ? avlGrandchild(node) : weightGrandchild(node);
+            if (grandchild != null) {
+                node = trinode(grandchild);
+            }
+            node = node.parent;
+        }
+    }
+
+    // Returns the grandchild to restructure if the node is out of AVL balance, or null: the taller
+    // child's taller child, preferring the outer one on a tie so that a single rotation is used
+    private Node<T> avlGrandchild(Node<T> node) {
+        int balance = height(node.left) - height(node.right);
+        if (balance > 1) {
+            Node<T> child = node.left;
+            return height(child.left) >= height(child.right) ? child.left : child.right;
+        }
+        if (balance < -1) {
+            Node<T> child = node.right;
+            return height(child.right) >= height(child.left) ? child.right : child.left;
+        }
+        return null;
+    }
+
+    // Returns the grandchild to restructure if one side of the node outweighs the other by more
+    // than DELTA, or null: the outer grandchild for a single rotation unless the inner one is heavy
+    private Node<T> weightGrandchild(Node<T> node) {
+        int leftWeight = size(node.left) + 1;
+        int rightWeight = size(node.right) + 1;
+        if (rightWeight > DELTA * leftWeight) {
+            Node<T> child = node.right;
+            return size(child.left) + 1 < GAMMA * (size(child.right) + 1) ? child.right : child.left;
+        }
+        if (leftWeight > DELTA * rightWeight) {
+            Node<T> child = node.left;
+            return size(child.right) + 1 < GAMMA * (size(child.left) + 1) ? child.left : child.right;
+        }
+        return null;
+    }
+
+    // Restores the red-black rules after inserting a red leaf
+    private void fixRedRed(Node<T> node) {
+        while (node.parent != null && node.parent.red) {
+            Node<T> parent = node.parent;
+            Node<T> grandparent = parent.parent;
+            Node<T> uncle = parent.isLeftChild() ? grandparent.right : grandparent.left;
+            if (isRed(uncle)) {
+                // Push the grandparent's blackness down and carry on from the grandparent
+                parent.red = false;
+                uncle.red = false;
+                grandparent.red = true;
+                node = grandparent;
+            } else {
+                // A black uncle: restructure, giving a black middle node with two red children
+                Node<T> middle = trinode(node);
+                middle.red = false;
+                middle.left.red = true;
+                middle.right.red = true;
+                break;
+            }
+        }
+        root.red = false;
+    }
+
+    // Restores the red-black rules after unlinking a black node, whose place is now taken by a
+    // node (possibly null) that is one black node short on every path down
+    private void fixDoubleBlack(Node<T> node, Node<T> parent) {
+        while (node != root && !isRed(node)) {
+            boolean isLeft = node == null ? parent.left == null : node.isLeftChild();
+            Node<T> sibling = isLeft ? parent.right : parent.left;
+            if (sibling.red) {
+                // A red sibling: rotate it above the parent so that the new sibling is black
+                sibling.red = false;
+                parent.red = true;
+                rotateUp(sibling);
+                sibling = isLeft ? parent.right : parent.left;
+            }
+            Node<T> outer = isLeft ? sibling.right : sibling.left;
+            Node<T> inner = isLeft ? sibling.left : sibling.right;
+            if (isRed(outer) || isRed(inner)) {
+                // A red nephew: restructure it with the sibling and parent, and the middle node
+                // takes the parent's colour over two black children
+                boolean parentRed = parent.red;
+                Node<T> middle = trinode(isRed(outer) ? outer : inner);
+                middle.red = parentRed;
+                middle.left.red = false;
+                middle.right.red = false;
+                return;
+            }
+            // Black nephews: make the sibling red and move the shortfall up to the parent
+            sibling.red = true;
+            node = parent;
+            parent = node.parent;
+        }
+        if (node != null) {
+            node.red = false;
+        }
+    }
+
+    // Restructures a node with its parent and grandparent, returning the node now above the other two
+    private Node<T> trinode(Node<T> node) {
+        Node<T> parent = node.parent;
+        boolean zigZig = node.isLeftChild() == parent.isLeftChild();
+        restructure(node);
+        return zigZig ? parent : node;
+    }
+
+    private static boolean isRed(RestructureableNodeBinaryTree<?>.Node<?> node) {
+        return node != null && node.red;
+    }
+
+    private static int height(RestructureableNodeBinaryTree<?>.Node<?> node) {
+        return node == null ? 0 : node.height;
+    }
+
+    private static int size(RestructureableNodeBinaryTree<?>.Node<?> node) {
+        return node == null ? 0 : node.size;
+    }
+
+    // Recomputes the height and size of a node from its children
+    private static void update(RestructureableNodeBinaryTree<?>.Node<?> node) {
+        node.height = 1 + Math.max(height(node.left), height(node.right));
+        node.size = 1 + size(node.left) + size(node.right);
+    }
+
+    // Moves a node to the root by zig-zig and zig-zag steps, finishing with a zig if needed
+    private void splay(Node<T> node) {
+        while (node.parent != null) {
+            Node<T> parent = node.parent;
+            if (parent.parent == null) {
+                // Zig: the parent is the root
+                rotateUp(node);
+            } else if (node.isLeftChild() == parent.isLeftChild()) {
+                // Zig-zig: rotate the parent over the grandparent, then the node over the parent
+                rotateUp(parent);
+                rotateUp(node);
+            } else {
+                // Zig-zag: the double rotation that restructure performs
+                restructure(node);
+            }
+        }
+    }
+
+    // Moves a node towards the root by restructuring it with its parent and grandparent. After a
+    // zig-zig step the parent is the middle of the three, so splaying continues from there.
+    private void semiSplay(Node<T> node) {
+        while (node.parent != null && node.parent.parent != null) {
+            Node<T> parent = node.parent;
+            boolean zigZig = node.isLeftChild() == parent.isLeftChild();
+            restructure(node);
+            if (zigZig) {
+                node = parent;
+            }
+        }
+    }
+
+    // Rotates a node above its parent
+    private void rotateUp(Node<T> node) {
+        if (node.isLeftChild()) {
+            rotateRight(node.parent);
         } else {
-            // Node to be deleted has no children
-            replace(node, null);
+            rotateLeft(node.parent);
         }
     }
 
@@ -223,6 +519,10 @@ public class RestructureableNodeBinaryTree<T extends Comparable<T>> {
         }
         rightChild.left = node;
         node.parent = rightChild;
+        if (policy == Policy.AVL || policy == Policy.WEIGHT_BALANCED) {
+            update(node);
+            update(rightChild);
+        }
     }
 
     // Helper method to perform a right rotation at a node
@@ -242,27 +542,298 @@ public class RestructureableNodeBinaryTree<T extends Comparable<T>> {
         }
         leftChild.right = node;
         node.parent = leftChild;
+        if (policy == Policy.AVL || policy == Policy.WEIGHT_BALANCED) {
+            update(node);
+            update(leftChild);
+        }
     }
 
-    public void traverseInOrder() {
-        if (root == null) {
-            return;
+    // Method to find the node that follows a given node in order, by walking parent pointers
+    private Node<T> successor(Node<T> node) {
+        if (node.hasRightChild()) {
+            return findMin(node.right);
+        }
+        while (node.isRightChild()) {
+            node = node.parent;
         }
+        return node.parent;
+    }
 
-        Stack<Node<T>> stack = new Stack<>();
-        Node<T> current = root;
+    // Method to find the node that precedes a given node in order, by walking parent pointers
+    private Node<T> predecessor(Node<T> node) {
+        if (node.hasLeftChild()) {
+            return findMax(node.left);
+        }
+        while (node.isLeftChild()) {
+            node = node.parent;
+        }
+        return node.parent;
+    }
+
+    // Method to find the maximum node in a tree rooted at a given node
+    private Node<T> findMax(Node<T> node) {
+        while (node.hasRightChild()) {
+            node = node.right;
+        }
+        return node;
+    }
+
+    /**
+     * Returns an immutable copy of the tree's values packed into an array in Eytzinger order,
+     * which answers find, floor and ceiling without following node pointers; see
+     * {@link FrozenBinaryTree}. This tree is left unchanged.
+     *
+     * @return a frozen copy of this tree
+     */
+    public FrozenBinaryTree<T> freeze() {
+        List<T> sorted = new ArrayList<>();
+        forEach(sorted::add);
+        return new FrozenBinaryTree<>(sorted.toArray(), sorted.size());
+    }
+
+    // Method to build a balanced tree from values in ascending order, linking the nodes directly
+    static <T extends Comparable<T>> RestructureableNodeBinaryTree<T> fromSorted(Object[] sorted, int size,
+            Policy policy) {
+        RestructureableNodeBinaryTree<T> tree = new RestructureableNodeBinaryTree<>(policy);
+        int height = 32 - Integer.numberOfLeadingZeros(size);
+        tree.root = tree.build(sorted, 0, size, null, 1, height);
+        return tree;
+    }
+
+    // Recursive helper method to build the subtree for sorted[lo, hi) around its middle value. Every
+    // empty link ends up at depth height - 1 or height, so colouring only the nodes on the deepest
+    // level red satisfies the red-black rules.
+    private Node<T> build(Object[] sorted, int lo, int hi, Node<T> parent, int depth, int height) {
+        if (lo >= hi) {
+            return null;
+        }
+        int mid = (lo + hi) >>> 1;
+        @SuppressWarnings("unchecked")
+        Node<T> node = new Node<T>((T) sorted[mid], parent);
+        node.left = build(sorted, lo, mid, node, depth + 1, height);
+        node.right = build(sorted, mid + 1, hi, node, depth + 1, height);
+        update(node);
+        node.red = depth == height && depth > 1;
+        return node;
+    }
+
+    /**
+     * Returns a cursor positioned at the smallest value in the tree.
+     *
+     * @return a new cursor
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * A finger into the tree: a position at one node that can be moved by key or by step and
+     * that can delete the value it is on. Searching from the finger climbs only as far as the
+     * smallest subtree that holds both the old and the new position before descending, so a
+     * search for a key near the last one, which in a balanced tree is within distance d, takes
+     * O(log d) steps rather than a walk down from the root. Stepping to the next or previous
+     * value takes amortized O(1) steps. Finds do not splay the tree's nodes.
+     *
+     * <p>A cursor becomes invalid if the tree is inserted into or deleted from other than through
+     * the cursor, and then throws ConcurrentModificationException.
+     */
+    public class Cursor {
+        private Node<T> node = root == null ? null : findMin(root);
+        private int expectedModCount = modCount;
+
+        private Cursor() {
+        }
+
+        /**
+         * Returns true if the cursor is on a value, false if it has moved off either end of the tree.
+         *
+         * @return true if the cursor is on a value
+         */
+        public boolean isValid() {
+            checkForComodification();
+            return node != null;
+        }
+
+        /**
+         * Returns the value the cursor is on.
+         *
+         * @return the value at the cursor
+         * @throws NoSuchElementException if the cursor is not on a value
+         */
+        public T get() {
+            checkForComodification();
+            if (node == null) {
+                throw new NoSuchElementException();
+            }
+            return node.data;
+        }
 
-        while (current != null || !stack.isEmpty()) {
+        /**
+         * Moves the cursor to the smallest value not less than the key, starting from the
+         * cursor's current position.
+         *
+         * @param key the value to search for
+         * @return true if the cursor is now on a value equal to the key
+         */
+        public boolean seek(T key) {
+            checkForComodification();
+            Node<T> start = root;
+            // The least value known to be greater than the key, found while climbing
+            Node<T> bound = null;
+            if (node != null) {
+                start = node;
+                int cmp = key.compareTo(node.data);
+                if (cmp > 0) {
+                    // Climb until a left child's parent lies above the key
+                    while (start.parent != null && !(start.isLeftChild() && key.compareTo(start.parent.data) < 0)) {
+                        start = start.parent;
+                    }
+                    bound = start.parent;
+                } else if (cmp < 0) {
+                    // Climb until a right child's parent lies below the key
+                    while (start.parent != null && !(start.isRightChild() && key.compareTo(start.parent.data) > 0)) {
+                        start = start.parent;
+                    }
+                } else {
+                    return true;
+                }
+            }
+            Node<T> current = start;
             while (current != null) {
-                stack.push(current);
-                current = current.left;
+                int cmp = key.compareTo(current.data);
+                if (cmp == 0) {
+                    node = current;
+                    return true;
+                }
+                if (cmp < 0) {
+                    bound = current;
+                    current = current.left;
+                } else {
+                    current = current.right;
+                }
+            }
+            node = bound;
+            return false;
+        }
+
+        /**
+         * Moves the cursor to the next value in ascending order.
+         *
+         * @return true if the cursor is now on a value, false if it has moved past the largest
+         */
+        public boolean next() {
+            checkForComodification();
+            if (node != null) {
+                node = successor(node);
+            }
+            return node != null;
+        }
+
+        /**
+         * Moves the cursor to the previous value in ascending order.
+         *
+         * @return true if the cursor is now on a value, false if it has moved before the smallest
+         */
+        public boolean prev() {
+            checkForComodification();
+            if (node != null) {
+                node = predecessor(node);
+            }
+            return node != null;
+        }
+
+        /**
+         * Deletes the value the cursor is on from the tree, and moves the cursor to the next value.
+         *
+         * @return true if the cursor is now on a value, false if the deleted value was the largest
+         * @throws NoSuchElementException if the cursor is not on a value
+         */
+        public boolean delete() {
+            checkForComodification();
+            if (node == null) {
+                throw new NoSuchElementException();
             }
+            node = RestructureableNodeBinaryTree.this.delete(node);
+            expectedModCount = modCount;
+            return node != null;
+        }
 
-            current = stack.pop();
-            System.out.print(current.data + " ");
+        private void checkForComodification() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+        }
+    }
 
-            current = current.right;
+    /**
+     * Passes every value in the tree to the action in ascending order. The walk follows parent
+     * pointers, so it uses no stack however deep the tree is and allocates nothing.
+     *
+     * @param action the action to perform on each value
+     * @throws ConcurrentModificationException if the action inserts into or deletes from the tree
+     */
+    @Override
+    public void forEach(Consumer<? super T> action) {
+        int expectedModCount = modCount;
+        for (Node<T> node = root == null ? null : findMin(root); node != null; node = successor(node)) {
+            action.accept(node.data);
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
         }
     }
 
+    /**
+     * Returns an iterator over the values in the tree in ascending order. It moves from node to
+     * node by parent pointers, so it holds only the next node and uses O(1) space. Its
+     * {@code remove} method deletes the last value returned from the tree.
+     *
+     * @return an iterator over the values in the tree
+     */
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<T>() {
+            private Node<T> next = root == null ? null : findMin(root);
+            private Node<T> lastReturned;
+            private int expectedModCount = modCount;
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public T next() {
+                if (modCount != expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                lastReturned = next;
+                next = successor(next);
+                return lastReturned.data;
+            }
+
+            @Override
+            public void remove() {
+                if (lastReturned == null) {
+                    throw new IllegalStateException();
+                }
+                if (modCount != expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+                // Deleting a node with two children moves the next value into it
+                next = delete(lastReturned);
+                expectedModCount = modCount;
+                lastReturned = null;
+            }
+        };
+    }
+
+    // Method to print the values in the tree in ascending order
+    public void traverseInOrder() {
+        forEach(value -> System.out.print(value + " "));
+    }
+
 }
\ No newline at end of file
@@ -1,14 +1,22 @@
 package question_2;
 
 import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.stream.StreamSupport;
 
 /**
  * An implementation of a SortedMap using an AVL tree.
+ * Keys are ordered by their natural ordering. Every lookup, update and navigation method runs in
+ * O(log n) time, and the sub-map and key set views are backed by the tree rather than copied, so a
+ * range scan over k entries costs O(log n + k).
  * @param <K> the type of keys in this map
  * @param <V> the type of values in this map
  */ 
-public class AVLTreeMap<K extends Comparable<K>, V> implements SortedMap<K, V> {
-    private static class Node<K, V> {
+public class AVLTreeMap<K extends Comparable<K>, V> extends AbstractMap<K, V> implements NavigableMap<K, V> {
+    private static class Node<K, V> implements Map.Entry<K, V> {
         /**
          * The key of this node.
          */
@@ -21,6 +29,10 @@ public class AVLTreeMap<K extends Comparable<K>, V> implements SortedMap<K, V> {
          * The height of the subtree rooted at this node.
          */
         int height;
+        /**
+         * The number of nodes in the subtree rooted at this node.
+         */
+        int size;
         /**
          * The left child of this node.
          */
@@ -39,13 +51,65 @@ public class AVLTreeMap<K extends Comparable<K>, V> implements SortedMap<K, V> {
             this.key = key;
             this.value = value;
             this.height = 1;
+            this.size = 1;
             this.left = null;
             this.right = null;
         }
+
+        @Override
+        public K getKey() {
+            return key;
+        }
+
+        @Override
+        public V getValue() {
+            return value;
+        }
+
+        @Override
+        public V setValue(V value) {
+            V oldValue = this.value;
+            this.value = value;
+            return oldValue;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            return Objects.equals(key, e.getKey()) && Objects.equals(value, e.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(key) ^ Objects.hashCode(value);
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + value;
+        }
     }
 
     private Node<K, V> root;
     private int size;
+    /**
+     * The number of structural modifications, used by the iterators to fail fast.
+     */
+    private int modCount;
+
+    private KeySet keySet;
+    private Collection<V> values;
+    private Set<Map.Entry<K, V>> entrySet;
+    private NavigableMap<K, V> descendingMap;
+    /**
+     * Scratch space for the root-to-node path walked by {@link #rebalance}, reused so that
+     * updates do not allocate.
+     */
+    @SuppressWarnings("unchecked")
+    private Node<K, V>[] pathBuffer = (Node<K, V>[]) new Node[0];
 
     /**
      * Constructs an empty AVLTreeMap.
@@ -55,6 +119,16 @@ public class AVLTreeMap<K extends Comparable<K>, V> implements SortedMap<K, V> {
         this.size = 0;
     }
 
+    /**
+     * Constructs a new AVLTreeMap containing the same mappings as the given sorted map. If the map
+     * uses the natural ordering of its keys, the tree is built in O(n) time.
+     * @param map the sorted map whose mappings are to be placed in this map
+     */
+    public AVLTreeMap(SortedMap<K, ? extends V> map) {
+        this();
+        putAll(map);
+    }
+
     /**
      * Returns the number of key-value mappings in this map.
      * @return the number of key-value mappings in this map
@@ -82,7 +156,7 @@ public class AVLTreeMap<K extends Comparable<K>, V> implements SortedMap<K, V> {
      */
     @Override
     public boolean containsKey(Object key) {
-        return get(key) != null;
+        return getNode(key) != null;
     }
 
     /**
@@ -109,6 +183,18 @@ public class AVLTreeMap<K extends Comparable<K>, V> implements SortedMap<K, V> {
     */
     @Override
     public V get(Object key) {
+        Node<K, V> node = getNode(key);
+        return node == null ? null : node.value;
+    }
+
+    /**
+     * Returns the node holding the specified key, or null if this map contains no mapping for the key.
+     * @param key the key to search for
+     * @return the node holding the key, or null if there is none
+     * @throws ClassCastException if the specified key cannot be compared with the keys currently in the map
+     * @throws NullPointerException if the specified key is null
+     */
+    private Node<K, V> getNode(Object key) {
         if (key == null) {
             throw new NullPointerException("Key cannot be null");
         }
@@ -122,7 +208,7 @@ public class AVLTreeMap<K extends Comparable<K>, V> implements SortedMap<K, V> {
             } else if (cmp > 0) {
                 node = node.right;
             } else {
-                return node.value;
+                return node;
             }
         }
         return null;
@@ -144,6 +230,7 @@ public class AVLTreeMap<K extends Comparable<K>, V> implements SortedMap<K, V> {
         if (root == null) {
             root = new Node<>(key, value);
             size++;
+            modCount++;
             return null;
         }
         Node<K, V> node = root;
@@ -169,6 +256,7 @@ public class AVLTreeMap<K extends Comparable<K>, V> implements SortedMap<K, V> {
             parent.right = newNode;
         }
         size++;
+        modCount++;
         rebalance(parent);
         return null;
     }
@@ -199,6 +287,8 @@ public class AVLTreeMap<K extends Comparable<K>, V> implements SortedMap<K, V> {
                 node = node.right;
             } else {
                 V oldValue = node.value;
+                // The deepest node whose subtree changed shape; rebalancing starts there
+                Node<K, V> changed = parent;
                 if (node.left == null && node.right == null) {
                     if (node == root) {
                         root = null;
@@ -229,13 +319,16 @@ public class AVLTreeMap<K extends Comparable<K>, V> implements SortedMap<K, V> {
                     node.value = successor.value;
                     if (successor == node.right) {
                         node.right = successor.right;
+                        changed = node;
                     } else {
                         Node<K, V> successorParent = findParent(node.right, successor);
                         successorParent.left = successor.right;
+                        changed = successorParent;
                     }
                 }
                 size--;
-                rebalance(parent);
+                modCount++;
+                rebalance(changed);
                 return oldValue;
             }
         }
@@ -243,84 +336,1859 @@ public class AVLTreeMap<K extends Comparable<K>, V> implements SortedMap<K, V> {
     }
 
     /**
-    * Returns the number of key-value mappings in this map.
-    * @return the number of key-value mappings in this map
+    * Removes all of the mappings from this map.
     */
     @Override
-    public int size() {
-        return size;
+    public void clear() {
+        root = null;
+        size = 0;
+        modCount++;
     }
 
     /**
-    * Returns a set view of the keys contained in this map.
-    * @return a set view of the keys contained in this map
-    */
-    @Override
-    public Set<K> keySet() {
-        Set<K> keySet = new HashSet<>();
-        addKeys(root, keySet);
-        return keySet;
+     * Returns the node with the smallest key in the subtree rooted at the given node.
+     * @param node the root of the subtree, which must not be null
+     * @return the leftmost node of the subtree
+     */
+    private Node<K, V> findMin(Node<K, V> node) {
+        while (node.left != null) {
+            node = node.left;
+        }
+        return node;
     }
 
     /**
-    * Adds the keys in the subtree rooted at the given node to the given set.
-    * @param node the root of the subtree
-    * @param keySet the set to add the keys to
-    */
-    private void addKeys(Node<K, V> node, Set<K> keySet) {
-        if (node != null) {
-            addKeys(node.left, keySet);
-            keySet.add(node.key);
-            addKeys(node.right, keySet);
+     * Returns the parent of a node within the subtree rooted at the given node.
+     * @param subtree the root of a subtree containing the target below its root
+     * @param target the node whose parent is wanted
+     * @return the parent of the target
+     */
+    private Node<K, V> findParent(Node<K, V> subtree, Node<K, V> target) {
+        Node<K, V> parent = subtree;
+        Node<K, V> node = target.key.compareTo(subtree.key) < 0 ? subtree.left : subtree.right;
+        while (node != target) {
+            parent = node;
+            node = target.key.compareTo(node.key) < 0 ? node.left : node.right;
         }
+        return parent;
     }
 
     /**
-    * Returns a collection view of the values contained in this map.
-    * @return a collection view of the values contained in this map
-    */
-    @Override
-    public Collection<V> values() {
-        List<V> values = new ArrayList<>();
-        addValues(root, values);
-        return values;
+     * Restores the AVL balance condition after the subtree rooted at the given node has changed
+     * shape. The nodes on the path from the root down to the node are recorded, then heights and
+     * subtree sizes are recomputed and rotations applied on the way back up to the root.
+     * @param node the deepest node whose subtree changed, or null if none did
+     */
+    private void rebalance(Node<K, V> node) {
+        if (node == null) {
+            return;
+        }
+        Node<K, V>[] path = pathBuffer;
+        if (path.length <= root.height) {
+            @SuppressWarnings("unchecked")
+            Node<K, V>[] larger = (Node<K, V>[]) new Node[root.height + 8];
+            path = pathBuffer = larger;
+        }
+        int depth = 0;
+        Node<K, V> current = root;
+        while (current != node) {
+            path[depth++] = current;
+            current = node.key.compareTo(current.key) < 0 ? current.left : current.right;
+        }
+        path[depth++] = node;
+        for (int i = depth - 1; i >= 0; i--) {
+            Node<K, V> subtree = path[i];
+            Node<K, V> balanced = balance(subtree);
+            if (i == 0) {
+                root = balanced;
+            } else if (path[i - 1].left == subtree) {
+                path[i - 1].left = balanced;
+            } else {
+                path[i - 1].right = balanced;
+            }
+        }
+        Arrays.fill(path, 0, depth, null);
     }
 
     /**
-    * Adds the values in the subtree rooted at the given node to the given list.
-    * @param node the root of the subtree
-    * @param values the list to add the values to
-    */
-    private void addValues(Node<K, V> node, List<V> values) {
-        if (node != null) {
-            addValues(node.left, values);
-            values.add(node.value);
-            addValues(node.right, values);
+     * Updates the height of a node and rotates its subtree if its children's heights differ by more than one.
+     * @param node the root of the subtree to balance
+     * @return the root of the balanced subtree
+     */
+    private Node<K, V> balance(Node<K, V> node) {
+        update(node);
+        int balance = height(node.left) - height(node.right);
+        if (balance > 1) {
+            if (height(node.left.left) < height(node.left.right)) {
+                node.left = rotateLeft(node.left);
+            }
+            return rotateRight(node);
         }
+        if (balance < -1) {
+            if (height(node.right.right) < height(node.right.left)) {
+                node.right = rotateRight(node.right);
+            }
+            return rotateLeft(node);
+        }
+        return node;
     }
 
     /**
-    * Returns a set view of the mappings contained in this map.
-    * @return a set view of the mappings contained in this map
-    */
+     * Rotates the subtree rooted at the given node to the left.
+     * @param node the root of the subtree, which must have a right child
+     * @return the new root of the subtree
+     */
+    private Node<K, V> rotateLeft(Node<K, V> node) {
+        Node<K, V> right = node.right;
+        node.right = right.left;
+        right.left = node;
+        update(node);
+        update(right);
+        return right;
+    }
+
+    /**
+     * Rotates the subtree rooted at the given node to the right.
+     * @param node the root of the subtree, which must have a left child
+     * @return the new root of the subtree
+     */
+    private Node<K, V> rotateRight(Node<K, V> node) {
+        Node<K, V> left = node.left;
+        node.left = left.right;
+        left.right = node;
+        update(node);
+        update(left);
+        return left;
+    }
+
+    /**
+     * Recomputes the height and subtree size of a node from those of its children.
+     * @param node the node to update
+     */
+    private static void update(Node<?, ?> node) {
+        node.height = Math.max(height(node.left), height(node.right)) + 1;
+        node.size = size(node.left) + size(node.right) + 1;
+    }
+
+    /**
+     * Returns the number of nodes in a subtree.
+     * @param node the root of the subtree, or null
+     * @return the size of the subtree
+     */
+    private static int size(Node<?, ?> node) {
+        return node == null ? 0 : node.size;
+    }
+
+    /**
+     * Returns the height of a subtree, where an empty subtree has height 0.
+     * @param node the root of the subtree, or null
+     * @return the height of the subtree
+     */
+    private static int height(Node<?, ?> node) {
+        return node == null ? 0 : node.height;
+    }
+
+    /**
+     * Returns the number of keys in this map that are strictly less than the given key, which is
+     * the index the key has, or would have, in ascending order.
+     * @param key the key to rank
+     * @return the number of keys less than the key
+     * @throws NullPointerException if the key is null
+     */
+    public int rank(K key) {
+        return countBelow(key, false);
+    }
+
+    /**
+     * Returns the key at the given index in ascending order.
+     * @param index the index of the key, where 0 is the first key
+     * @return the key with exactly {@code index} smaller keys in this map
+     * @throws IndexOutOfBoundsException if the index is negative or not less than the size of this map
+     */
+    public K select(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        Node<K, V> node = root;
+        while (true) {
+            int leftSize = size(node.left);
+            if (index < leftSize) {
+                node = node.left;
+            } else if (index > leftSize) {
+                index -= leftSize + 1;
+                node = node.right;
+            } else {
+                return node.key;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of keys in this map that are at least {@code lo} and less than {@code hi}.
+     * @param lo the lower bound, inclusive
+     * @param hi the upper bound, exclusive
+     * @return the number of keys in the range, or 0 if {@code hi} is not greater than {@code lo}
+     * @throws NullPointerException if either bound is null
+     */
+    public int countInRange(K lo, K hi) {
+        return Math.max(0, countBelow(hi, false) - countBelow(lo, false));
+    }
+
+    /**
+     * Counts the keys below a bound by summing the sizes of the left subtrees passed on the way down.
+     * @param key the bound
+     * @param inclusive true to count a key equal to the bound as well
+     * @return the number of keys below (or at) the bound
+     */
+    private int countBelow(K key, boolean inclusive) {
+        if (key == null) {
+            throw new NullPointerException("Key cannot be null");
+        }
+        int count = 0;
+        Node<K, V> node = root;
+        while (node != null) {
+            int cmp = key.compareTo(node.key);
+            if (cmp < 0) {
+                node = node.left;
+            } else if (cmp > 0) {
+                count += size(node.left) + 1;
+                node = node.right;
+            } else {
+                return count + size(node.left) + (inclusive ? 1 : 0);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Adds every entry from an iterator whose keys are in strictly ascending order. The new entries
+     * are linked into a perfectly balanced tree in O(n) time, with no comparisons beyond those that
+     * check the order; if this map already has entries, the new tree is then merged in with
+     * {@link #union}, and new values replace existing ones.
+     * @param entries the entries to add, in strictly ascending key order
+     * @throws IllegalArgumentException if the keys are not in strictly ascending order
+     * @throws NullPointerException if any key is null
+     */
+    public void putAllSorted(Iterator<? extends Map.Entry<? extends K, ? extends V>> entries) {
+        List<Node<K, V>> nodes = new ArrayList<>();
+        K previous = null;
+        while (entries.hasNext()) {
+            Map.Entry<? extends K, ? extends V> entry = entries.next();
+            previous = checkAscending(previous, entry.getKey());
+            nodes.add(new Node<>(entry.getKey(), entry.getValue()));
+        }
+        @SuppressWarnings("unchecked")
+        Node<K, V>[] array = nodes.toArray((Node<K, V>[]) new Node[nodes.size()]);
+        mergeIn(build(array, 0, array.length - 1));
+    }
+
+    /**
+     * Adds the mappings held in two parallel arrays whose keys are in strictly ascending order,
+     * building a perfectly balanced tree from them in O(n) time.
+     * @param keys the keys to add, in strictly ascending order
+     * @param values the value for each key
+     * @throws IllegalArgumentException if the arrays differ in length or the keys are not in strictly ascending order
+     * @throws NullPointerException if any key is null
+     */
+    public void putAllSorted(K[] keys, V[] values) {
+        if (keys.length != values.length) {
+            throw new IllegalArgumentException("keys and values differ in length");
+        }
+        @SuppressWarnings("unchecked")
+        Node<K, V>[] array = (Node<K, V>[]) new Node[keys.length];
+        K previous = null;
+        for (int i = 0; i < keys.length; i++) {
+            previous = checkAscending(previous, keys[i]);
+            array[i] = new Node<>(keys[i], values[i]);
+        }
+        mergeIn(build(array, 0, array.length - 1));
+    }
+
+    /**
+     * Copies all of the mappings from the specified map to this map. Another AVLTreeMap is merged
+     * in with {@link #union}, and a sorted map in natural order is bulk-loaded with
+     * {@link #putAllSorted(Iterator)}; any other map is added one entry at a time.
+     * @param map the mappings to be stored in this map
+     */
     @Override
-    public Set<Map.Entry<K, V>> entrySet() {
-        Set<Map.Entry<K, V>> entrySet = new HashSet<>();
-        addEntries(root, entrySet);
-        return entrySet;
+    public void putAll(Map<? extends K, ? extends V> map) {
+        if (map instanceof AVLTreeMap) {
+            @SuppressWarnings("unchecked")
+            AVLTreeMap<K, ? extends V> other = (AVLTreeMap<K, ? extends V>) map;
+            union(other);
+        } else if (map instanceof SortedMap && ((SortedMap<?, ?>) map).comparator() == null) {
+            putAllSorted(map.entrySet().iterator());
+        } else {
+            super.putAll(map);
+        }
+    }
+
+    /**
+     * Adds every mapping of another map to this one, replacing the values of keys present in both.
+     * The other map's tree is copied and then split and joined into this one, which takes
+     * O(m log(n / m + 1)) time for maps of sizes m &lt;= n, and never more than O(m + n).
+     * The other map is not changed.
+     * @param other the map whose mappings are added
+     */
+    public void union(AVLTreeMap<K, ? extends V> other) {
+        mergeIn(copy(other.root));
+    }
+
+    /**
+     * Removes every mapping whose key is not also a key of another map, keeping this map's values.
+     * The other map is not changed.
+     * @param other the map whose keys are kept
+     */
+    public void intersection(AVLTreeMap<K, ?> other) {
+        setRoot(intersect(root, copyKeys(other.root)));
+    }
+
+    /**
+     * Removes every mapping whose key is also a key of another map. The other map is not changed.
+     * @param other the map whose keys are removed
+     */
+    public void difference(AVLTreeMap<K, ?> other) {
+        setRoot(subtract(root, copyKeys(other.root)));
+    }
+
+    /**
+     * Checks that a key is not null and follows the previous key in strictly ascending order.
+     * @param previous the previous key, or null if this is the first
+     * @param key the key to check
+     * @return the key
+     */
+    private K checkAscending(K previous, K key) {
+        if (key == null) {
+            throw new NullPointerException("Key cannot be null");
+        }
+        if (previous != null && previous.compareTo(key) >= 0) {
+            throw new IllegalArgumentException("Keys are not in strictly ascending order: " + previous + ", " + key);
+        }
+        return key;
+    }
+
+    /**
+     * Merges a tree of new nodes into this map, with the new nodes' values taking precedence.
+     * @param tree the root of the tree to merge in, or null
+     */
+    private void mergeIn(Node<K, V> tree) {
+        setRoot(unite(root, tree));
+    }
+
+    /**
+     * Replaces the whole tree after a bulk operation.
+     * @param tree the new root, or null
+     */
+    private void setRoot(Node<K, V> tree) {
+        root = tree;
+        size = size(tree);
+        modCount++;
+    }
+
+    /**
+     * Links a run of sorted nodes into a perfectly balanced tree.
+     * @param nodes the nodes, in ascending key order
+     * @param lo the index of the first node in the run
+     * @param hi the index of the last node in the run
+     * @return the root of the tree, or null if the run is empty
+     */
+    private static <K, V> Node<K, V> build(Node<K, V>[] nodes, int lo, int hi) {
+        if (lo > hi) {
+            return null;
+        }
+        int mid = (lo + hi) >>> 1;
+        Node<K, V> node = nodes[mid];
+        node.left = build(nodes, lo, mid - 1);
+        node.right = build(nodes, mid + 1, hi);
+        update(node);
+        return node;
+    }
+
+    /**
+     * Returns a structural copy of a subtree with new nodes holding the same keys and values.
+     * @param node the root of the subtree to copy, or null
+     * @return the root of the copy
+     */
+    private static <K, V> Node<K, V> copy(Node<K, ? extends V> node) {
+        if (node == null) {
+            return null;
+        }
+        Node<K, V> copy = new Node<>(node.key, node.value);
+        copy.left = copy(node.left);
+        copy.right = copy(node.right);
+        copy.height = node.height;
+        copy.size = node.size;
+        return copy;
+    }
+
+    /**
+     * Returns a structural copy of a subtree's keys, with every value null.
+     * @param node the root of the subtree to copy, or null
+     * @return the root of the copy
+     */
+    private static <K, V> Node<K, V> copyKeys(Node<K, ?> node) {
+        if (node == null) {
+            return null;
+        }
+        Node<K, V> copy = new Node<>(node.key, null);
+        copy.left = copyKeys(node.left);
+        copy.right = copyKeys(node.right);
+        copy.height = node.height;
+        copy.size = node.size;
+        return copy;
+    }
+
+    /**
+     * The result of splitting a tree around a key.
+     */
+    private static class Split<K, V> {
+        /**
+         * The tree of keys less than the split key.
+         */
+        Node<K, V> less;
+        /**
+         * The node holding the split key, detached from both trees, or null if there was none.
+         */
+        Node<K, V> match;
+        /**
+         * The tree of keys greater than the split key.
+         */
+        Node<K, V> greater;
+    }
+
+    /**
+     * Splits a tree into the keys less than and greater than a key, reusing its nodes.
+     * @param node the root of the tree to split, or null
+     * @param key the key to split around
+     * @param split receives the two trees and the node holding the key, if any
+     */
+    private void split(Node<K, V> node, K key, Split<K, V> split) {
+        if (node == null) {
+            split.less = null;
+            split.match = null;
+            split.greater = null;
+            return;
+        }
+        int cmp = key.compareTo(node.key);
+        Node<K, V> left = node.left;
+        Node<K, V> right = node.right;
+        if (cmp == 0) {
+            split.less = left;
+            split.match = node;
+            split.greater = right;
+        } else if (cmp < 0) {
+            split(left, key, split);
+            split.greater = join(split.greater, node, right);
+        } else {
+            split(right, key, split);
+            split.less = join(left, node, split.less);
+        }
+    }
+
+    /**
+     * Joins two trees and a middle node into one balanced tree, descending the taller tree
+     * only as far as the height of the shorter one. This takes time proportional to the
+     * difference in their heights.
+     * @param left a tree whose keys are all less than the middle key
+     * @param middle a detached node
+     * @param right a tree whose keys are all greater than the middle key
+     * @return the root of the joined tree
+     */
+    private Node<K, V> join(Node<K, V> left, Node<K, V> middle, Node<K, V> right) {
+        if (height(left) > height(right) + 1) {
+            return joinRight(left, middle, right);
+        }
+        if (height(right) > height(left) + 1) {
+            return joinLeft(left, middle, right);
+        }
+        middle.left = left;
+        middle.right = right;
+        update(middle);
+        return middle;
+    }
+
+    // Joins along the right spine of a left tree that is more than one level taller
+    private Node<K, V> joinRight(Node<K, V> left, Node<K, V> middle, Node<K, V> right) {
+        Node<K, V> outer = left.left;
+        Node<K, V> spine = left.right;
+        if (height(spine) <= height(right) + 1) {
+            middle.left = spine;
+            middle.right = right;
+            update(middle);
+            if (height(middle) <= height(outer) + 1) {
+                left.right = middle;
+                update(left);
+                return left;
+            }
+            left.right = rotateRight(middle);
+            update(left);
+            return rotateLeft(left);
+        }
+        Node<K, V> joined = joinRight(spine, middle, right);
+        left.right = joined;
+        update(left);
+        return height(joined) <= height(outer) + 1 ? left : rotateLeft(left);
+    }
+
+    // Joins along the left spine of a right tree that is more than one level taller
+    private Node<K, V> joinLeft(Node<K, V> left, Node<K, V> middle, Node<K, V> right) {
+        Node<K, V> outer = right.right;
+        Node<K, V> spine = right.left;
+        if (height(spine) <= height(left) + 1) {
+            middle.left = left;
+            middle.right = spine;
+            update(middle);
+            if (height(middle) <= height(outer) + 1) {
+                right.left = middle;
+                update(right);
+                return right;
+            }
+            right.left = rotateLeft(middle);
+            update(right);
+            return rotateRight(right);
+        }
+        Node<K, V> joined = joinLeft(left, middle, spine);
+        right.left = joined;
+        update(right);
+        return height(joined) <= height(outer) + 1 ? right : rotateRight(right);
+    }
+
+    /**
+     * Joins two trees without a middle node by taking the largest node of the left tree as the middle.
+     * @param left a tree whose keys are all less than those of the right tree
+     * @param right the other tree
+     * @return the root of the joined tree
+     */
+    private Node<K, V> join(Node<K, V> left, Node<K, V> right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        Split<K, V> last = new Split<>();
+        Node<K, V> rest = removeLast(left, last);
+        return join(rest, last.match, right);
+    }
+
+    // Detaches the largest node of a tree into last.match and returns the rebalanced remainder
+    private Node<K, V> removeLast(Node<K, V> node, Split<K, V> last) {
+        if (node.right == null) {
+            last.match = node;
+            return node.left;
+        }
+        node.right = removeLast(node.right, last);
+        return balance(node);
+    }
+
+    // Union of two trees; where both hold a key, the node from the second tree is kept
+    private Node<K, V> unite(Node<K, V> first, Node<K, V> second) {
+        if (first == null) {
+            return second;
+        }
+        if (second == null) {
+            return first;
+        }
+        Node<K, V> left = second.left;
+        Node<K, V> right = second.right;
+        Split<K, V> split = new Split<>();
+        split(first, second.key, split);
+        Node<K, V> greater = split.greater;
+        return join(unite(split.less, left), second, unite(greater, right));
+    }
+
+    // Nodes of the first tree whose keys are also in the second
+    private Node<K, V> intersect(Node<K, V> first, Node<K, V> second) {
+        if (first == null || second == null) {
+            return null;
+        }
+        Node<K, V> left = first.left;
+        Node<K, V> right = first.right;
+        Split<K, V> split = new Split<>();
+        split(second, first.key, split);
+        boolean found = split.match != null;
+        Node<K, V> greater = split.greater;
+        Node<K, V> lower = intersect(left, split.less);
+        Node<K, V> upper = intersect(right, greater);
+        return found ? join(lower, first, upper) : join(lower, upper);
+    }
+
+    // Nodes of the first tree whose keys are not in the second
+    private Node<K, V> subtract(Node<K, V> first, Node<K, V> second) {
+        if (first == null) {
+            return null;
+        }
+        if (second == null) {
+            return first;
+        }
+        Node<K, V> left = second.left;
+        Node<K, V> right = second.right;
+        Split<K, V> split = new Split<>();
+        split(first, second.key, split);
+        Node<K, V> greater = split.greater;
+        return join(subtract(split.less, left), subtract(greater, right));
     }
 
     /**
-     * Adds all entries in the subtree rooted at the specified node to the specified set.
-     * @param node the root of the subtree whose entries should be added to the set
-     * @param entrySet the set to which the entries should be added
+     * Returns the node with the smallest key, or null if the map is empty.
+     * @return the first node
      */
-    private void addEntries(Node<K, V> node, Set<Map.Entry<K, V>> entrySet) {
+    private Node<K, V> firstNode() {
+        return root == null ? null : findMin(root);
+    }
+
+    /**
+     * Returns the node with the largest key, or null if the map is empty.
+     * @return the last node
+     */
+    private Node<K, V> lastNode() {
+        Node<K, V> node = root;
         if (node != null) {
-            addEntries(node.left, entrySet);
-            entrySet.add(new Entry(node.key, node.value));
-            addEntries(node.right, entrySet);
+            while (node.right != null) {
+                node = node.right;
+            }
         }
+        return node;
     }
-}
 
+    /**
+     * Returns the node whose key is closest to the given key in one direction.
+     * @param key the key to search from
+     * @param above true to find the nearest key above, false to find the nearest key below
+     * @param inclusive true if a node holding the key itself qualifies
+     * @return the nearest qualifying node, or null if there is none
+     */
+    private Node<K, V> nearNode(K key, boolean above, boolean inclusive) {
+        if (key == null) {
+            throw new NullPointerException("Key cannot be null");
+        }
+        Node<K, V> best = null;
+        Node<K, V> node = root;
+        while (node != null) {
+            int cmp = key.compareTo(node.key);
+            if (cmp == 0 && inclusive) {
+                return node;
+            }
+            if (above ? cmp < 0 : cmp > 0) {
+                best = node;
+                node = above ? node.left : node.right;
+            } else {
+                node = above ? node.right : node.left;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns an immutable snapshot of an entry, or null.
+     * @param node the node to copy, or null
+     * @return an immutable copy of the node's mapping, or null if the node is null
+     */
+    private static <K, V> Map.Entry<K, V> export(Node<K, V> node) {
+        return node == null ? null : new AbstractMap.SimpleImmutableEntry<>(node.key, node.value);
+    }
+
+    /**
+     * Returns the key of a node.
+     * @param node the node, or null
+     * @return the node's key
+     * @throws NoSuchElementException if the node is null
+     */
+    private static <K> K key(Node<K, ?> node) {
+        if (node == null) {
+            throw new NoSuchElementException();
+        }
+        return node.key;
+    }
+
+    /**
+     * Returns the key of a node, or null if there is no node.
+     * @param node the node, or null
+     * @return the node's key, or null
+     */
+    private static <K> K keyOrNull(Node<K, ?> node) {
+        return node == null ? null : node.key;
+    }
+
+    /**
+     * Returns null, as this map uses the natural ordering of its keys.
+     * @return null
+     */
+    @Override
+    public Comparator<? super K> comparator() {
+        return null;
+    }
+
+    /**
+     * Returns the first (lowest) key currently in this map.
+     * @return the first key
+     * @throws NoSuchElementException if this map is empty
+     */
+    @Override
+    public K firstKey() {
+        return key(firstNode());
+    }
+
+    /**
+     * Returns the last (highest) key currently in this map.
+     * @return the last key
+     * @throws NoSuchElementException if this map is empty
+     */
+    @Override
+    public K lastKey() {
+        return key(lastNode());
+    }
+
+    @Override
+    public Map.Entry<K, V> firstEntry() {
+        return export(firstNode());
+    }
+
+    @Override
+    public Map.Entry<K, V> lastEntry() {
+        return export(lastNode());
+    }
+
+    @Override
+    public Map.Entry<K, V> pollFirstEntry() {
+        Node<K, V> node = firstNode();
+        Map.Entry<K, V> entry = export(node);
+        if (node != null) {
+            remove(node.key);
+        }
+        return entry;
+    }
+
+    @Override
+    public Map.Entry<K, V> pollLastEntry() {
+        Node<K, V> node = lastNode();
+        Map.Entry<K, V> entry = export(node);
+        if (node != null) {
+            remove(node.key);
+        }
+        return entry;
+    }
+
+    @Override
+    public Map.Entry<K, V> lowerEntry(K key) {
+        return export(nearNode(key, false, false));
+    }
+
+    @Override
+    public K lowerKey(K key) {
+        return keyOrNull(nearNode(key, false, false));
+    }
+
+    @Override
+    public Map.Entry<K, V> floorEntry(K key) {
+        return export(nearNode(key, false, true));
+    }
+
+    @Override
+    public K floorKey(K key) {
+        return keyOrNull(nearNode(key, false, true));
+    }
+
+    @Override
+    public Map.Entry<K, V> ceilingEntry(K key) {
+        return export(nearNode(key, true, true));
+    }
+
+    @Override
+    public K ceilingKey(K key) {
+        return keyOrNull(nearNode(key, true, true));
+    }
+
+    @Override
+    public Map.Entry<K, V> higherEntry(K key) {
+        return export(nearNode(key, true, false));
+    }
+
+    @Override
+    public K higherKey(K key) {
+        return keyOrNull(nearNode(key, true, false));
+    }
+
+    /**
+    * Returns a set view of the keys contained in this map, in ascending order.
+    * The set is backed by the map, so changes to the map are reflected in the set and vice versa.
+    * @return a set view of the keys contained in this map
+    */
+    @Override
+    public Set<K> keySet() {
+        return navigableKeySet();
+    }
+
+    @Override
+    public NavigableSet<K> navigableKeySet() {
+        KeySet view = keySet;
+        return view != null ? view : (keySet = new KeySet(this));
+    }
+
+    @Override
+    public NavigableSet<K> descendingKeySet() {
+        return descendingMap().navigableKeySet();
+    }
+
+    @Override
+    public NavigableMap<K, V> descendingMap() {
+        NavigableMap<K, V> view = descendingMap;
+        return view != null ? view : (descendingMap = new SubMap(true, null, true, true, null, true, true));
+    }
+
+    @Override
+    public NavigableMap<K, V> subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+        if (fromKey.compareTo(toKey) > 0) {
+            throw new IllegalArgumentException("fromKey > toKey");
+        }
+        return new SubMap(false, fromKey, fromInclusive, false, toKey, toInclusive, false);
+    }
+
+    @Override
+    public NavigableMap<K, V> headMap(K toKey, boolean inclusive) {
+        Objects.requireNonNull(toKey);
+        return new SubMap(true, null, true, false, toKey, inclusive, false);
+    }
+
+    @Override
+    public NavigableMap<K, V> tailMap(K fromKey, boolean inclusive) {
+        Objects.requireNonNull(fromKey);
+        return new SubMap(false, fromKey, inclusive, true, null, true, false);
+    }
+
+    @Override
+    public SortedMap<K, V> subMap(K fromKey, K toKey) {
+        return subMap(fromKey, true, toKey, false);
+    }
+
+    @Override
+    public SortedMap<K, V> headMap(K toKey) {
+        return headMap(toKey, false);
+    }
+
+    @Override
+    public SortedMap<K, V> tailMap(K fromKey) {
+        return tailMap(fromKey, true);
+    }
+
+    /**
+    * Returns a collection view of the values contained in this map, in ascending order of their keys.
+    * The collection is backed by the map, so changes to the map are reflected in the collection and vice versa.
+    * @return a collection view of the values contained in this map
+    */
+    @Override
+    public Collection<V> values() {
+        Collection<V> view = values;
+        return view != null ? view : (values = new Values());
+    }
+
+    /**
+    * Returns a set view of the mappings contained in this map, in ascending key order.
+    * The set is backed by the map, so changes to the map are reflected in the set and vice versa,
+    * and {@link Map.Entry#setValue} on an entry writes through to the map.
+    * @return a set view of the mappings contained in this map
+    */
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        Set<Map.Entry<K, V>> view = entrySet;
+        return view != null ? view : (entrySet = new EntrySet());
+    }
+
+    /**
+     * Returns an immutable copy of this map packed into arrays in Eytzinger order, which answers
+     * lookups without following node pointers; see {@link FrozenAVLTreeMap}. This map is left
+     * unchanged, and {@link FrozenAVLTreeMap#thaw()} turns the copy back into an AVLTreeMap.
+     * @return a frozen copy of this map
+     */
+    public FrozenAVLTreeMap<K, V> freeze() {
+        Object[] keys = new Object[size];
+        Object[] values = new Object[size];
+        int i = 0;
+        for (Iterator<Map.Entry<K, V>> it = new EntryIterator(); it.hasNext(); i++) {
+            Map.Entry<K, V> entry = it.next();
+            keys[i] = entry.getKey();
+            values[i] = entry.getValue();
+        }
+        return new FrozenAVLTreeMap<>(keys, values, size);
+    }
+
+    /**
+     * Performs the given action on every entry of this map, using the common fork/join pool to
+     * work on disjoint subtrees at once. The action may be called from several threads, in no
+     * particular order, and must not modify the map.
+     * @param action the action to perform on each entry
+     * @throws ConcurrentModificationException if the map is structurally modified meanwhile
+     */
+    public void parallelForEach(BiConsumer<? super K, ? super V> action) {
+        Objects.requireNonNull(action);
+        StreamSupport.stream(new EntrySpliterator(), true).forEach(e -> action.accept(e.getKey(), e.getValue()));
+    }
+
+    /**
+     * Transforms every entry of this map and combines the results, working on disjoint subtrees
+     * in parallel. Entries the transformer maps to null are skipped.
+     * @param transformer the function giving the result for one entry, or null to skip it
+     * @param reducer an associative function combining two results
+     * @param <U> the type of the results
+     * @return the combination of all the results, or null if there are none
+     * @throws ConcurrentModificationException if the map is structurally modified meanwhile
+     */
+    public <U> U parallelReduce(BiFunction<? super K, ? super V, ? extends U> transformer, BinaryOperator<U> reducer) {
+        Objects.requireNonNull(transformer);
+        Objects.requireNonNull(reducer);
+        return StreamSupport.stream(new EntrySpliterator(), true)
+                .<U>map(e -> transformer.apply(e.getKey(), e.getValue()))
+                .filter(Objects::nonNull)
+                .reduce(reducer)
+                .orElse(null);
+    }
+
+    /**
+     * An iterator that walks the tree in key order, keeping the nodes whose subtrees it has yet to
+     * finish on an explicit stack. The stack never holds more nodes than the height of the tree,
+     * so iterating allocates O(log n) memory however large the map is. An iterator may start and
+     * stop at bounds, which is how the sub-map views scan a range in O(log n + k) time.
+     * @param <T> the type of element returned by the iterator
+     */
+    private abstract class TreeIterator<T> implements Iterator<T> {
+        private final boolean descending;
+        private final K fence;
+        private final boolean fenceInclusive;
+        private Node<K, V>[] stack;
+        private int depth;
+        private Node<K, V> next;
+        private Node<K, V> lastReturned;
+        private int expectedModCount = modCount;
+
+        /**
+         * Creates an iterator over the whole map in ascending order.
+         */
+        TreeIterator() {
+            this(false, null, true, null, true);
+        }
+
+        /**
+         * Creates an iterator over a range of the map.
+         * @param descending true to iterate from the highest key down
+         * @param start the key to start from, or null to start at the first key in iteration order
+         * @param startInclusive true if a node holding the start key is included
+         * @param fence the key to stop at, or null to run to the last key in iteration order
+         * @param fenceInclusive true if a node holding the fence key is included
+         */
+        TreeIterator(boolean descending, K start, boolean startInclusive, K fence, boolean fenceInclusive) {
+            this.descending = descending;
+            this.fence = fence;
+            this.fenceInclusive = fenceInclusive;
+            seek(start, startInclusive);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        /**
+         * Returns the next node in iteration order.
+         * @return the next node
+         * @throws NoSuchElementException if the iteration has no more nodes
+         * @throws ConcurrentModificationException if the map was modified other than through this iterator
+         */
+        Node<K, V> nextNode() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            Node<K, V> node = next;
+            if (node == null) {
+                throw new NoSuchElementException();
+            }
+            depth--;
+            pushSpine(descending ? node.left : node.right);
+            advance();
+            lastReturned = node;
+            return node;
+        }
+
+        @Override
+        public void remove() {
+            if (lastReturned == null) {
+                throw new IllegalStateException();
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            // Removal may rotate the tree, so find the way back to the successor from the root
+            K key = lastReturned.key;
+            AVLTreeMap.this.remove(key);
+            expectedModCount = modCount;
+            lastReturned = null;
+            seek(key, false);
+        }
+
+        /**
+         * Fills the stack with the path to the first node at or beyond the given key.
+         * @param start the key to start from, or null to start at the first key in iteration order
+         * @param inclusive true if a node holding the start key qualifies
+         */
+        private void seek(K start, boolean inclusive) {
+            @SuppressWarnings("unchecked")
+            Node<K, V>[] fresh = (Node<K, V>[]) new Node[root == null ? 0 : root.height];
+            stack = fresh;
+            depth = 0;
+            Node<K, V> node = root;
+            while (node != null) {
+                int cmp = start == null ? (descending ? 1 : -1) : start.compareTo(node.key);
+                boolean qualifies = descending ? cmp > 0 : cmp < 0;
+                if (qualifies || cmp == 0 && inclusive) {
+                    stack[depth++] = node;
+                    node = descending ? node.right : node.left;
+                } else {
+                    node = descending ? node.left : node.right;
+                }
+            }
+            advance();
+        }
+
+        private void pushSpine(Node<K, V> node) {
+            while (node != null) {
+                stack[depth++] = node;
+                node = descending ? node.right : node.left;
+            }
+        }
+
+        // Sets next to the top of the stack, unless it lies beyond the fence
+        private void advance() {
+            next = depth == 0 ? null : stack[depth - 1];
+            if (next != null && fence != null) {
+                int cmp = next.key.compareTo(fence);
+                if ((descending ? cmp < 0 : cmp > 0) || cmp == 0 && !fenceInclusive) {
+                    next = null;
+                }
+            }
+        }
+    }
+
+    private class KeyIterator extends TreeIterator<K> {
+        KeyIterator() {
+        }
+
+        KeyIterator(boolean descending, K start, boolean startInclusive, K fence, boolean fenceInclusive) {
+            super(descending, start, startInclusive, fence, fenceInclusive);
+        }
+
+        @Override
+        public K next() {
+            return nextNode().key;
+        }
+    }
+
+    private class ValueIterator extends TreeIterator<V> {
+        ValueIterator() {
+        }
+
+        ValueIterator(boolean descending, K start, boolean startInclusive, K fence, boolean fenceInclusive) {
+            super(descending, start, startInclusive, fence, fenceInclusive);
+        }
+
+        @Override
+        public V next() {
+            return nextNode().value;
+        }
+    }
+
+    private class EntryIterator extends TreeIterator<Map.Entry<K, V>> {
+        EntryIterator() {
+        }
+
+        EntryIterator(boolean descending, K start, boolean startInclusive, K fence, boolean fenceInclusive) {
+            super(descending, start, startInclusive, fence, fenceInclusive);
+        }
+
+        @Override
+        public Map.Entry<K, V> next() {
+            return nextNode();
+        }
+    }
+
+    /**
+     * A spliterator over the whole tree that splits at subtree boundaries. It covers an optional
+     * single node followed by a whole subtree, and splitting one in two hands the node and the
+     * left subtree to the new spliterator, keeping the subtree's root and right subtree for
+     * itself. Both halves are again a node and a subtree whose sizes are known exactly, and
+     * because the tree is balanced the halves differ in size by a bounded factor. Once traversal
+     * has started the spliterator walks its subtree with an explicit stack, like TreeIterator, and
+     * no longer splits.
+     * @param <T> the type of element returned by the spliterator
+     */
+    private abstract class TreeSpliterator<T> implements Spliterator<T> {
+        private Node<K, V> first;
+        private Node<K, V> tree;
+        private int remaining;
+        private Node<K, V>[] stack;
+        private int depth;
+        private final int expectedModCount;
+
+        TreeSpliterator() {
+            this(null, root, size, modCount);
+        }
+
+        TreeSpliterator(Node<K, V> first, Node<K, V> tree, int remaining, int expectedModCount) {
+            this.first = first;
+            this.tree = tree;
+            this.remaining = remaining;
+            this.expectedModCount = expectedModCount;
+        }
+
+        /**
+         * Creates a spliterator of the same kind over a node and a subtree.
+         * @param first the node to return first, or null
+         * @param tree the subtree to return after it, or null
+         * @param remaining the number of nodes covered
+         * @param expectedModCount the modification count the map must keep
+         * @return the new spliterator
+         */
+        abstract TreeSpliterator<T> create(Node<K, V> first, Node<K, V> tree, int remaining, int expectedModCount);
+
+        /**
+         * Returns the element a node holds.
+         * @param node the node
+         * @return the key, value or entry of the node
+         */
+        abstract T element(Node<K, V> node);
+
+        @Override
+        public Spliterator<T> trySplit() {
+            if (stack != null || tree == null) {
+                return null;
+            }
+            Node<K, V> node = tree;
+            int prefixSize = (first != null ? 1 : 0) + size(node.left);
+            if (prefixSize == 0) {
+                return null;
+            }
+            TreeSpliterator<T> prefix = create(first, node.left, prefixSize, expectedModCount);
+            first = node;
+            tree = node.right;
+            remaining -= prefixSize;
+            return prefix;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            Objects.requireNonNull(action);
+            Node<K, V> node = nextNode();
+            if (node == null) {
+                return false;
+            }
+            action.accept(element(node));
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super T> action) {
+            Objects.requireNonNull(action);
+            for (Node<K, V> node = nextNode(); node != null; node = nextNode()) {
+                action.accept(element(node));
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+        }
+
+        // Returns the next node in key order, or null once every node has been returned
+        private Node<K, V> nextNode() {
+            if (stack == null) {
+                @SuppressWarnings("unchecked")
+                Node<K, V>[] fresh = (Node<K, V>[]) new Node[tree == null ? 0 : tree.height];
+                stack = fresh;
+                pushSpine(tree);
+                tree = null;
+            }
+            Node<K, V> node;
+            if (first != null) {
+                node = first;
+                first = null;
+            } else if (depth > 0) {
+                node = stack[--depth];
+                pushSpine(node.right);
+            } else {
+                return null;
+            }
+            remaining--;
+            return node;
+        }
+
+        private void pushSpine(Node<K, V> node) {
+            while (node != null) {
+                stack[depth++] = node;
+                node = node.left;
+            }
+        }
+
+        @Override
+        public long estimateSize() {
+            return remaining;
+        }
+
+        @Override
+        public int characteristics() {
+            return Spliterator.ORDERED | Spliterator.SIZED | Spliterator.SUBSIZED;
+        }
+    }
+
+    private class KeySpliterator extends TreeSpliterator<K> {
+        KeySpliterator() {
+        }
+
+        KeySpliterator(Node<K, V> first, Node<K, V> tree, int remaining, int expectedModCount) {
+            super(first, tree, remaining, expectedModCount);
+        }
+
+        @Override
+        TreeSpliterator<K> create(Node<K, V> first, Node<K, V> tree, int remaining, int expectedModCount) {
+            return new KeySpliterator(first, tree, remaining, expectedModCount);
+        }
+
+        @Override
+        K element(Node<K, V> node) {
+            return node.key;
+        }
+
+        @Override
+        public int characteristics() {
+            return super.characteristics() | Spliterator.SORTED | Spliterator.DISTINCT | Spliterator.NONNULL;
+        }
+
+        @Override
+        public Comparator<? super K> getComparator() {
+            return null;
+        }
+    }
+
+    private class ValueSpliterator extends TreeSpliterator<V> {
+        ValueSpliterator() {
+        }
+
+        ValueSpliterator(Node<K, V> first, Node<K, V> tree, int remaining, int expectedModCount) {
+            super(first, tree, remaining, expectedModCount);
+        }
+
+        @Override
+        TreeSpliterator<V> create(Node<K, V> first, Node<K, V> tree, int remaining, int expectedModCount) {
+            return new ValueSpliterator(first, tree, remaining, expectedModCount);
+        }
+
+        @Override
+        V element(Node<K, V> node) {
+            return node.value;
+        }
+    }
+
+    private class EntrySpliterator extends TreeSpliterator<Map.Entry<K, V>> {
+        EntrySpliterator() {
+        }
+
+        EntrySpliterator(Node<K, V> first, Node<K, V> tree, int remaining, int expectedModCount) {
+            super(first, tree, remaining, expectedModCount);
+        }
+
+        @Override
+        TreeSpliterator<Map.Entry<K, V>> create(Node<K, V> first, Node<K, V> tree, int remaining,
+                int expectedModCount) {
+            return new EntrySpliterator(first, tree, remaining, expectedModCount);
+        }
+
+        @Override
+        Map.Entry<K, V> element(Node<K, V> node) {
+            return node;
+        }
+
+        @Override
+        public int characteristics() {
+            return super.characteristics() | Spliterator.SORTED | Spliterator.DISTINCT | Spliterator.NONNULL;
+        }
+
+        @Override
+        public Comparator<? super Map.Entry<K, V>> getComparator() {
+            return Map.Entry.comparingByKey();
+        }
+    }
+
+    /**
+     * The live key set view of this map or of one of its sub-maps, delegating every operation
+     * to the backing map.
+     */
+    private class KeySet extends AbstractSet<K> implements NavigableSet<K> {
+        private final NavigableMap<K, V> map;
+
+        KeySet(NavigableMap<K, V> map) {
+            this.map = map;
+        }
+
+        @Override
+        public Iterator<K> iterator() {
+            return map == AVLTreeMap.this ? new KeyIterator() : ((SubMap) map).keyIterator();
+        }
+
+        @Override
+        public Spliterator<K> spliterator() {
+            return map == AVLTreeMap.this ? new KeySpliterator() : super.spliterator();
+        }
+
+        @Override
+        public Iterator<K> descendingIterator() {
+            return descendingSet().iterator();
+        }
+
+        @Override
+        public int size() {
+            return map.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return map.isEmpty();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return map.containsKey(o);
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            if (!map.containsKey(o)) {
+                return false;
+            }
+            map.remove(o);
+            return true;
+        }
+
+        @Override
+        public void clear() {
+            map.clear();
+        }
+
+        @Override
+        public Comparator<? super K> comparator() {
+            return null;
+        }
+
+        @Override
+        public K first() {
+            return map.firstKey();
+        }
+
+        @Override
+        public K last() {
+            return map.lastKey();
+        }
+
+        @Override
+        public K lower(K key) {
+            return map.lowerKey(key);
+        }
+
+        @Override
+        public K floor(K key) {
+            return map.floorKey(key);
+        }
+
+        @Override
+        public K ceiling(K key) {
+            return map.ceilingKey(key);
+        }
+
+        @Override
+        public K higher(K key) {
+            return map.higherKey(key);
+        }
+
+        @Override
+        public K pollFirst() {
+            Map.Entry<K, V> entry = map.pollFirstEntry();
+            return entry == null ? null : entry.getKey();
+        }
+
+        @Override
+        public K pollLast() {
+            Map.Entry<K, V> entry = map.pollLastEntry();
+            return entry == null ? null : entry.getKey();
+        }
+
+        @Override
+        public NavigableSet<K> descendingSet() {
+            return map.descendingMap().navigableKeySet();
+        }
+
+        @Override
+        public NavigableSet<K> subSet(K fromElement, boolean fromInclusive, K toElement, boolean toInclusive) {
+            return map.subMap(fromElement, fromInclusive, toElement, toInclusive).navigableKeySet();
+        }
+
+        @Override
+        public NavigableSet<K> headSet(K toElement, boolean inclusive) {
+            return map.headMap(toElement, inclusive).navigableKeySet();
+        }
+
+        @Override
+        public NavigableSet<K> tailSet(K fromElement, boolean inclusive) {
+            return map.tailMap(fromElement, inclusive).navigableKeySet();
+        }
+
+        @Override
+        public SortedSet<K> subSet(K fromElement, K toElement) {
+            return subSet(fromElement, true, toElement, false);
+        }
+
+        @Override
+        public SortedSet<K> headSet(K toElement) {
+            return headSet(toElement, false);
+        }
+
+        @Override
+        public SortedSet<K> tailSet(K fromElement) {
+            return tailSet(fromElement, true);
+        }
+    }
+
+    /**
+     * The live values view returned by {@link #values()}.
+     */
+    private class Values extends AbstractCollection<V> {
+        @Override
+        public Iterator<V> iterator() {
+            return new ValueIterator();
+        }
+
+        @Override
+        public Spliterator<V> spliterator() {
+            return new ValueSpliterator();
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public void clear() {
+            AVLTreeMap.this.clear();
+        }
+    }
+
+    /**
+     * The live entry set view returned by {@link #entrySet()}.
+     */
+    private class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+        @Override
+        public Iterator<Map.Entry<K, V>> iterator() {
+            return new EntryIterator();
+        }
+
+        @Override
+        public Spliterator<Map.Entry<K, V>> spliterator() {
+            return new EntrySpliterator();
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+            Node<K, V> node = getNode(entry.getKey());
+            return node != null && Objects.equals(node.value, entry.getValue());
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            if (!contains(o)) {
+                return false;
+            }
+            AVLTreeMap.this.remove(((Map.Entry<?, ?>) o).getKey());
+            return true;
+        }
+
+        @Override
+        public void clear() {
+            AVLTreeMap.this.clear();
+        }
+    }
+
+    /**
+     * A view of the mappings whose keys fall between two bounds, in ascending or descending
+     * order. Every operation goes straight to the tree: lookups check the bounds and then
+     * search from the root, and iteration starts at the first key in range and stops at the
+     * bound, so nothing is ever copied. The bounds are kept in ascending terms whichever way
+     * the view is ordered.
+     */
+    private class SubMap extends AbstractMap<K, V> implements NavigableMap<K, V> {
+        private final boolean fromStart;
+        private final K lo;
+        private final boolean loInclusive;
+        private final boolean toEnd;
+        private final K hi;
+        private final boolean hiInclusive;
+        private final boolean descending;
+        private KeySet keySet;
+        private Set<Map.Entry<K, V>> entrySet;
+
+        SubMap(boolean fromStart, K lo, boolean loInclusive, boolean toEnd, K hi, boolean hiInclusive,
+                boolean descending) {
+            this.fromStart = fromStart;
+            this.lo = lo;
+            this.loInclusive = loInclusive;
+            this.toEnd = toEnd;
+            this.hi = hi;
+            this.hiInclusive = hiInclusive;
+            this.descending = descending;
+        }
+
+        private boolean tooLow(K key) {
+            if (fromStart) {
+                return false;
+            }
+            int cmp = key.compareTo(lo);
+            return cmp < 0 || cmp == 0 && !loInclusive;
+        }
+
+        private boolean tooHigh(K key) {
+            if (toEnd) {
+                return false;
+            }
+            int cmp = key.compareTo(hi);
+            return cmp > 0 || cmp == 0 && !hiInclusive;
+        }
+
+        private boolean inRange(Object key) {
+            @SuppressWarnings("unchecked")
+            K k = (K) Objects.requireNonNull(key);
+            return !tooLow(k) && !tooHigh(k);
+        }
+
+        // Checks a bound for a nested view, which may equal an exclusive bound of this view
+        private boolean inRange(K key, boolean inclusive) {
+            if (inclusive) {
+                return inRange(key);
+            }
+            return (fromStart || key.compareTo(lo) >= 0) && (toEnd || key.compareTo(hi) <= 0);
+        }
+
+        private Node<K, V> absLowest() {
+            Node<K, V> node = fromStart ? firstNode() : nearNode(lo, true, loInclusive);
+            return node == null || tooHigh(node.key) ? null : node;
+        }
+
+        private Node<K, V> absHighest() {
+            Node<K, V> node = toEnd ? lastNode() : nearNode(hi, false, hiInclusive);
+            return node == null || tooLow(node.key) ? null : node;
+        }
+
+        // The nearest node in range above (or below) the key, in ascending terms
+        private Node<K, V> absNear(K key, boolean above, boolean inclusive) {
+            if (above ? tooLow(key) : tooHigh(key)) {
+                return above ? absLowest() : absHighest();
+            }
+            Node<K, V> node = nearNode(key, above, inclusive);
+            return node == null || (above ? tooHigh(node.key) : tooLow(node.key)) ? null : node;
+        }
+
+        // Translates a navigation request in this view's order into ascending terms
+        private Node<K, V> near(K key, boolean after, boolean inclusive) {
+            return absNear(key, after != descending, inclusive);
+        }
+
+        private Node<K, V> first() {
+            return descending ? absHighest() : absLowest();
+        }
+
+        private Node<K, V> last() {
+            return descending ? absLowest() : absHighest();
+        }
+
+        Iterator<K> keyIterator() {
+            return descending
+                    ? new KeyIterator(true, toEnd ? null : hi, hiInclusive, fromStart ? null : lo, loInclusive)
+                    : new KeyIterator(false, fromStart ? null : lo, loInclusive, toEnd ? null : hi, hiInclusive);
+        }
+
+        Iterator<V> valueIterator() {
+            return descending
+                    ? new ValueIterator(true, toEnd ? null : hi, hiInclusive, fromStart ? null : lo, loInclusive)
+                    : new ValueIterator(false, fromStart ? null : lo, loInclusive, toEnd ? null : hi, hiInclusive);
+        }
+
+        Iterator<Map.Entry<K, V>> entryIterator() {
+            return descending
+                    ? new EntryIterator(true, toEnd ? null : hi, hiInclusive, fromStart ? null : lo, loInclusive)
+                    : new EntryIterator(false, fromStart ? null : lo, loInclusive, toEnd ? null : hi, hiInclusive);
+        }
+
+        @Override
+        public int size() {
+            // Counted from the subtree sizes rather than by walking the range
+            int below = toEnd ? size : countBelow(hi, hiInclusive);
+            return Math.max(0, below - (fromStart ? 0 : countBelow(lo, !loInclusive)));
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return absLowest() == null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return inRange(key) && AVLTreeMap.this.containsKey(key);
+        }
+
+        @Override
+        public V get(Object key) {
+            return inRange(key) ? AVLTreeMap.this.get(key) : null;
+        }
+
+        @Override
+        public V put(K key, V value) {
+            if (!inRange(key)) {
+                throw new IllegalArgumentException("key out of range");
+            }
+            return AVLTreeMap.this.put(key, value);
+        }
+
+        @Override
+        public V remove(Object key) {
+            return inRange(key) ? AVLTreeMap.this.remove(key) : null;
+        }
+
+        @Override
+        public void clear() {
+            for (Iterator<K> it = keyIterator(); it.hasNext(); ) {
+                it.next();
+                it.remove();
+            }
+        }
+
+        @Override
+        public Set<Map.Entry<K, V>> entrySet() {
+            Set<Map.Entry<K, V>> view = entrySet;
+            return view != null ? view : (entrySet = new AbstractSet<Map.Entry<K, V>>() {
+                @Override
+                public Iterator<Map.Entry<K, V>> iterator() {
+                    return entryIterator();
+                }
+
+                @Override
+                public int size() {
+                    return SubMap.this.size();
+                }
+
+                @Override
+                public boolean isEmpty() {
+                    return SubMap.this.isEmpty();
+                }
+
+                @Override
+                public boolean contains(Object o) {
+                    if (!(o instanceof Map.Entry)) {
+                        return false;
+                    }
+                    Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+                    if (!inRange(entry.getKey())) {
+                        return false;
+                    }
+                    Node<K, V> node = getNode(entry.getKey());
+                    return node != null && Objects.equals(node.value, entry.getValue());
+                }
+
+                @Override
+                public boolean remove(Object o) {
+                    if (!contains(o)) {
+                        return false;
+                    }
+                    AVLTreeMap.this.remove(((Map.Entry<?, ?>) o).getKey());
+                    return true;
+                }
+            });
+        }
+
+        @Override
+        public Collection<V> values() {
+            return new AbstractCollection<V>() {
+                @Override
+                public Iterator<V> iterator() {
+                    return valueIterator();
+                }
+
+                @Override
+                public int size() {
+                    return SubMap.this.size();
+                }
+            };
+        }
+
+        @Override
+        public Set<K> keySet() {
+            return navigableKeySet();
+        }
+
+        @Override
+        public NavigableSet<K> navigableKeySet() {
+            KeySet view = keySet;
+            return view != null ? view : (keySet = new KeySet(this));
+        }
+
+        @Override
+        public NavigableSet<K> descendingKeySet() {
+            return descendingMap().navigableKeySet();
+        }
+
+        @Override
+        public Comparator<? super K> comparator() {
+            return descending ? Collections.reverseOrder() : null;
+        }
+
+        @Override
+        public K firstKey() {
+            return key(first());
+        }
+
+        @Override
+        public K lastKey() {
+            return key(last());
+        }
+
+        @Override
+        public Map.Entry<K, V> firstEntry() {
+            return export(first());
+        }
+
+        @Override
+        public Map.Entry<K, V> lastEntry() {
+            return export(last());
+        }
+
+        @Override
+        public Map.Entry<K, V> pollFirstEntry() {
+            Node<K, V> node = first();
+            Map.Entry<K, V> entry = export(node);
+            if (node != null) {
+                AVLTreeMap.this.remove(node.key);
+            }
+            return entry;
+        }
+
+        @Override
+        public Map.Entry<K, V> pollLastEntry() {
+            Node<K, V> node = last();
+            Map.Entry<K, V> entry = export(node);
+            if (node != null) {
+                AVLTreeMap.this.remove(node.key);
+            }
+            return entry;
+        }
+
+        @Override
+        public Map.Entry<K, V> lowerEntry(K key) {
+            return export(near(key, false, false));
+        }
+
+        @Override
+        public K lowerKey(K key) {
+            return keyOrNull(near(key, false, false));
+        }
+
+        @Override
+        public Map.Entry<K, V> floorEntry(K key) {
+            return export(near(key, false, true));
+        }
+
+        @Override
+        public K floorKey(K key) {
+            return keyOrNull(near(key, false, true));
+        }
+
+        @Override
+        public Map.Entry<K, V> ceilingEntry(K key) {
+            return export(near(key, true, true));
+        }
+
+        @Override
+        public K ceilingKey(K key) {
+            return keyOrNull(near(key, true, true));
+        }
+
+        @Override
+        public Map.Entry<K, V> higherEntry(K key) {
+            return export(near(key, true, false));
+        }
+
+        @Override
+        public K higherKey(K key) {
+            return keyOrNull(near(key, true, false));
+        }
+
+        @Override
+        public NavigableMap<K, V> descendingMap() {
+            return new SubMap(fromStart, lo, loInclusive, toEnd, hi, hiInclusive, !descending);
+        }
+
+        @Override
+        public NavigableMap<K, V> subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+            if (!inRange(fromKey, fromInclusive)) {
+                throw new IllegalArgumentException("fromKey out of range");
+            }
+            if (!inRange(toKey, toInclusive)) {
+                throw new IllegalArgumentException("toKey out of range");
+            }
+            int cmp = fromKey.compareTo(toKey);
+            if (descending ? cmp < 0 : cmp > 0) {
+                throw new IllegalArgumentException("fromKey > toKey");
+            }
+            return descending
+                    ? new SubMap(false, toKey, toInclusive, false, fromKey, fromInclusive, true)
+                    : new SubMap(false, fromKey, fromInclusive, false, toKey, toInclusive, false);
+        }
+
+        @Override
+        public NavigableMap<K, V> headMap(K toKey, boolean inclusive) {
+            if (!inRange(toKey, inclusive)) {
+                throw new IllegalArgumentException("toKey out of range");
+            }
+            return descending
+                    ? new SubMap(false, toKey, inclusive, toEnd, hi, hiInclusive, true)
+                    : new SubMap(fromStart, lo, loInclusive, false, toKey, inclusive, false);
+        }
+
+        @Override
+        public NavigableMap<K, V> tailMap(K fromKey, boolean inclusive) {
+            if (!inRange(fromKey, inclusive)) {
+                throw new IllegalArgumentException("fromKey out of range");
+            }
+            return descending
+                    ? new SubMap(fromStart, lo, loInclusive, false, fromKey, inclusive, true)
+                    : new SubMap(false, fromKey, inclusive, toEnd, hi, hiInclusive, false);
+        }
+
+        @Override
+        public SortedMap<K, V> subMap(K fromKey, K toKey) {
+            return subMap(fromKey, true, toKey, false);
+        }
+
+        @Override
+        public SortedMap<K, V> headMap(K toKey) {
+            return headMap(toKey, false);
+        }
+
+        @Override
+        public SortedMap<K, V> tailMap(K fromKey) {
+            return tailMap(fromKey, true);
+        }
+    }
+}
@@ -0,0 +1,476 @@
+package question_2;
+
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.NoSuchElementException;
+
+/**
+ * The shape of an AVL tree stored as parallel arrays rather than one object per node, shared by
+ * the array-backed maps. A node is an int index into the arrays: {@code left[i]} and
+ * {@code right[i]} are the indices of its children and {@code height[i]} is the height of its
+ * subtree. Index 0 is a sentinel standing for the empty subtree, with height 0, so no link is
+ * ever null. Subclasses keep the keys and values of node {@code i} in their own arrays at index
+ * {@code i}, and do their own searching so they can compare keys without boxing.
+ *
+ * <p>Slots freed by removals are chained into a free list through {@code left} and reused by
+ * later insertions, so a map whose size stays level allocates nothing once its arrays have grown
+ * to fit.
+ *
+ * <p>Searches record the nodes they pass in {@link #path}, and the update methods here take the
+ * depth of that path and restore balance along it from the bottom up, as
+ * {@link AVLTreeMap} does with its path buffer.
+ */
+abstract class ArrayAVLTree {
+    /**
+     * The index of the sentinel standing for an empty subtree.
+     */
+    static final int NIL = 0;
+    /**
+     * A bound on the height of any AVL tree with fewer than 2^31 nodes.
+     */
+    private static final int MAX_HEIGHT = 64;
+
+    int[] left;
+    int[] right;
+    byte[] height;
+    int root = NIL;
+    int size;
+    int modCount;
+    /**
+     * The nodes on the path from the root to the last node searched for.
+     */
+    final int[] path = new int[MAX_HEIGHT];
+    /**
+     * The lowest index never yet handed out.
+     */
+    private int next = 1;
+    /**
+     * The first slot in the free list, or NIL if it is empty.
+     */
+    private int freeHead = NIL;
+
+    /**
+     * Creates an empty tree with room for the given number of nodes before its arrays grow.
+     * @param initialCapacity the number of nodes to make room for
+     */
+    ArrayAVLTree(int initialCapacity) {
+        if (initialCapacity < 0) {
+            throw new IllegalArgumentException("initialCapacity must not be negative");
+        }
+        int capacity = Math.max(initialCapacity, 1) + 1;
+        left = new int[capacity];
+        right = new int[capacity];
+        height = new byte[capacity];
+    }
+
+    /**
+     * Grows the subclass's key and value arrays to the given length.
+     * @param capacity the new length of every per-node array
+     */
+    abstract void resize(int capacity);
+
+    /**
+     * Clears any references a freed slot holds so they can be collected.
+     * @param node the slot being freed
+     */
+    abstract void clearSlot(int node);
+
+    /**
+     * Moves the subclass's keys and values into new arrays for {@link #compact()}.
+     * @param order the old index of the node that moves to each new index, with order[0] = NIL
+     * @param capacity the length of the new arrays
+     */
+    abstract void relocate(int[] order, int capacity);
+
+    /**
+     * Compares the keys of two nodes.
+     * @param a a node
+     * @param b another node
+     * @return a negative number, zero or a positive number as the key of a is less than, equal to or greater than that of b
+     */
+    abstract int compareNodes(int a, int b);
+
+    /**
+     * Returns the number of nodes in the tree.
+     * @return the number of nodes
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns true if the tree has no nodes.
+     * @return true if the tree is empty
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Removes every node, keeping the arrays for reuse.
+     */
+    public void clear() {
+        for (int i = 1; i < next; i++) {
+            clearSlot(i);
+        }
+        root = NIL;
+        size = 0;
+        next = 1;
+        freeHead = NIL;
+        modCount++;
+    }
+
+    /**
+     * Renumbers the nodes in depth-first order and trims the arrays to the number of nodes.
+     * Afterwards a search moves forward through the arrays, each node sits next to its left
+     * child, and the free list is empty. This takes O(n) time and allocates the new arrays.
+     */
+    public void compact() {
+        int capacity = size + 1;
+        int[] order = new int[capacity];
+        int[] newIndex = new int[left.length];
+        int[] stack = new int[MAX_HEIGHT + 1];
+        int depth = 0;
+        int count = 0;
+        if (root != NIL) {
+            stack[depth++] = root;
+        }
+        while (depth > 0) {
+            int node = stack[--depth];
+            order[++count] = node;
+            newIndex[node] = count;
+            if (right[node] != NIL) {
+                stack[depth++] = right[node];
+            }
+            if (left[node] != NIL) {
+                stack[depth++] = left[node];
+            }
+        }
+        int[] newLeft = new int[capacity];
+        int[] newRight = new int[capacity];
+        byte[] newHeight = new byte[capacity];
+        for (int i = 1; i < capacity; i++) {
+            int node = order[i];
+            newLeft[i] = newIndex[left[node]];
+            newRight[i] = newIndex[right[node]];
+            newHeight[i] = height[node];
+        }
+        relocate(order, capacity);
+        left = newLeft;
+        right = newRight;
+        height = newHeight;
+        root = newIndex[root];
+        next = capacity;
+        freeHead = NIL;
+        modCount++;
+    }
+
+    /**
+     * Returns a free slot for a new leaf, growing the arrays if every slot is in use. The
+     * subclass must store the node's key and value before linking it.
+     * @return the index of the new leaf
+     */
+    final int allocate() {
+        int node;
+        if (freeHead != NIL) {
+            node = freeHead;
+            freeHead = left[node];
+        } else {
+            if (next == left.length) {
+                int capacity = left.length + (left.length >> 1) + 1;
+                if (capacity < 0 || capacity > Integer.MAX_VALUE - 8) {
+                    capacity = Integer.MAX_VALUE - 8;
+                    if (next == capacity) {
+                        throw new IllegalStateException("tree is full");
+                    }
+                }
+                left = Arrays.copyOf(left, capacity);
+                right = Arrays.copyOf(right, capacity);
+                height = Arrays.copyOf(height, capacity);
+                resize(capacity);
+            }
+            node = next++;
+        }
+        left[node] = NIL;
+        right[node] = NIL;
+        height[node] = 1;
+        return node;
+    }
+
+    // Returns a slot to the free list
+    private void release(int node) {
+        clearSlot(node);
+        left[node] = freeHead;
+        right[node] = NIL;
+        height[node] = 0;
+        freeHead = node;
+    }
+
+    /**
+     * Links a new leaf below the last node on the path and rebalances.
+     * @param depth the number of nodes on the path to the leaf's parent
+     * @param node the new leaf
+     * @param asLeft true to make the leaf the parent's left child
+     */
+    final void linkLeaf(int depth, int node, boolean asLeft) {
+        if (depth == 0) {
+            root = node;
+        } else if (asLeft) {
+            left[path[depth - 1]] = node;
+        } else {
+            right[path[depth - 1]] = node;
+        }
+        size++;
+        modCount++;
+        rebalance(depth - 1);
+    }
+
+    /**
+     * Removes the last node on the path and rebalances. A node with two children is replaced by
+     * its successor node itself rather than by copying the successor's key and value, so the
+     * index of every other node stays the same.
+     * @param depth the number of nodes on the path, ending with the node to remove
+     */
+    final void unlink(int depth) {
+        int at = depth - 1;
+        int node = path[at];
+        int parent = at > 0 ? path[at - 1] : NIL;
+        int from;
+        if (left[node] == NIL || right[node] == NIL) {
+            replaceChild(parent, node, left[node] != NIL ? left[node] : right[node]);
+            from = at - 1;
+        } else {
+            int successor = right[node];
+            while (left[successor] != NIL) {
+                path[depth++] = successor;
+                successor = left[successor];
+            }
+            if (depth - 1 > at) {
+                // The successor is deeper than the right child: detach it from its parent
+                left[path[depth - 1]] = right[successor];
+                right[successor] = right[node];
+            }
+            left[successor] = left[node];
+            replaceChild(parent, node, successor);
+            path[at] = successor;
+            from = depth - 1;
+        }
+        release(node);
+        size--;
+        modCount++;
+        rebalance(from);
+    }
+
+    /**
+     * Returns the length of the path from the root to a node, recording it in {@link #path}.
+     * @param node a node in the tree
+     * @return the number of nodes on the path, ending with the node
+     */
+    final int pathTo(int node) {
+        int depth = 0;
+        int current = root;
+        while (current != node) {
+            path[depth++] = current;
+            current = compareNodes(node, current) < 0 ? left[current] : right[current];
+        }
+        path[depth++] = node;
+        return depth;
+    }
+
+    // Points the parent's link to a child at a replacement, or the root if there is no parent
+    private void replaceChild(int parent, int child, int replacement) {
+        if (parent == NIL) {
+            root = replacement;
+        } else if (left[parent] == child) {
+            left[parent] = replacement;
+        } else {
+            right[parent] = replacement;
+        }
+    }
+
+    /**
+     * Recomputes heights and rotates where needed from a node on the path up to the root,
+     * stopping once a subtree keeps both its root and its height.
+     * @param top the index in the path of the deepest node whose subtree changed, or -1
+     */
+    private void rebalance(int top) {
+        for (int i = top; i >= 0; i--) {
+            int node = path[i];
+            int oldHeight = height[node];
+            int balanced = balance(node);
+            if (balanced != node) {
+                replaceChild(i > 0 ? path[i - 1] : NIL, node, balanced);
+            } else if (height[node] == oldHeight) {
+                return;
+            }
+        }
+    }
+
+    private int balance(int node) {
+        int leftHeight = height[left[node]];
+        int rightHeight = height[right[node]];
+        if (leftHeight - rightHeight > 1) {
+            int child = left[node];
+            if (height[left[child]] < height[right[child]]) {
+                left[node] = rotateLeft(child);
+            }
+            return rotateRight(node);
+        }
+        if (rightHeight - leftHeight > 1) {
+            int child = right[node];
+            if (height[right[child]] < height[left[child]]) {
+                right[node] = rotateRight(child);
+            }
+            return rotateLeft(node);
+        }
+        height[node] = (byte) (Math.max(leftHeight, rightHeight) + 1);
+        return node;
+    }
+
+    private int rotateLeft(int node) {
+        int child = right[node];
+        right[node] = left[child];
+        left[child] = node;
+        fixHeight(node);
+        fixHeight(child);
+        return child;
+    }
+
+    private int rotateRight(int node) {
+        int child = left[node];
+        left[node] = right[child];
+        right[child] = node;
+        fixHeight(node);
+        fixHeight(child);
+        return child;
+    }
+
+    private void fixHeight(int node) {
+        height[node] = (byte) (Math.max(height[left[node]], height[right[node]]) + 1);
+    }
+
+    /**
+     * Returns the node with the smallest key.
+     * @return the first node, or NIL if the tree is empty
+     */
+    final int firstNode() {
+        int node = root;
+        if (node != NIL) {
+            while (left[node] != NIL) {
+                node = left[node];
+            }
+        }
+        return node;
+    }
+
+    /**
+     * Returns the node with the largest key.
+     * @return the last node, or NIL if the tree is empty
+     */
+    final int lastNode() {
+        int node = root;
+        if (node != NIL) {
+            while (right[node] != NIL) {
+                node = right[node];
+            }
+        }
+        return node;
+    }
+
+    /**
+     * An in-order iterator over node indices, which fails fast if the tree is changed other than
+     * through the iterator.
+     */
+    abstract class NodeIterator {
+        private final int[] stack = new int[MAX_HEIGHT];
+        private int depth;
+        private int lastReturned = NIL;
+        private int expectedModCount = modCount;
+
+        /**
+         * Creates an iterator over the whole tree.
+         */
+        NodeIterator() {
+            pushSpine(root);
+        }
+
+        /**
+         * Creates an iterator that starts at the given node.
+         * @param start the first node to return, or NIL for an empty iteration
+         */
+        NodeIterator(int start) {
+            seek(start);
+        }
+
+        // Fills the stack with the ancestors of a node that come after it, and the node itself on top
+        private void seek(int target) {
+            depth = 0;
+            int node = root;
+            while (target != NIL && node != NIL) {
+                int cmp = compareNodes(target, node);
+                if (cmp <= 0) {
+                    stack[depth++] = node;
+                    if (cmp == 0) {
+                        break;
+                    }
+                    node = left[node];
+                } else {
+                    node = right[node];
+                }
+            }
+        }
+
+        private void pushSpine(int node) {
+            while (node != NIL) {
+                stack[depth++] = node;
+                node = left[node];
+            }
+        }
+
+        public boolean hasNext() {
+            return depth > 0;
+        }
+
+        /**
+         * Returns the node that {@link #nextNode()} would return, without advancing.
+         * @return the next node, or NIL if there is none
+         */
+        final int peek() {
+            return depth > 0 ? stack[depth - 1] : NIL;
+        }
+
+        /**
+         * Returns the next node in key order.
+         * @return the index of the next node
+         * @throws NoSuchElementException if the iteration has no more nodes
+         * @throws ConcurrentModificationException if the tree was changed other than through this iterator
+         */
+        final int nextNode() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (depth == 0) {
+                throw new NoSuchElementException();
+            }
+            int node = stack[--depth];
+            pushSpine(right[node]);
+            lastReturned = node;
+            return node;
+        }
+
+        public void remove() {
+            if (lastReturned == NIL) {
+                throw new IllegalStateException();
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            int following = depth > 0 ? stack[depth - 1] : NIL;
+            unlink(pathTo(lastReturned));
+            lastReturned = NIL;
+            expectedModCount = modCount;
+            // Node indices survive the removal, but the stack of ancestors may not: rebuild it
+            seek(following);
+        }
+    }
+}
@@ -0,0 +1,706 @@
+package question_2;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * A sorted map of bounded size, kept in an {@link AVLTreeMap}, for use as an ordered cache in front
+ * of a slower store. Each entry has a weight, by default 1, and once the total weight exceeds the
+ * maximum, entries are evicted until it fits again:
+ * <ul>
+ *   <li>{@link EvictionPolicy#LRU} evicts the entry read or written least recently;</li>
+ *   <li>{@link EvictionPolicy#LFU} samples a few entries at random, using
+ *       {@link AVLTreeMap#select(int)}, and evicts the one read least often. Access counts are
+ *       halved periodically so that entries which were popular once do not stay forever.</li>
+ * </ul>
+ * Entries may also be given a time to live, after which they are removed. A loader set with
+ * {@link #setLoader(Function)} fills misses in {@link #getOrLoad(Comparable)}, and the hit, miss,
+ * load, eviction and expiration counters show how well the cache is sized for real traffic.
+ *
+ * <p>Only {@link #get}, {@link #getOrLoad} and updates count as accesses; navigating or
+ * iterating the map does not. The key set, values, entry set and sub-map views reflect the map
+ * but do not support additions, and their entries do not support {@code setValue}. Keys are ordered
+ * by their natural ordering, and neither keys nor values may be null. This map is not synchronized.
+ * @param <K> the type of keys in this map
+ * @param <V> the type of values in this map
+ */
+public class BoundedAVLTreeMap<K extends Comparable<K>, V> extends AbstractMap<K, V> implements SortedMap<K, V> {
+
+    /**
+     * How the entry to evict is chosen.
+     */
+    public enum EvictionPolicy {
+        /**
+         * Evict the least recently used entry.
+         */
+        LRU,
+        /**
+         * Evict the least frequently used of a random sample of entries.
+         */
+        LFU
+    }
+
+    /**
+     * Computes the weight of an entry, which counts against the maximum weight of the map.
+     * @param <K> the type of keys weighed
+     * @param <V> the type of values weighed
+     */
+    @FunctionalInterface
+    public interface Weigher<K, V> {
+        /**
+         * Returns the weight of an entry.
+         * @param key the key of the entry
+         * @param value the value of the entry
+         * @return the weight, which must not be negative
+         */
+        int weigh(K key, V value);
+    }
+
+    /**
+     * An entry in the cache. A slot is never updated in place: replacing a value creates a new slot,
+     * so that the expiry queue can order slots by a deadline that does not change.
+     */
+    private static final class Slot<K, V> {
+        final K key;
+        final V value;
+        final int weight;
+        /**
+         * The System.nanoTime() after which this entry has expired, if {@link #expires} is set.
+         */
+        final long deadline;
+        final boolean expires;
+        /**
+         * The number of reads, halved whenever the map ages its counts.
+         */
+        int frequency;
+        /**
+         * The access number of the last read or write, used to break ties between equal frequencies.
+         */
+        long lastAccess;
+        /**
+         * The index of this slot in the expiry heap, or -1 if it is not there.
+         */
+        int expiryIndex = -1;
+        /**
+         * The neighbours of this slot in the recency list, most recent first.
+         */
+        Slot<K, V> previous;
+        Slot<K, V> next;
+
+        Slot(K key, V value, int weight, boolean expires, long deadline) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+            this.expires = expires;
+            this.deadline = deadline;
+        }
+    }
+
+    private static final int SAMPLE_SIZE = 5;
+    private static final int AGING_FACTOR = 10;
+
+    private final AVLTreeMap<K, Slot<K, V>> map = new AVLTreeMap<>();
+    private final long maximumWeight;
+    private final Weigher<? super K, ? super V> weigher;
+    private final EvictionPolicy policy;
+    private long defaultTimeToLive;
+    private Function<? super K, ? extends V> loader;
+
+    private long totalWeight;
+    // The recency list, with the most recently accessed slot at the head
+    private Slot<K, V> head;
+    private Slot<K, V> tail;
+    // A binary min-heap of the slots that will expire, ordered by deadline. Each slot records its
+    // index, so a slot that is removed or replaced leaves the heap at once rather than when polled
+    @SuppressWarnings("unchecked")
+    private Slot<K, V>[] expiryHeap = (Slot<K, V>[]) new Slot[16];
+    private int expiryCount;
+    private long accesses;
+    private long accessesSinceAging;
+    private long random = 0x9E3779B97F4A7C15L;
+
+    private long hits;
+    private long misses;
+    private long loads;
+    private long evictions;
+    private long expirations;
+
+    /**
+     * Constructs an empty map holding at most the given number of entries.
+     * @param maximumSize the maximum number of entries
+     * @param policy the policy choosing which entry to evict
+     * @throws IllegalArgumentException if the maximum size is negative
+     */
+    public BoundedAVLTreeMap(long maximumSize, EvictionPolicy policy) {
+        this(maximumSize, (key, value) -> 1, policy);
+    }
+
+    /**
+     * Constructs an empty map whose entries may weigh at most the given total.
+     * @param maximumWeight the maximum total weight of the entries
+     * @param weigher the function giving the weight of each entry
+     * @param policy the policy choosing which entry to evict
+     * @throws IllegalArgumentException if the maximum weight is negative
+     */
+    public BoundedAVLTreeMap(long maximumWeight, Weigher<? super K, ? super V> weigher, EvictionPolicy policy) {
+        if (maximumWeight < 0) {
+            throw new IllegalArgumentException("maximumWeight must not be negative");
+        }
+        this.maximumWeight = maximumWeight;
+        this.weigher = Objects.requireNonNull(weigher);
+        this.policy = Objects.requireNonNull(policy);
+    }
+
+    /**
+     * Sets the time to live given to entries put without one.
+     * @param timeToLive the time after which entries expire, or 0 for entries that never expire
+     * @param unit the unit of the time to live
+     */
+    public void setDefaultTimeToLive(long timeToLive, TimeUnit unit) {
+        defaultTimeToLive = Math.max(0, unit.toNanos(timeToLive));
+    }
+
+    /**
+     * Sets the function that {@link #getOrLoad} calls to fetch a value missing from the map.
+     * @param loader the loader, which may return null if there is no value for a key, or null to load nothing
+     */
+    public void setLoader(Function<? super K, ? extends V> loader) {
+        this.loader = loader;
+    }
+
+    // ----- statistics -----
+
+    /**
+     * Returns the number of lookups that found a value.
+     * @return the number of hits
+     */
+    public long hitCount() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of lookups that found no value.
+     * @return the number of misses
+     */
+    public long missCount() {
+        return misses;
+    }
+
+    /**
+     * Returns the fraction of lookups that found a value, or 1 if there have been none.
+     * @return the hit rate
+     */
+    public double hitRate() {
+        long requests = hits + misses;
+        return requests == 0 ? 1.0 : (double) hits / requests;
+    }
+
+    /**
+     * Returns the number of values fetched by the loader.
+     * @return the number of loads
+     */
+    public long loadCount() {
+        return loads;
+    }
+
+    /**
+     * Returns the number of entries evicted to keep the map within its maximum weight.
+     * @return the number of evictions
+     */
+    public long evictionCount() {
+        return evictions;
+    }
+
+    /**
+     * Returns the number of entries removed because their time to live ran out.
+     * @return the number of expirations
+     */
+    public long expirationCount() {
+        expireEntries();
+        return expirations;
+    }
+
+    /**
+     * Sets every counter back to zero.
+     */
+    public void resetStatistics() {
+        hits = misses = loads = evictions = expirations = 0;
+    }
+
+    /**
+     * Returns the total weight of the entries in this map.
+     * @return the total weight
+     */
+    public long weight() {
+        expireEntries();
+        return totalWeight;
+    }
+
+    // ----- lookups -----
+
+    @Override
+    public int size() {
+        expireEntries();
+        return map.size();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        expireEntries();
+        return map.containsKey(key);
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped, or null if this map contains no
+     * mapping for the key, counting a hit or a miss and marking the entry as used.
+     * @param key the key whose associated value is to be returned
+     * @return the value to which the specified key is mapped, or null if this map contains no mapping for the key
+     */
+    @Override
+    public V get(Object key) {
+        expireEntries();
+        Slot<K, V> slot = map.get(key);
+        if (slot == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        slot.frequency++;
+        touch(slot);
+        return slot.value;
+    }
+
+    /**
+     * Returns the value to which the key is mapped, loading it with the loader on a miss. A loaded
+     * value is put into the map with the default time to live.
+     * @param key the key whose associated value is to be returned
+     * @return the value found or loaded, or null if there is none
+     */
+    public V getOrLoad(K key) {
+        V value = get(key);
+        if (value == null && loader != null) {
+            value = loader.apply(key);
+            loads++;
+            if (value != null) {
+                put(key, value);
+            }
+        }
+        return value;
+    }
+
+    // ----- updates -----
+
+    /**
+     * Associates the specified value with the specified key, using the default time to live, and
+     * evicts entries if the map has grown too heavy.
+     * @param key the key with which the specified value is to be associated
+     * @param value the value to be associated with the specified key
+     * @return the previous value associated with key, or null if there was no mapping for key
+     * @throws NullPointerException if the key or value is null
+     */
+    @Override
+    public V put(K key, V value) {
+        return put(key, value, defaultTimeToLive, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Associates the specified value with the specified key for a limited time, and evicts entries
+     * if the map has grown too heavy.
+     * @param key the key with which the specified value is to be associated
+     * @param value the value to be associated with the specified key
+     * @param timeToLive the time after which the entry expires, or 0 for an entry that never expires
+     * @param unit the unit of the time to live
+     * @return the previous value associated with key, or null if there was no mapping for key
+     * @throws NullPointerException if the key or value is null
+     * @throws IllegalArgumentException if the weigher returns a negative weight
+     */
+    public V put(K key, V value, long timeToLive, TimeUnit unit) {
+        Objects.requireNonNull(key, "Key cannot be null");
+        Objects.requireNonNull(value, "Value cannot be null");
+        expireEntries();
+        int weight = weigher.weigh(key, value);
+        if (weight < 0) {
+            throw new IllegalArgumentException("Negative weight " + weight + " for key " + key);
+        }
+        long ttl = unit.toNanos(timeToLive);
+        Slot<K, V> slot = new Slot<>(key, value, weight, ttl > 0, System.nanoTime() + ttl);
+        Slot<K, V> previous = map.put(key, slot);
+        if (previous != null) {
+            slot.frequency = previous.frequency;
+            discard(previous);
+        }
+        totalWeight += weight;
+        linkFirst(slot);
+        slot.lastAccess = ++accesses;
+        if (slot.expires) {
+            addExpiry(slot);
+        }
+        evict();
+        return previous == null ? null : previous.value;
+    }
+
+    /**
+     * Removes the mapping for a key from this map if it is present.
+     * @param key the key whose mapping is to be removed from the map
+     * @return the previous value associated with key, or null if there was no mapping for key
+     */
+    @Override
+    public V remove(Object key) {
+        expireEntries();
+        Slot<K, V> slot = map.remove(key);
+        if (slot == null) {
+            return null;
+        }
+        discard(slot);
+        return slot.value;
+    }
+
+    @Override
+    public void clear() {
+        map.clear();
+        head = tail = null;
+        Arrays.fill(expiryHeap, 0, expiryCount, null);
+        expiryCount = 0;
+        totalWeight = 0;
+    }
+
+    /**
+     * Removes every entry whose time to live has run out. Every other operation does this first,
+     * so calling it is only needed to release expired values sooner.
+     */
+    public void cleanUp() {
+        expireEntries();
+    }
+
+    // ----- bookkeeping -----
+
+    // Removes the entries at the front of the expiry queue whose deadlines have passed
+    private void expireEntries() {
+        if (expiryCount == 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        while (expiryCount > 0 && now - expiryHeap[0].deadline >= 0) {
+            Slot<K, V> slot = expiryHeap[0];
+            map.remove(slot.key);
+            discard(slot);
+            expirations++;
+        }
+    }
+
+    // Evicts entries chosen by the policy until the map fits within its maximum weight
+    private void evict() {
+        while (totalWeight > maximumWeight && head != null) {
+            Slot<K, V> victim = policy == EvictionPolicy.LRU ? tail : sample();
+            map.remove(victim.key);
+            discard(victim);
+            evictions++;
+        }
+    }
+
+    // Picks the least frequently used of a few entries chosen at random, preferring the older on a tie
+    private Slot<K, V> sample() {
+        int size = map.size();
+        Slot<K, V> victim = null;
+        for (int i = 0; i < Math.min(SAMPLE_SIZE, size); i++) {
+            Slot<K, V> candidate = map.get(map.select(nextIndex(size)));
+            if (victim == null || candidate.frequency < victim.frequency
+                    || candidate.frequency == victim.frequency && candidate.lastAccess < victim.lastAccess) {
+                victim = candidate;
+            }
+        }
+        return victim;
+    }
+
+    // Returns a pseudo-random index below the bound, from a xorshift generator
+    private int nextIndex(int bound) {
+        random ^= random << 13;
+        random ^= random >>> 7;
+        random ^= random << 17;
+        return (int) ((random >>> 33) % bound);
+    }
+
+    // Marks a slot as used: moves it to the head of the recency list and ages the counts when due
+    private void touch(Slot<K, V> slot) {
+        slot.lastAccess = ++accesses;
+        if (slot != head) {
+            unlink(slot);
+            linkFirst(slot);
+        }
+        if (policy == EvictionPolicy.LFU && ++accessesSinceAging > AGING_FACTOR * (long) Math.max(map.size(), 16)) {
+            // Halving every count once per AGING_FACTOR * n reads costs O(1) per read
+            accessesSinceAging = 0;
+            for (Slot<K, V> s = head; s != null; s = s.next) {
+                s.frequency >>>= 1;
+            }
+        }
+    }
+
+    // Forgets a slot that has been removed from the tree or replaced in it
+    private void discard(Slot<K, V> slot) {
+        unlink(slot);
+        if (slot.expiryIndex >= 0) {
+            removeExpiry(slot);
+        }
+        totalWeight -= slot.weight;
+    }
+
+    private void addExpiry(Slot<K, V> slot) {
+        if (expiryCount == expiryHeap.length) {
+            expiryHeap = Arrays.copyOf(expiryHeap, expiryCount * 2);
+        }
+        placeExpiry(slot, expiryCount++);
+        siftUp(slot.expiryIndex);
+    }
+
+    // Takes a slot out of the expiry heap, moving the last slot into its place
+    private void removeExpiry(Slot<K, V> slot) {
+        int i = slot.expiryIndex;
+        slot.expiryIndex = -1;
+        Slot<K, V> last = expiryHeap[--expiryCount];
+        expiryHeap[expiryCount] = null;
+        if (last != slot) {
+            placeExpiry(last, i);
+            siftDown(i);
+            siftUp(last.expiryIndex);
+        }
+    }
+
+    private void siftUp(int i) {
+        Slot<K, V> slot = expiryHeap[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (expiryHeap[parent].deadline - slot.deadline <= 0) {
+                break;
+            }
+            placeExpiry(expiryHeap[parent], i);
+            i = parent;
+        }
+        placeExpiry(slot, i);
+    }
+
+    private void siftDown(int i) {
+        Slot<K, V> slot = expiryHeap[i];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= expiryCount) {
+                break;
+            }
+            if (child + 1 < expiryCount && expiryHeap[child + 1].deadline - expiryHeap[child].deadline < 0) {
+                child++;
+            }
+            if (slot.deadline - expiryHeap[child].deadline <= 0) {
+                break;
+            }
+            placeExpiry(expiryHeap[child], i);
+            i = child;
+        }
+        placeExpiry(slot, i);
+    }
+
+    private void placeExpiry(Slot<K, V> slot, int i) {
+        expiryHeap[i] = slot;
+        slot.expiryIndex = i;
+    }
+
+    private void linkFirst(Slot<K, V> slot) {
+        slot.previous = null;
+        slot.next = head;
+        if (head != null) {
+            head.previous = slot;
+        } else {
+            tail = slot;
+        }
+        head = slot;
+    }
+
+    private void unlink(Slot<K, V> slot) {
+        if (slot.previous != null) {
+            slot.previous.next = slot.next;
+        } else {
+            head = slot.next;
+        }
+        if (slot.next != null) {
+            slot.next.previous = slot.previous;
+        } else {
+            tail = slot.previous;
+        }
+        slot.previous = slot.next = null;
+    }
+
+    // ----- sorted map views -----
+
+    @Override
+    public Comparator<? super K> comparator() {
+        return null;
+    }
+
+    @Override
+    public K firstKey() {
+        expireEntries();
+        return map.firstKey();
+    }
+
+    @Override
+    public K lastKey() {
+        expireEntries();
+        return map.lastKey();
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        return new EntrySet(map);
+    }
+
+    @Override
+    public SortedMap<K, V> subMap(K fromKey, K toKey) {
+        return new RangeView(map.subMap(fromKey, true, toKey, false));
+    }
+
+    @Override
+    public SortedMap<K, V> headMap(K toKey) {
+        return new RangeView(map.headMap(toKey, false));
+    }
+
+    @Override
+    public SortedMap<K, V> tailMap(K fromKey) {
+        return new RangeView(map.tailMap(fromKey, true));
+    }
+
+    /**
+     * The entries of a range of the tree, with removal going through the map so that the
+     * recency list and total weight stay in step.
+     */
+    private class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+        private final NavigableMap<K, Slot<K, V>> range;
+
+        EntrySet(NavigableMap<K, Slot<K, V>> range) {
+            this.range = range;
+        }
+
+        @Override
+        public Iterator<Map.Entry<K, V>> iterator() {
+            expireEntries();
+            Iterator<Slot<K, V>> slots = range.values().iterator();
+            return new Iterator<Map.Entry<K, V>>() {
+                private Slot<K, V> lastReturned;
+
+                @Override
+                public boolean hasNext() {
+                    return slots.hasNext();
+                }
+
+                @Override
+                public Map.Entry<K, V> next() {
+                    lastReturned = slots.next();
+                    return new SimpleImmutableEntry<>(lastReturned.key, lastReturned.value);
+                }
+
+                @Override
+                public void remove() {
+                    slots.remove();
+                    discard(lastReturned);
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            expireEntries();
+            return range.size();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            expireEntries();
+            Slot<K, V> slot = range.get(e.getKey());
+            return slot != null && slot.value.equals(e.getValue());
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            if (!contains(o)) {
+                return false;
+            }
+            BoundedAVLTreeMap.this.remove(((Map.Entry<?, ?>) o).getKey());
+            return true;
+        }
+    }
+
+    /**
+     * A sub-map view over a key range. Lookups through it do not count as accesses.
+     */
+    private class RangeView extends AbstractMap<K, V> implements SortedMap<K, V> {
+        private final NavigableMap<K, Slot<K, V>> range;
+
+        RangeView(NavigableMap<K, Slot<K, V>> range) {
+            this.range = range;
+        }
+
+        @Override
+        public int size() {
+            expireEntries();
+            return range.size();
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            expireEntries();
+            return range.containsKey(key);
+        }
+
+        @Override
+        public V get(Object key) {
+            expireEntries();
+            Slot<K, V> slot = range.get(key);
+            return slot == null ? null : slot.value;
+        }
+
+        @Override
+        public V remove(Object key) {
+            return containsKey(key) ? BoundedAVLTreeMap.this.remove(key) : null;
+        }
+
+        @Override
+        public Comparator<? super K> comparator() {
+            return null;
+        }
+
+        @Override
+        public K firstKey() {
+            expireEntries();
+            return range.firstKey();
+        }
+
+        @Override
+        public K lastKey() {
+            expireEntries();
+            return range.lastKey();
+        }
+
+        @Override
+        public Set<Map.Entry<K, V>> entrySet() {
+            return new EntrySet(range);
+        }
+
+        @Override
+        public SortedMap<K, V> subMap(K fromKey, K toKey) {
+            return new RangeView(range.subMap(fromKey, true, toKey, false));
+        }
+
+        @Override
+        public SortedMap<K, V> headMap(K toKey) {
+            return new RangeView(range.headMap(toKey, false));
+        }
+
+        @Override
+        public SortedMap<K, V> tailMap(K fromKey) {
+            return new RangeView(range.tailMap(fromKey, true));
+        }
+    }
+}
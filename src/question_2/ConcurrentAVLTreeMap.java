@@ -0,0 +1,1704 @@
+package question_2;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A concurrent sorted map built on a relaxed AVL tree, following the optimistic concurrency
+ * control of Bronson, Casper, Chafi and Olukotun, "A Practical Concurrent Binary Search Tree"
+ * (PPoPP 2010).
+ *
+ * <p>Readers never take locks. Every node carries a version number that a rotation marks as
+ * changing before it moves the node down and advances once it is done, so a search validates
+ * each step by rereading the version of the node it came from and retries only the steps a
+ * concurrent rotation may have invalidated. Writers lock just the nodes they link or unlink,
+ * always parent before child, and restore balance afterwards with local rotations that lock at
+ * most four nodes at a time. A removed key whose node has two children leaves that node behind
+ * as a routing node with a null value, which is unlinked once it has at most one child.
+ *
+ * <p>Keys are ordered by their natural ordering, and neither keys nor values may be null.
+ * Iterators and sub-map views are weakly consistent: they never throw
+ * {@link ConcurrentModificationException} and step from one key to the next with an O(log n)
+ * search, reflecting the map at some point at or since each step.
+ * @param <K> the type of keys in this map
+ * @param <V> the type of values in this map
+ */
+public class ConcurrentAVLTreeMap<K extends Comparable<K>, V> extends AbstractMap<K, V>
+        implements ConcurrentNavigableMap<K, V> {
+
+    private static final class Node<K, V> {
+        /**
+         * The key of this node, or null for the holder above the root.
+         */
+        final K key;
+        /**
+         * The height of the subtree rooted at this node, which may briefly be stale.
+         */
+        volatile int height;
+        /**
+         * The value associated with this key, or null if this node is only routing searches.
+         */
+        volatile V value;
+        /**
+         * The parent of this node, or null for the holder above the root.
+         */
+        volatile Node<K, V> parent;
+        /**
+         * The version of this node, advanced by every rotation that moves it down.
+         */
+        volatile long version;
+        /**
+         * The left child of this node.
+         */
+        volatile Node<K, V> left;
+        /**
+         * The right child of this node.
+         */
+        volatile Node<K, V> right;
+
+        Node(K key, int height, V value, Node<K, V> parent) {
+            this.key = key;
+            this.height = height;
+            this.value = value;
+            this.parent = parent;
+        }
+
+        Node<K, V> child(int dir) {
+            return dir < 0 ? left : right;
+        }
+
+        void setChild(int dir, Node<K, V> node) {
+            if (dir < 0) {
+                left = node;
+            } else {
+                right = node;
+            }
+        }
+
+        /**
+         * Waits for a rotation that has marked this node as changing to finish.
+         * @param version the version that was seen as changing
+         */
+        void waitUntilChangeCompleted(long version) {
+            if (!isChanging(version)) {
+                return;
+            }
+            for (int tries = 0; tries < SPIN_COUNT; tries++) {
+                if (this.version != version) {
+                    return;
+                }
+            }
+            // Rotations hold this node's lock while it is changing
+            synchronized (this) {
+                assert this.version != version;
+            }
+        }
+    }
+
+    // Version bits: the low bit marks a change in progress, the next bit an unlinked node
+    private static final long UNLINKED = 2L;
+    private static final int SPIN_COUNT = 100;
+
+    // Results of nodeCondition other than a corrected height
+    private static final int UNLINK_REQUIRED = -1;
+    private static final int REBALANCE_REQUIRED = -2;
+    private static final int NOTHING_REQUIRED = -3;
+
+    // Conditions under which update goes ahead
+    private static final int UPDATE_ALWAYS = 0;
+    private static final int UPDATE_IF_ABSENT = 1;
+    private static final int UPDATE_IF_PRESENT = 2;
+    private static final int UPDATE_IF_EQUAL = 3;
+
+    // Returned by an attempt whose reads were invalidated by a concurrent change
+    private static final Object RETRY = new Object();
+
+    /**
+     * A sentinel above the root, whose right child is the root of the tree.
+     */
+    private final Node<K, V> rootHolder = new Node<>(null, 1, null, null);
+    private final LongAdder size = new LongAdder();
+
+    private KeySet<K> keySet;
+    private ConcurrentNavigableMap<K, V> descendingMap;
+
+    /**
+     * Constructs an empty ConcurrentAVLTreeMap.
+     */
+    public ConcurrentAVLTreeMap() {
+    }
+
+    /**
+     * Constructs a new ConcurrentAVLTreeMap containing the same mappings as the given map.
+     * @param map the map whose mappings are to be placed in this map
+     */
+    public ConcurrentAVLTreeMap(Map<? extends K, ? extends V> map) {
+        putAll(map);
+    }
+
+    private static boolean isChanging(long version) {
+        return (version & 1L) != 0;
+    }
+
+    private static boolean isUnlinked(long version) {
+        return (version & UNLINKED) != 0;
+    }
+
+    private static boolean isChangingOrUnlinked(long version) {
+        return (version & 3L) != 0;
+    }
+
+    private static long beginChange(long version) {
+        return version | 1L;
+    }
+
+    private static long endChange(long version) {
+        return (version | 3L) + 1;
+    }
+
+    private static int height(Node<?, ?> node) {
+        return node == null ? 0 : node.height;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K extends Comparable<K>> K comparable(Object key) {
+        if (key == null) {
+            throw new NullPointerException("Key cannot be null");
+        }
+        return (K) key;
+    }
+
+    // ----- reads -----
+
+    /**
+     * Returns the number of key-value mappings in this map. The count is kept in a striped
+     * counter, so it is exact only when no updates are in progress.
+     * @return the number of key-value mappings in this map
+     */
+    @Override
+    public int size() {
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(0, size.sum()));
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return firstEntry() == null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped, or null if this map contains no
+     * mapping for the key. The search takes no locks.
+     * @param key the key whose associated value is to be returned
+     * @return the value to which the specified key is mapped, or null if there is none
+     * @throws ClassCastException if the specified key cannot be compared with the keys currently in the map
+     * @throws NullPointerException if the specified key is null
+     */
+    @Override
+    public V get(Object key) {
+        K k = comparable(key);
+        while (true) {
+            Node<K, V> right = rootHolder.right;
+            if (right == null) {
+                return null;
+            }
+            int cmp = k.compareTo(right.key);
+            if (cmp == 0) {
+                return right.value;
+            }
+            long version = right.version;
+            if (isChangingOrUnlinked(version)) {
+                right.waitUntilChangeCompleted(version);
+            } else if (right == rootHolder.right) {
+                Object result = attemptGet(k, right, cmp, version);
+                if (result != RETRY) {
+                    @SuppressWarnings("unchecked")
+                    V value = (V) result;
+                    return value;
+                }
+            }
+        }
+    }
+
+    /**
+     * Continues a search below a node whose version was read before it was compared.
+     * @return the value found, null if the key is absent, or RETRY if the caller must search again
+     */
+    private Object attemptGet(K key, Node<K, V> node, int dirToChild, long nodeVersion) {
+        while (true) {
+            Node<K, V> child = node.child(dirToChild);
+            if (child == null) {
+                return node.version != nodeVersion ? RETRY : null;
+            }
+            int childCmp = key.compareTo(child.key);
+            if (childCmp == 0) {
+                return child.value;
+            }
+            long childVersion = child.version;
+            if (isChangingOrUnlinked(childVersion)) {
+                child.waitUntilChangeCompleted(childVersion);
+                if (node.version != nodeVersion) {
+                    return RETRY;
+                }
+            } else if (child != node.child(dirToChild)) {
+                if (node.version != nodeVersion) {
+                    return RETRY;
+                }
+            } else {
+                if (node.version != nodeVersion) {
+                    return RETRY;
+                }
+                Object result = attemptGet(key, child, childCmp, childVersion);
+                if (result != RETRY) {
+                    return result;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the mapping whose key is nearest the given key in one direction, skipping routing
+     * nodes. A null key stands for a key beyond every key in the opposite direction, which finds
+     * the first or last mapping.
+     * @param key the key to search from, or null
+     * @param above true to search for keys above, false to search below
+     * @param inclusive true if a mapping for the key itself qualifies
+     * @return a snapshot of the nearest mapping, or null if there is none
+     */
+    private Map.Entry<K, V> nearEntry(K key, boolean above, boolean inclusive) {
+        while (true) {
+            Node<K, V> node = nearNode(key, above, inclusive);
+            if (node == null) {
+                return null;
+            }
+            V value = node.value;
+            if (value != null) {
+                return new AbstractMap.SimpleImmutableEntry<>(node.key, value);
+            }
+            // A routing node or one removed since it was found: continue past its key
+            key = node.key;
+            inclusive = false;
+        }
+    }
+
+    private Node<K, V> nearNode(K key, boolean above, boolean inclusive) {
+        while (true) {
+            Node<K, V> right = rootHolder.right;
+            if (right == null) {
+                return null;
+            }
+            long version = right.version;
+            if (isChangingOrUnlinked(version)) {
+                right.waitUntilChangeCompleted(version);
+            } else if (right == rootHolder.right) {
+                Object result = attemptNear(key, above, inclusive, right, version, null);
+                if (result != RETRY) {
+                    @SuppressWarnings("unchecked")
+                    Node<K, V> node = (Node<K, V>) result;
+                    return node;
+                }
+            }
+        }
+    }
+
+    /**
+     * Continues a nearest-key search below a node, carrying the best node seen on the way down.
+     * @return the nearest node, null if there is none, or RETRY if the caller must search again
+     */
+    private Object attemptNear(K key, boolean above, boolean inclusive, Node<K, V> node, long nodeVersion,
+            Node<K, V> best) {
+        int cmp = key == null ? (above ? -1 : 1) : key.compareTo(node.key);
+        if (cmp == 0 && inclusive) {
+            return node;
+        }
+        int dir;
+        if (above) {
+            if (cmp < 0) {
+                best = node;
+            }
+            dir = cmp < 0 ? -1 : 1;
+        } else {
+            if (cmp > 0) {
+                best = node;
+            }
+            dir = cmp > 0 ? 1 : -1;
+        }
+        while (true) {
+            Node<K, V> child = node.child(dir);
+            if (child == null) {
+                return node.version != nodeVersion ? RETRY : best;
+            }
+            long childVersion = child.version;
+            if (isChangingOrUnlinked(childVersion)) {
+                child.waitUntilChangeCompleted(childVersion);
+                if (node.version != nodeVersion) {
+                    return RETRY;
+                }
+            } else if (child != node.child(dir)) {
+                if (node.version != nodeVersion) {
+                    return RETRY;
+                }
+            } else {
+                if (node.version != nodeVersion) {
+                    return RETRY;
+                }
+                Object result = attemptNear(key, above, inclusive, child, childVersion, best);
+                if (result != RETRY) {
+                    return result;
+                }
+            }
+        }
+    }
+
+    // ----- updates -----
+
+    @Override
+    public V put(K key, V value) {
+        return update(key, UPDATE_ALWAYS, null, Objects.requireNonNull(value));
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+        return update(key, UPDATE_IF_ABSENT, null, Objects.requireNonNull(value));
+    }
+
+    @Override
+    public V replace(K key, V value) {
+        return update(key, UPDATE_IF_PRESENT, null, Objects.requireNonNull(value));
+    }
+
+    @Override
+    public boolean replace(K key, V oldValue, V newValue) {
+        Objects.requireNonNull(newValue);
+        return Objects.requireNonNull(oldValue).equals(update(key, UPDATE_IF_EQUAL, oldValue, newValue));
+    }
+
+    @Override
+    public V remove(Object key) {
+        return update(key, UPDATE_ALWAYS, null, null);
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        return value != null && value.equals(update(key, UPDATE_IF_EQUAL, value, null));
+    }
+
+    /**
+     * Removes all of the mappings from this map, one key at a time.
+     */
+    @Override
+    public void clear() {
+        while (pollFirstEntry() != null) {
+            // keep removing
+        }
+    }
+
+    private static boolean shouldUpdate(int condition, Object previous, Object expected) {
+        switch (condition) {
+            case UPDATE_ALWAYS:
+                return true;
+            case UPDATE_IF_ABSENT:
+                return previous == null;
+            case UPDATE_IF_PRESENT:
+                return previous != null;
+            default:
+                return previous != null && previous.equals(expected);
+        }
+    }
+
+    /**
+     * Sets, replaces or removes the value for a key if the condition holds.
+     * @param key the key to update
+     * @param condition one of the UPDATE constants
+     * @param expected the value the key must currently have, for UPDATE_IF_EQUAL
+     * @param newValue the new value, or null to remove the key
+     * @return the previous value, or null if there was none
+     */
+    private V update(Object key, int condition, Object expected, V newValue) {
+        K k = comparable(key);
+        while (true) {
+            Node<K, V> right = rootHolder.right;
+            if (right == null) {
+                if (newValue == null || !shouldUpdate(condition, null, expected) || attemptInsertIntoEmpty(k, newValue)) {
+                    return null;
+                }
+            } else {
+                long version = right.version;
+                if (isChangingOrUnlinked(version)) {
+                    right.waitUntilChangeCompleted(version);
+                } else if (right == rootHolder.right) {
+                    Object result = attemptUpdate(k, condition, expected, newValue, rootHolder, right, version);
+                    if (result != RETRY) {
+                        @SuppressWarnings("unchecked")
+                        V previous = (V) result;
+                        return previous;
+                    }
+                }
+            }
+        }
+    }
+
+    private boolean attemptInsertIntoEmpty(K key, V value) {
+        synchronized (rootHolder) {
+            if (rootHolder.right != null) {
+                return false;
+            }
+            rootHolder.right = new Node<>(key, 1, value, rootHolder);
+            rootHolder.height = 2;
+        }
+        size.increment();
+        return true;
+    }
+
+    /**
+     * Continues an update below a node whose version was read before it was reached. A rotation
+     * of the node would shrink the range of keys below it, so each step down is validated
+     * against the version of the node it came from.
+     * @return the previous value, null if there was none, or RETRY if the caller must search again
+     */
+    private Object attemptUpdate(K key, int condition, Object expected, V newValue, Node<K, V> parent,
+            Node<K, V> node, long nodeVersion) {
+        int cmp = key.compareTo(node.key);
+        if (cmp == 0) {
+            return attemptNodeUpdate(condition, expected, newValue, parent, node);
+        }
+        while (true) {
+            Node<K, V> child = node.child(cmp);
+            if (node.version != nodeVersion) {
+                return RETRY;
+            }
+            if (child == null) {
+                if (newValue == null) {
+                    return null;
+                }
+                Node<K, V> damaged;
+                synchronized (node) {
+                    // Holding the lock, no further rotation can move the node
+                    if (node.version != nodeVersion) {
+                        return RETRY;
+                    }
+                    if (node.child(cmp) != null) {
+                        // Lost a race with another insert here; search on from this node
+                        continue;
+                    }
+                    if (!shouldUpdate(condition, null, expected)) {
+                        return null;
+                    }
+                    node.setChild(cmp, new Node<>(key, 1, newValue, node));
+                    damaged = fixHeight(node);
+                }
+                size.increment();
+                fixHeightAndRebalance(damaged);
+                return null;
+            }
+            long childVersion = child.version;
+            if (isChangingOrUnlinked(childVersion)) {
+                child.waitUntilChangeCompleted(childVersion);
+            } else if (child == node.child(cmp)) {
+                if (node.version != nodeVersion) {
+                    return RETRY;
+                }
+                Object result = attemptUpdate(key, condition, expected, newValue, node, child, childVersion);
+                if (result != RETRY) {
+                    return result;
+                }
+            }
+        }
+    }
+
+    /**
+     * Updates the node holding the key. The parent is only needed to unlink the node.
+     * @return the previous value, null if there was none, or RETRY if the caller must search again
+     */
+    private Object attemptNodeUpdate(int condition, Object expected, V newValue, Node<K, V> parent,
+            Node<K, V> node) {
+        if (newValue == null && node.value == null) {
+            // Already removed
+            return null;
+        }
+        if (newValue == null && (node.left == null || node.right == null)) {
+            // A removal that can unlink the node, which needs the parent's lock too
+            V previous;
+            Node<K, V> damaged;
+            synchronized (parent) {
+                if (isUnlinked(parent.version) || node.parent != parent) {
+                    return RETRY;
+                }
+                synchronized (node) {
+                    previous = node.value;
+                    if (previous == null || !shouldUpdate(condition, previous, expected)) {
+                        return previous;
+                    }
+                    if (!attemptUnlink(parent, node)) {
+                        return RETRY;
+                    }
+                }
+                damaged = fixHeight(parent);
+            }
+            size.decrement();
+            fixHeightAndRebalance(damaged);
+            return previous;
+        }
+        synchronized (node) {
+            if (isUnlinked(node.version)) {
+                return RETRY;
+            }
+            V previous = node.value;
+            if (!shouldUpdate(condition, previous, expected)) {
+                return previous;
+            }
+            if (newValue == null && (node.left == null || node.right == null)) {
+                // A child went away meanwhile, so the node can now be unlinked instead
+                return RETRY;
+            }
+            // Removing a node with two children leaves it in place as a routing node
+            node.value = newValue;
+            if (previous == null && newValue != null) {
+                size.increment();
+            } else if (previous != null && newValue == null) {
+                size.decrement();
+            }
+            return previous;
+        }
+    }
+
+    /**
+     * Splices a node with at most one child out of the tree. Both nodes must be locked.
+     * @return true if the node was unlinked, false if the tree changed and the caller must retry
+     */
+    private boolean attemptUnlink(Node<K, V> parent, Node<K, V> node) {
+        Node<K, V> parentLeft = parent.left;
+        Node<K, V> parentRight = parent.right;
+        if (parentLeft != node && parentRight != node) {
+            return false;
+        }
+        Node<K, V> left = node.left;
+        Node<K, V> right = node.right;
+        if (left != null && right != null) {
+            return false;
+        }
+        Node<K, V> splice = left != null ? left : right;
+        if (parentLeft == node) {
+            parent.left = splice;
+        } else {
+            parent.right = splice;
+        }
+        if (splice != null) {
+            splice.parent = parent;
+        }
+        node.version = UNLINKED;
+        node.value = null;
+        return true;
+    }
+
+    // ----- rebalancing -----
+
+    /**
+     * Reads a node's children and heights to decide what repair it needs. Any thread that
+     * damages a node promises to repair it, so a conclusion drawn from an inconsistent read is
+     * either correct or someone else's responsibility.
+     * @return a corrected height, or one of UNLINK_REQUIRED, REBALANCE_REQUIRED or NOTHING_REQUIRED
+     */
+    private int nodeCondition(Node<K, V> node) {
+        Node<K, V> left = node.left;
+        Node<K, V> right = node.right;
+        if ((left == null || right == null) && node.value == null) {
+            return UNLINK_REQUIRED;
+        }
+        int height = node.height;
+        int leftHeight = height(left);
+        int rightHeight = height(right);
+        int balance = leftHeight - rightHeight;
+        if (balance < -1 || balance > 1) {
+            return REBALANCE_REQUIRED;
+        }
+        int corrected = 1 + Math.max(leftHeight, rightHeight);
+        return height != corrected ? corrected : NOTHING_REQUIRED;
+    }
+
+    /**
+     * Repairs damaged nodes from the given node up towards the root until no repair is needed.
+     * @param node the lowest damaged node, or null
+     */
+    private void fixHeightAndRebalance(Node<K, V> node) {
+        while (node != null && node.parent != null) {
+            int condition = nodeCondition(node);
+            if (condition == NOTHING_REQUIRED || isUnlinked(node.version)) {
+                return;
+            }
+            if (condition != UNLINK_REQUIRED && condition != REBALANCE_REQUIRED) {
+                synchronized (node) {
+                    node = fixHeight(node);
+                }
+            } else {
+                Node<K, V> parent = node.parent;
+                synchronized (parent) {
+                    if (!isUnlinked(parent.version) && node.parent == parent) {
+                        synchronized (node) {
+                            node = rebalance(parent, node);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Fixes the height of a locked node if that is all it needs.
+     * @return the lowest damaged node this thread is now responsible for, or null if none
+     */
+    private Node<K, V> fixHeight(Node<K, V> node) {
+        int condition = nodeCondition(node);
+        switch (condition) {
+            case REBALANCE_REQUIRED:
+            case UNLINK_REQUIRED:
+                return node;
+            case NOTHING_REQUIRED:
+                return null;
+            default:
+                node.height = condition;
+                return node.parent;
+        }
+    }
+
+    /**
+     * Unlinks, rotates or fixes the height of a node. The node and its parent must be locked.
+     * @return the lowest damaged node this thread is now responsible for, or null if none
+     */
+    private Node<K, V> rebalance(Node<K, V> parent, Node<K, V> node) {
+        Node<K, V> left = node.left;
+        Node<K, V> right = node.right;
+        if ((left == null || right == null) && node.value == null) {
+            return attemptUnlink(parent, node) ? fixHeight(parent) : node;
+        }
+        int height = node.height;
+        int leftHeight = height(left);
+        int rightHeight = height(right);
+        int corrected = 1 + Math.max(leftHeight, rightHeight);
+        int balance = leftHeight - rightHeight;
+        if (balance > 1) {
+            return rebalanceToRight(parent, node, left, rightHeight);
+        } else if (balance < -1) {
+            return rebalanceToLeft(parent, node, right, leftHeight);
+        } else if (corrected != height) {
+            node.height = corrected;
+            return fixHeight(parent);
+        }
+        return null;
+    }
+
+    // The left subtree is too tall: rotate right, first rotating the left child left if needed
+    private Node<K, V> rebalanceToRight(Node<K, V> parent, Node<K, V> node, Node<K, V> left, int rightHeight) {
+        synchronized (left) {
+            int leftHeight = left.height;
+            if (leftHeight - rightHeight <= 1) {
+                return node;
+            }
+            Node<K, V> leftRight = left.right;
+            int leftLeftHeight = height(left.left);
+            int leftRightHeight = height(leftRight);
+            if (leftLeftHeight >= leftRightHeight) {
+                return rotateRight(parent, node, left, rightHeight, leftLeftHeight, leftRight, leftRightHeight);
+            }
+            synchronized (leftRight) {
+                leftRightHeight = leftRight.height;
+                if (leftLeftHeight >= leftRightHeight) {
+                    return rotateRight(parent, node, left, rightHeight, leftLeftHeight, leftRight, leftRightHeight);
+                }
+                int leftRightLeftHeight = height(leftRight.left);
+                int balance = leftLeftHeight - leftRightLeftHeight;
+                if (balance >= -1 && balance <= 1 && !((leftLeftHeight == 0 || leftRight.left == null) && left.value == null)) {
+                    return rotateRightOverLeft(parent, node, left, rightHeight, leftLeftHeight, leftRight, leftRightLeftHeight);
+                }
+            }
+            // Fix the left child on its own; the node is rebalanced afterwards if still needed
+            return rebalanceToLeft(node, left, leftRight, leftLeftHeight);
+        }
+    }
+
+    // The right subtree is too tall: rotate left, first rotating the right child right if needed
+    private Node<K, V> rebalanceToLeft(Node<K, V> parent, Node<K, V> node, Node<K, V> right, int leftHeight) {
+        synchronized (right) {
+            int rightHeight = right.height;
+            if (leftHeight - rightHeight >= -1) {
+                return node;
+            }
+            Node<K, V> rightLeft = right.left;
+            int rightLeftHeight = height(rightLeft);
+            int rightRightHeight = height(right.right);
+            if (rightRightHeight >= rightLeftHeight) {
+                return rotateLeft(parent, node, leftHeight, right, rightLeft, rightLeftHeight, rightRightHeight);
+            }
+            synchronized (rightLeft) {
+                rightLeftHeight = rightLeft.height;
+                if (rightRightHeight >= rightLeftHeight) {
+                    return rotateLeft(parent, node, leftHeight, right, rightLeft, rightLeftHeight, rightRightHeight);
+                }
+                int rightLeftRightHeight = height(rightLeft.right);
+                int balance = rightRightHeight - rightLeftRightHeight;
+                if (balance >= -1 && balance <= 1 && !((rightRightHeight == 0 || rightLeft.right == null) && right.value == null)) {
+                    return rotateLeftOverRight(parent, node, leftHeight, right, rightLeft, rightRightHeight, rightLeftRightHeight);
+                }
+            }
+            return rebalanceToRight(node, right, rightLeft, rightRightHeight);
+        }
+    }
+
+    private Node<K, V> rotateRight(Node<K, V> parent, Node<K, V> node, Node<K, V> left, int rightHeight,
+            int leftLeftHeight, Node<K, V> leftRight, int leftRightHeight) {
+        long nodeVersion = node.version;
+        Node<K, V> parentLeft = parent.left;
+        node.version = beginChange(nodeVersion);
+
+        node.left = leftRight;
+        if (leftRight != null) {
+            leftRight.parent = node;
+        }
+        left.right = node;
+        node.parent = left;
+        if (parentLeft == node) {
+            parent.left = left;
+        } else {
+            parent.right = left;
+        }
+        left.parent = parent;
+
+        int nodeHeight = 1 + Math.max(leftRightHeight, rightHeight);
+        node.height = nodeHeight;
+        left.height = 1 + Math.max(leftLeftHeight, nodeHeight);
+        node.version = endChange(nodeVersion);
+
+        // The node, its old left child and the parent are damaged; fix what the held locks allow
+        int nodeBalance = leftRightHeight - rightHeight;
+        if (nodeBalance < -1 || nodeBalance > 1) {
+            return node;
+        }
+        if ((leftRight == null || rightHeight == 0) && node.value == null) {
+            return node;
+        }
+        int leftBalance = leftLeftHeight - nodeHeight;
+        if (leftBalance < -1 || leftBalance > 1) {
+            return left;
+        }
+        if (leftLeftHeight == 0 && left.value == null) {
+            return left;
+        }
+        return fixHeight(parent);
+    }
+
+    private Node<K, V> rotateLeft(Node<K, V> parent, Node<K, V> node, int leftHeight, Node<K, V> right,
+            Node<K, V> rightLeft, int rightLeftHeight, int rightRightHeight) {
+        long nodeVersion = node.version;
+        Node<K, V> parentLeft = parent.left;
+        node.version = beginChange(nodeVersion);
+
+        node.right = rightLeft;
+        if (rightLeft != null) {
+            rightLeft.parent = node;
+        }
+        right.left = node;
+        node.parent = right;
+        if (parentLeft == node) {
+            parent.left = right;
+        } else {
+            parent.right = right;
+        }
+        right.parent = parent;
+
+        int nodeHeight = 1 + Math.max(leftHeight, rightLeftHeight);
+        node.height = nodeHeight;
+        right.height = 1 + Math.max(nodeHeight, rightRightHeight);
+        node.version = endChange(nodeVersion);
+
+        int nodeBalance = leftHeight - rightLeftHeight;
+        if (nodeBalance < -1 || nodeBalance > 1) {
+            return node;
+        }
+        if ((rightLeft == null || leftHeight == 0) && node.value == null) {
+            return node;
+        }
+        int rightBalance = nodeHeight - rightRightHeight;
+        if (rightBalance < -1 || rightBalance > 1) {
+            return right;
+        }
+        if (rightRightHeight == 0 && right.value == null) {
+            return right;
+        }
+        return fixHeight(parent);
+    }
+
+    private Node<K, V> rotateRightOverLeft(Node<K, V> parent, Node<K, V> node, Node<K, V> left, int rightHeight,
+            int leftLeftHeight, Node<K, V> leftRight, int leftRightLeftHeight) {
+        long nodeVersion = node.version;
+        long leftVersion = left.version;
+        Node<K, V> parentLeft = parent.left;
+        Node<K, V> leftRightLeft = leftRight.left;
+        Node<K, V> leftRightRight = leftRight.right;
+        int leftRightRightHeight = height(leftRightRight);
+
+        node.version = beginChange(nodeVersion);
+        left.version = beginChange(leftVersion);
+
+        node.left = leftRightRight;
+        if (leftRightRight != null) {
+            leftRightRight.parent = node;
+        }
+        left.right = leftRightLeft;
+        if (leftRightLeft != null) {
+            leftRightLeft.parent = left;
+        }
+        leftRight.left = left;
+        left.parent = leftRight;
+        leftRight.right = node;
+        node.parent = leftRight;
+        if (parentLeft == node) {
+            parent.left = leftRight;
+        } else {
+            parent.right = leftRight;
+        }
+        leftRight.parent = parent;
+
+        int nodeHeight = 1 + Math.max(leftRightRightHeight, rightHeight);
+        node.height = nodeHeight;
+        int leftNewHeight = 1 + Math.max(leftLeftHeight, leftRightLeftHeight);
+        left.height = leftNewHeight;
+        leftRight.height = 1 + Math.max(leftNewHeight, nodeHeight);
+
+        node.version = endChange(nodeVersion);
+        left.version = endChange(leftVersion);
+
+        int nodeBalance = leftRightRightHeight - rightHeight;
+        if (nodeBalance < -1 || nodeBalance > 1) {
+            return node;
+        }
+        if ((leftRightRight == null || rightHeight == 0) && node.value == null) {
+            return node;
+        }
+        int topBalance = leftNewHeight - nodeHeight;
+        if (topBalance < -1 || topBalance > 1) {
+            return leftRight;
+        }
+        return fixHeight(parent);
+    }
+
+    private Node<K, V> rotateLeftOverRight(Node<K, V> parent, Node<K, V> node, int leftHeight, Node<K, V> right,
+            Node<K, V> rightLeft, int rightRightHeight, int rightLeftRightHeight) {
+        long nodeVersion = node.version;
+        long rightVersion = right.version;
+        Node<K, V> parentLeft = parent.left;
+        Node<K, V> rightLeftLeft = rightLeft.left;
+        Node<K, V> rightLeftRight = rightLeft.right;
+        int rightLeftLeftHeight = height(rightLeftLeft);
+
+        node.version = beginChange(nodeVersion);
+        right.version = beginChange(rightVersion);
+
+        node.right = rightLeftLeft;
+        if (rightLeftLeft != null) {
+            rightLeftLeft.parent = node;
+        }
+        right.left = rightLeftRight;
+        if (rightLeftRight != null) {
+            rightLeftRight.parent = right;
+        }
+        rightLeft.right = right;
+        right.parent = rightLeft;
+        rightLeft.left = node;
+        node.parent = rightLeft;
+        if (parentLeft == node) {
+            parent.left = rightLeft;
+        } else {
+            parent.right = rightLeft;
+        }
+        rightLeft.parent = parent;
+
+        int nodeHeight = 1 + Math.max(leftHeight, rightLeftLeftHeight);
+        node.height = nodeHeight;
+        int rightNewHeight = 1 + Math.max(rightLeftRightHeight, rightRightHeight);
+        right.height = rightNewHeight;
+        rightLeft.height = 1 + Math.max(nodeHeight, rightNewHeight);
+
+        node.version = endChange(nodeVersion);
+        right.version = endChange(rightVersion);
+
+        int nodeBalance = leftHeight - rightLeftLeftHeight;
+        if (nodeBalance < -1 || nodeBalance > 1) {
+            return node;
+        }
+        if ((rightLeftLeft == null || leftHeight == 0) && node.value == null) {
+            return node;
+        }
+        int topBalance = nodeHeight - rightNewHeight;
+        if (topBalance < -1 || topBalance > 1) {
+            return rightLeft;
+        }
+        return fixHeight(parent);
+    }
+
+    // ----- navigation -----
+
+    @Override
+    public Comparator<? super K> comparator() {
+        return null;
+    }
+
+    @Override
+    public K firstKey() {
+        return keyOf(firstEntry());
+    }
+
+    @Override
+    public K lastKey() {
+        return keyOf(lastEntry());
+    }
+
+    private static <K> K keyOf(Map.Entry<K, ?> entry) {
+        if (entry == null) {
+            throw new NoSuchElementException();
+        }
+        return entry.getKey();
+    }
+
+    private static <K> K keyOrNull(Map.Entry<K, ?> entry) {
+        return entry == null ? null : entry.getKey();
+    }
+
+    @Override
+    public Map.Entry<K, V> firstEntry() {
+        return nearEntry(null, true, true);
+    }
+
+    @Override
+    public Map.Entry<K, V> lastEntry() {
+        return nearEntry(null, false, true);
+    }
+
+    @Override
+    public Map.Entry<K, V> pollFirstEntry() {
+        while (true) {
+            Map.Entry<K, V> entry = firstEntry();
+            if (entry == null || remove(entry.getKey(), entry.getValue())) {
+                return entry;
+            }
+        }
+    }
+
+    @Override
+    public Map.Entry<K, V> pollLastEntry() {
+        while (true) {
+            Map.Entry<K, V> entry = lastEntry();
+            if (entry == null || remove(entry.getKey(), entry.getValue())) {
+                return entry;
+            }
+        }
+    }
+
+    @Override
+    public Map.Entry<K, V> lowerEntry(K key) {
+        return nearEntry(comparable(key), false, false);
+    }
+
+    @Override
+    public K lowerKey(K key) {
+        return keyOrNull(lowerEntry(key));
+    }
+
+    @Override
+    public Map.Entry<K, V> floorEntry(K key) {
+        return nearEntry(comparable(key), false, true);
+    }
+
+    @Override
+    public K floorKey(K key) {
+        return keyOrNull(floorEntry(key));
+    }
+
+    @Override
+    public Map.Entry<K, V> ceilingEntry(K key) {
+        return nearEntry(comparable(key), true, true);
+    }
+
+    @Override
+    public K ceilingKey(K key) {
+        return keyOrNull(ceilingEntry(key));
+    }
+
+    @Override
+    public Map.Entry<K, V> higherEntry(K key) {
+        return nearEntry(comparable(key), true, false);
+    }
+
+    @Override
+    public K higherKey(K key) {
+        return keyOrNull(higherEntry(key));
+    }
+
+    // ----- views -----
+
+    @Override
+    public NavigableSet<K> keySet() {
+        return navigableKeySet();
+    }
+
+    @Override
+    public NavigableSet<K> navigableKeySet() {
+        KeySet<K> view = keySet;
+        return view != null ? view : (keySet = new KeySet<>(this));
+    }
+
+    @Override
+    public NavigableSet<K> descendingKeySet() {
+        return descendingMap().navigableKeySet();
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        return new EntrySet<>(this);
+    }
+
+    @Override
+    public Collection<V> values() {
+        return new Values<>(this);
+    }
+
+    @Override
+    public ConcurrentNavigableMap<K, V> descendingMap() {
+        ConcurrentNavigableMap<K, V> view = descendingMap;
+        return view != null ? view : (descendingMap = new SubMap(true, null, true, true, null, true, true));
+    }
+
+    @Override
+    public ConcurrentNavigableMap<K, V> subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+        if (comparable(fromKey).compareTo(comparable(toKey)) > 0) {
+            throw new IllegalArgumentException("fromKey > toKey");
+        }
+        return new SubMap(false, fromKey, fromInclusive, false, toKey, toInclusive, false);
+    }
+
+    @Override
+    public ConcurrentNavigableMap<K, V> headMap(K toKey, boolean inclusive) {
+        return new SubMap(true, null, true, false, comparable(toKey), inclusive, false);
+    }
+
+    @Override
+    public ConcurrentNavigableMap<K, V> tailMap(K fromKey, boolean inclusive) {
+        return new SubMap(false, comparable(fromKey), inclusive, true, null, true, false);
+    }
+
+    @Override
+    public ConcurrentNavigableMap<K, V> subMap(K fromKey, K toKey) {
+        return subMap(fromKey, true, toKey, false);
+    }
+
+    @Override
+    public ConcurrentNavigableMap<K, V> headMap(K toKey) {
+        return headMap(toKey, false);
+    }
+
+    @Override
+    public ConcurrentNavigableMap<K, V> tailMap(K fromKey) {
+        return tailMap(fromKey, true);
+    }
+
+    /**
+     * A weakly consistent iterator over any of this map's views, which finds each entry by
+     * searching for the next key after the last one returned.
+     */
+    private static final class EntryIterator<K, V> implements Iterator<Map.Entry<K, V>> {
+        private final NavigableMap<K, V> map;
+        private Map.Entry<K, V> next;
+        private Map.Entry<K, V> lastReturned;
+
+        EntryIterator(NavigableMap<K, V> map) {
+            this.map = map;
+            this.next = map.firstEntry();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Map.Entry<K, V> next() {
+            Map.Entry<K, V> entry = next;
+            if (entry == null) {
+                throw new NoSuchElementException();
+            }
+            lastReturned = entry;
+            next = map.higherEntry(entry.getKey());
+            return entry;
+        }
+
+        @Override
+        public void remove() {
+            if (lastReturned == null) {
+                throw new IllegalStateException();
+            }
+            map.remove(lastReturned.getKey());
+            lastReturned = null;
+        }
+    }
+
+    /**
+     * The entry set view of this map or of one of its sub-maps.
+     */
+    private static final class EntrySet<K, V> extends AbstractSet<Map.Entry<K, V>> {
+        private final ConcurrentNavigableMap<K, V> map;
+
+        EntrySet(ConcurrentNavigableMap<K, V> map) {
+            this.map = map;
+        }
+
+        @Override
+        public Iterator<Map.Entry<K, V>> iterator() {
+            return new EntryIterator<>(map);
+        }
+
+        @Override
+        public int size() {
+            return map.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return map.isEmpty();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+            V value = map.get(entry.getKey());
+            return value != null && value.equals(entry.getValue());
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+            return map.remove(entry.getKey(), entry.getValue());
+        }
+
+        @Override
+        public void clear() {
+            map.clear();
+        }
+    }
+
+    /**
+     * The values view of this map or of one of its sub-maps.
+     */
+    private static final class Values<K, V> extends AbstractCollection<V> {
+        private final ConcurrentNavigableMap<K, V> map;
+
+        Values(ConcurrentNavigableMap<K, V> map) {
+            this.map = map;
+        }
+
+        @Override
+        public Iterator<V> iterator() {
+            Iterator<Map.Entry<K, V>> entries = new EntryIterator<>(map);
+            return new Iterator<V>() {
+                @Override
+                public boolean hasNext() {
+                    return entries.hasNext();
+                }
+
+                @Override
+                public V next() {
+                    return entries.next().getValue();
+                }
+
+                @Override
+                public void remove() {
+                    entries.remove();
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return map.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return map.isEmpty();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return map.containsValue(o);
+        }
+
+        @Override
+        public void clear() {
+            map.clear();
+        }
+    }
+
+    /**
+     * The key set view of this map or of one of its sub-maps.
+     */
+    private static final class KeySet<K> extends AbstractSet<K> implements NavigableSet<K> {
+        private final ConcurrentNavigableMap<K, ?> map;
+
+        KeySet(ConcurrentNavigableMap<K, ?> map) {
+            this.map = map;
+        }
+
+        @Override
+        public Iterator<K> iterator() {
+            Iterator<? extends Map.Entry<K, ?>> entries = new EntryIterator<>(map);
+            return new Iterator<K>() {
+                @Override
+                public boolean hasNext() {
+                    return entries.hasNext();
+                }
+
+                @Override
+                public K next() {
+                    return entries.next().getKey();
+                }
+
+                @Override
+                public void remove() {
+                    entries.remove();
+                }
+            };
+        }
+
+        @Override
+        public Iterator<K> descendingIterator() {
+            return descendingSet().iterator();
+        }
+
+        @Override
+        public int size() {
+            return map.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return map.isEmpty();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return map.containsKey(o);
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            return map.remove(o) != null;
+        }
+
+        @Override
+        public void clear() {
+            map.clear();
+        }
+
+        @Override
+        public Comparator<? super K> comparator() {
+            return map.comparator();
+        }
+
+        @Override
+        public K first() {
+            return map.firstKey();
+        }
+
+        @Override
+        public K last() {
+            return map.lastKey();
+        }
+
+        @Override
+        public K lower(K key) {
+            return map.lowerKey(key);
+        }
+
+        @Override
+        public K floor(K key) {
+            return map.floorKey(key);
+        }
+
+        @Override
+        public K ceiling(K key) {
+            return map.ceilingKey(key);
+        }
+
+        @Override
+        public K higher(K key) {
+            return map.higherKey(key);
+        }
+
+        @Override
+        public K pollFirst() {
+            Map.Entry<K, ?> entry = map.pollFirstEntry();
+            return entry == null ? null : entry.getKey();
+        }
+
+        @Override
+        public K pollLast() {
+            Map.Entry<K, ?> entry = map.pollLastEntry();
+            return entry == null ? null : entry.getKey();
+        }
+
+        @Override
+        public NavigableSet<K> descendingSet() {
+            return map.descendingMap().navigableKeySet();
+        }
+
+        @Override
+        public NavigableSet<K> subSet(K fromElement, boolean fromInclusive, K toElement, boolean toInclusive) {
+            return map.subMap(fromElement, fromInclusive, toElement, toInclusive).navigableKeySet();
+        }
+
+        @Override
+        public NavigableSet<K> headSet(K toElement, boolean inclusive) {
+            return map.headMap(toElement, inclusive).navigableKeySet();
+        }
+
+        @Override
+        public NavigableSet<K> tailSet(K fromElement, boolean inclusive) {
+            return map.tailMap(fromElement, inclusive).navigableKeySet();
+        }
+
+        @Override
+        public SortedSet<K> subSet(K fromElement, K toElement) {
+            return subSet(fromElement, true, toElement, false);
+        }
+
+        @Override
+        public SortedSet<K> headSet(K toElement) {
+            return headSet(toElement, false);
+        }
+
+        @Override
+        public SortedSet<K> tailSet(K fromElement) {
+            return tailSet(fromElement, true);
+        }
+    }
+
+    /**
+     * A view of the mappings whose keys fall between two bounds, in ascending or descending
+     * order. The bounds are kept in ascending terms whichever way the view is ordered.
+     */
+    private final class SubMap extends AbstractMap<K, V> implements ConcurrentNavigableMap<K, V> {
+        private final boolean fromStart;
+        private final K lo;
+        private final boolean loInclusive;
+        private final boolean toEnd;
+        private final K hi;
+        private final boolean hiInclusive;
+        private final boolean descending;
+
+        SubMap(boolean fromStart, K lo, boolean loInclusive, boolean toEnd, K hi, boolean hiInclusive,
+                boolean descending) {
+            this.fromStart = fromStart;
+            this.lo = lo;
+            this.loInclusive = loInclusive;
+            this.toEnd = toEnd;
+            this.hi = hi;
+            this.hiInclusive = hiInclusive;
+            this.descending = descending;
+        }
+
+        private boolean tooLow(K key) {
+            if (fromStart) {
+                return false;
+            }
+            int cmp = key.compareTo(lo);
+            return cmp < 0 || cmp == 0 && !loInclusive;
+        }
+
+        private boolean tooHigh(K key) {
+            if (toEnd) {
+                return false;
+            }
+            int cmp = key.compareTo(hi);
+            return cmp > 0 || cmp == 0 && !hiInclusive;
+        }
+
+        private boolean inRange(Object key) {
+            K k = comparable(key);
+            return !tooLow(k) && !tooHigh(k);
+        }
+
+        // Checks a bound for a nested view, which may equal an exclusive bound of this view
+        private boolean inRange(K key, boolean inclusive) {
+            if (inclusive) {
+                return inRange(key);
+            }
+            return (fromStart || key.compareTo(lo) >= 0) && (toEnd || key.compareTo(hi) <= 0);
+        }
+
+        private Map.Entry<K, V> absLowest() {
+            Map.Entry<K, V> entry = fromStart ? nearEntry(null, true, true) : nearEntry(lo, true, loInclusive);
+            return entry == null || tooHigh(entry.getKey()) ? null : entry;
+        }
+
+        private Map.Entry<K, V> absHighest() {
+            Map.Entry<K, V> entry = toEnd ? nearEntry(null, false, true) : nearEntry(hi, false, hiInclusive);
+            return entry == null || tooLow(entry.getKey()) ? null : entry;
+        }
+
+        private Map.Entry<K, V> absNear(K key, boolean above, boolean inclusive) {
+            if (above ? tooLow(key) : tooHigh(key)) {
+                return above ? absLowest() : absHighest();
+            }
+            Map.Entry<K, V> entry = nearEntry(key, above, inclusive);
+            return entry == null || (above ? tooHigh(entry.getKey()) : tooLow(entry.getKey())) ? null : entry;
+        }
+
+        private Map.Entry<K, V> near(K key, boolean after, boolean inclusive) {
+            return absNear(comparable(key), after != descending, inclusive);
+        }
+
+        @Override
+        public int size() {
+            long count = 0;
+            for (Iterator<Map.Entry<K, V>> it = new EntryIterator<>(this); it.hasNext(); it.next()) {
+                count++;
+            }
+            return (int) Math.min(Integer.MAX_VALUE, count);
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return absLowest() == null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return inRange(key) && ConcurrentAVLTreeMap.this.containsKey(key);
+        }
+
+        @Override
+        public V get(Object key) {
+            return inRange(key) ? ConcurrentAVLTreeMap.this.get(key) : null;
+        }
+
+        private K checkedKey(K key) {
+            if (!inRange(key)) {
+                throw new IllegalArgumentException("key out of range");
+            }
+            return key;
+        }
+
+        @Override
+        public V put(K key, V value) {
+            return ConcurrentAVLTreeMap.this.put(checkedKey(key), value);
+        }
+
+        @Override
+        public V putIfAbsent(K key, V value) {
+            return ConcurrentAVLTreeMap.this.putIfAbsent(checkedKey(key), value);
+        }
+
+        @Override
+        public V replace(K key, V value) {
+            return inRange(key) ? ConcurrentAVLTreeMap.this.replace(key, value) : null;
+        }
+
+        @Override
+        public boolean replace(K key, V oldValue, V newValue) {
+            return inRange(key) && ConcurrentAVLTreeMap.this.replace(key, oldValue, newValue);
+        }
+
+        @Override
+        public V remove(Object key) {
+            return inRange(key) ? ConcurrentAVLTreeMap.this.remove(key) : null;
+        }
+
+        @Override
+        public boolean remove(Object key, Object value) {
+            return inRange(key) && ConcurrentAVLTreeMap.this.remove(key, value);
+        }
+
+        @Override
+        public void clear() {
+            while (pollFirstEntry() != null) {
+                // keep removing
+            }
+        }
+
+        @Override
+        public Set<Map.Entry<K, V>> entrySet() {
+            return new EntrySet<>(this);
+        }
+
+        @Override
+        public Collection<V> values() {
+            return new Values<>(this);
+        }
+
+        @Override
+        public NavigableSet<K> keySet() {
+            return navigableKeySet();
+        }
+
+        @Override
+        public NavigableSet<K> navigableKeySet() {
+            return new KeySet<>(this);
+        }
+
+        @Override
+        public NavigableSet<K> descendingKeySet() {
+            return descendingMap().navigableKeySet();
+        }
+
+        @Override
+        public Comparator<? super K> comparator() {
+            return descending ? Collections.reverseOrder() : null;
+        }
+
+        @Override
+        public Map.Entry<K, V> firstEntry() {
+            return descending ? absHighest() : absLowest();
+        }
+
+        @Override
+        public Map.Entry<K, V> lastEntry() {
+            return descending ? absLowest() : absHighest();
+        }
+
+        @Override
+        public K firstKey() {
+            return keyOf(firstEntry());
+        }
+
+        @Override
+        public K lastKey() {
+            return keyOf(lastEntry());
+        }
+
+        @Override
+        public Map.Entry<K, V> pollFirstEntry() {
+            while (true) {
+                Map.Entry<K, V> entry = firstEntry();
+                if (entry == null || ConcurrentAVLTreeMap.this.remove(entry.getKey(), entry.getValue())) {
+                    return entry;
+                }
+            }
+        }
+
+        @Override
+        public Map.Entry<K, V> pollLastEntry() {
+            while (true) {
+                Map.Entry<K, V> entry = lastEntry();
+                if (entry == null || ConcurrentAVLTreeMap.this.remove(entry.getKey(), entry.getValue())) {
+                    return entry;
+                }
+            }
+        }
+
+        @Override
+        public Map.Entry<K, V> lowerEntry(K key) {
+            return near(key, false, false);
+        }
+
+        @Override
+        public K lowerKey(K key) {
+            return keyOrNull(lowerEntry(key));
+        }
+
+        @Override
+        public Map.Entry<K, V> floorEntry(K key) {
+            return near(key, false, true);
+        }
+
+        @Override
+        public K floorKey(K key) {
+            return keyOrNull(floorEntry(key));
+        }
+
+        @Override
+        public Map.Entry<K, V> ceilingEntry(K key) {
+            return near(key, true, true);
+        }
+
+        @Override
+        public K ceilingKey(K key) {
+            return keyOrNull(ceilingEntry(key));
+        }
+
+        @Override
+        public Map.Entry<K, V> higherEntry(K key) {
+            return near(key, true, false);
+        }
+
+        @Override
+        public K higherKey(K key) {
+            return keyOrNull(higherEntry(key));
+        }
+
+        @Override
+        public ConcurrentNavigableMap<K, V> descendingMap() {
+            return new SubMap(fromStart, lo, loInclusive, toEnd, hi, hiInclusive, !descending);
+        }
+
+        @Override
+        public ConcurrentNavigableMap<K, V> subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+            if (!inRange(fromKey, fromInclusive)) {
+                throw new IllegalArgumentException("fromKey out of range");
+            }
+            if (!inRange(toKey, toInclusive)) {
+                throw new IllegalArgumentException("toKey out of range");
+            }
+            int cmp = fromKey.compareTo(toKey);
+            if (descending ? cmp < 0 : cmp > 0) {
+                throw new IllegalArgumentException("fromKey > toKey");
+            }
+            return descending
+                    ? new SubMap(false, toKey, toInclusive, false, fromKey, fromInclusive, true)
+                    : new SubMap(false, fromKey, fromInclusive, false, toKey, toInclusive, false);
+        }
+
+        @Override
+        public ConcurrentNavigableMap<K, V> headMap(K toKey, boolean inclusive) {
+            if (!inRange(comparable(toKey), inclusive)) {
+                throw new IllegalArgumentException("toKey out of range");
+            }
+            return descending
+                    ? new SubMap(false, toKey, inclusive, toEnd, hi, hiInclusive, true)
+                    : new SubMap(fromStart, lo, loInclusive, false, toKey, inclusive, false);
+        }
+
+        @Override
+        public ConcurrentNavigableMap<K, V> tailMap(K fromKey, boolean inclusive) {
+            if (!inRange(comparable(fromKey), inclusive)) {
+                throw new IllegalArgumentException("fromKey out of range");
+            }
+            return descending
+                    ? new SubMap(fromStart, lo, loInclusive, false, fromKey, inclusive, true)
+                    : new SubMap(false, fromKey, inclusive, toEnd, hi, hiInclusive, false);
+        }
+
+        @Override
+        public ConcurrentNavigableMap<K, V> subMap(K fromKey, K toKey) {
+            return subMap(fromKey, true, toKey, false);
+        }
+
+        @Override
+        public ConcurrentNavigableMap<K, V> headMap(K toKey) {
+            return headMap(toKey, false);
+        }
+
+        @Override
+        public ConcurrentNavigableMap<K, V> tailMap(K fromKey) {
+            return tailMap(fromKey, true);
+        }
+    }
+}
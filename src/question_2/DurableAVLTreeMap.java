@@ -0,0 +1,741 @@
+package question_2;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * A sorted map kept in an {@link AVLTreeMap} and made durable in a directory, so that it can be
+ * recovered after a restart or crash without rebuilding it from elsewhere. The directory holds:
+ * <ul>
+ *   <li>a write-ahead log, {@code wal-N.log}, to which every update is appended before it
+ *       returns, as a length-prefixed record with a CRC32 checksum;</li>
+ *   <li>snapshots, {@code snapshot-N.dat}, each holding every mapping in ascending key order,
+ *       written to a temporary file and renamed into place once complete.</li>
+ * </ul>
+ *
+ * <p>A checkpoint starts log segment N, writes the map as it was at that moment to snapshot N,
+ * and then deletes the older snapshot and log segments. Recovery loads the newest snapshot
+ * through {@link AVLTreeMap#putAllSorted(Object[], Object[])}, which builds the tree in O(n)
+ * time, and replays every log segment from that snapshot's number on. A record torn by a crash
+ * at the end of the last segment that holds any records is discarded.
+ *
+ * <p>With {@link Durability#GROUP_COMMIT} an update returns only once its record has been forced
+ * to disk, and updates from concurrent threads share one {@code fsync}: the first thread to
+ * wait forces everything appended so far, while the others wait for it. With
+ * {@link Durability#BATCHED}, updates return once their records are buffered, and the log is
+ * forced by {@link #sync()}, {@link #checkpoint()} and {@link #close()}.
+ *
+ * <p>Reads and updates are synchronized on the map. The collection and sub-map views are
+ * read-only views of the underlying tree; they must not be iterated while another thread
+ * updates the map. Keys and values are written by pluggable {@link Codec}s and may not be null.
+ * @param <K> the type of keys in this map
+ * @param <V> the type of values in this map
+ */
+public class DurableAVLTreeMap<K extends Comparable<K>, V> extends AbstractMap<K, V>
+        implements SortedMap<K, V>, Closeable {
+
+    /**
+     * Writes values of one type to the log and snapshots, and reads them back.
+     * @param <T> the type of value this codec handles
+     */
+    public interface Codec<T> {
+        /**
+         * Writes a value.
+         * @param value the value to write, which is never null
+         * @param out the output to write to
+         * @throws IOException if the output cannot be written
+         */
+        void write(T value, DataOutput out) throws IOException;
+
+        /**
+         * Reads a value written by {@link #write}.
+         * @param in the input to read from
+         * @return the value read
+         * @throws IOException if the input cannot be read
+         */
+        T read(DataInput in) throws IOException;
+
+        /**
+         * A codec for integers, as four big-endian bytes.
+         */
+        Codec<Integer> INTEGER = new Codec<Integer>() {
+            @Override
+            public void write(Integer value, DataOutput out) throws IOException {
+                out.writeInt(value);
+            }
+
+            @Override
+            public Integer read(DataInput in) throws IOException {
+                return in.readInt();
+            }
+        };
+
+        /**
+         * A codec for longs, as eight big-endian bytes.
+         */
+        Codec<Long> LONG = new Codec<Long>() {
+            @Override
+            public void write(Long value, DataOutput out) throws IOException {
+                out.writeLong(value);
+            }
+
+            @Override
+            public Long read(DataInput in) throws IOException {
+                return in.readLong();
+            }
+        };
+
+        /**
+         * A codec for strings of any length, as a byte count followed by UTF-8 bytes.
+         */
+        Codec<String> STRING = new Codec<String>() {
+            @Override
+            public void write(String value, DataOutput out) throws IOException {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+
+            @Override
+            public String read(DataInput in) throws IOException {
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+        };
+    }
+
+    /**
+     * When updates are forced to disk.
+     */
+    public enum Durability {
+        /**
+         * Every update waits until its record is on disk; concurrent updates share one fsync.
+         */
+        GROUP_COMMIT,
+        /**
+         * Updates are buffered and forced by sync, checkpoint and close.
+         */
+        BATCHED
+    }
+
+    private static final int SNAPSHOT_MAGIC = 0x41564c53;
+    private static final int SNAPSHOT_VERSION = 1;
+    private static final byte OP_PUT = 1;
+    private static final byte OP_REMOVE = 2;
+    private static final byte OP_CLEAR = 3;
+    private static final int LOG_BUFFER_BYTES = 1 << 16;
+    private static final long DEFAULT_CHECKPOINT_INTERVAL = 1_000_000;
+
+    private final AVLTreeMap<K, V> map = new AVLTreeMap<>();
+    private final Path directory;
+    private final Codec<K> keyCodec;
+    private final Codec<V> valueCodec;
+    private final Durability durability;
+    private final long checkpointInterval;
+
+    // The current log segment and its buffer, guarded by this map's lock
+    private long segment;
+    private FileChannel log;
+    private final ByteBuffer logBuffer = ByteBuffer.allocate(LOG_BUFFER_BYTES);
+    private final ByteArrayOutputStream recordBytes = new ByteArrayOutputStream();
+    private final DataOutputStream record = new DataOutputStream(recordBytes);
+    private final CRC32 crc = new CRC32();
+    private long appended;
+    private volatile long recordsSinceCheckpoint;
+    private boolean closed;
+
+    // Group commit state, guarded by syncLock
+    private final Object syncLock = new Object();
+    private long synced;
+    private boolean syncing;
+
+    private final ReentrantLock checkpointLock = new ReentrantLock();
+
+    /**
+     * Opens or creates a durable map in a directory, using group commit and checkpointing after
+     * every million updates.
+     * @param directory the directory holding the map's log and snapshots
+     * @param keyCodec the codec for keys
+     * @param valueCodec the codec for values
+     * @throws IOException if the directory cannot be read or the map cannot be recovered
+     */
+    public DurableAVLTreeMap(Path directory, Codec<K> keyCodec, Codec<V> valueCodec) throws IOException {
+        this(directory, keyCodec, valueCodec, Durability.GROUP_COMMIT, DEFAULT_CHECKPOINT_INTERVAL);
+    }
+
+    /**
+     * Opens or creates a durable map in a directory, recovering any mappings stored there.
+     * @param directory the directory holding the map's log and snapshots
+     * @param keyCodec the codec for keys
+     * @param valueCodec the codec for values
+     * @param durability when updates are forced to disk
+     * @param checkpointInterval the number of updates after which a checkpoint is taken
+     *                           automatically, or 0 to checkpoint only when asked
+     * @throws IOException if the directory cannot be read or the map cannot be recovered
+     */
+    public DurableAVLTreeMap(Path directory, Codec<K> keyCodec, Codec<V> valueCodec, Durability durability,
+            long checkpointInterval) throws IOException {
+        if (checkpointInterval < 0) {
+            throw new IllegalArgumentException("checkpointInterval must not be negative");
+        }
+        this.directory = directory;
+        this.keyCodec = Objects.requireNonNull(keyCodec);
+        this.valueCodec = Objects.requireNonNull(valueCodec);
+        this.durability = Objects.requireNonNull(durability);
+        this.checkpointInterval = checkpointInterval;
+        Files.createDirectories(directory);
+        recover();
+    }
+
+    // ----- recovery -----
+
+    private Path snapshotPath(long n) {
+        return directory.resolve(String.format("snapshot-%016d.dat", n));
+    }
+
+    private Path logPath(long n) {
+        return directory.resolve(String.format("wal-%016d.log", n));
+    }
+
+    // Returns the numbers of the files in the directory with the given prefix and suffix, in ascending order
+    private long[] numbered(String prefix, String suffix) throws IOException {
+        List<Long> numbers = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, prefix + "*" + suffix)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                String digits = name.substring(prefix.length(), name.length() - suffix.length());
+                try {
+                    numbers.add(Long.parseLong(digits));
+                } catch (NumberFormatException e) {
+                    // not one of ours
+                }
+            }
+        }
+        long[] result = new long[numbers.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = numbers.get(i);
+        }
+        Arrays.sort(result);
+        return result;
+    }
+
+    private void recover() throws IOException {
+        long[] snapshots = numbered("snapshot-", ".dat");
+        long base = 0;
+        if (snapshots.length > 0) {
+            base = snapshots[snapshots.length - 1];
+            readSnapshot(snapshotPath(base));
+        }
+        long[] logs = numbered("wal-", ".log");
+        // Segments after the last non-empty one were created but never written to
+        int lastWritten = logs.length - 1;
+        while (lastWritten > 0 && Files.size(logPath(logs[lastWritten])) == 0) {
+            lastWritten--;
+        }
+        segment = base;
+        for (int i = 0; i < logs.length; i++) {
+            if (logs[i] < base) {
+                continue;
+            }
+            replay(logPath(logs[i]), i >= lastWritten);
+            segment = logs[i];
+        }
+        log = FileChannel.open(logPath(segment), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        forceDirectory();
+    }
+
+    private void readSnapshot(Path file) throws IOException {
+        CRC32 checksum = new CRC32();
+        try (CheckedInputStream checked = new CheckedInputStream(
+                new BufferedInputStream(Files.newInputStream(file), LOG_BUFFER_BYTES), checksum)) {
+            DataInputStream in = new DataInputStream(checked);
+            if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION) {
+                throw new IOException("Not a snapshot: " + file);
+            }
+            int count = in.readInt();
+            @SuppressWarnings("unchecked")
+            K[] keys = (K[]) new Comparable[count];
+            @SuppressWarnings("unchecked")
+            V[] values = (V[]) new Object[count];
+            for (int i = 0; i < count; i++) {
+                keys[i] = keyCodec.read(in);
+                values[i] = valueCodec.read(in);
+            }
+            long expected = checksum.getValue();
+            if (in.readLong() != expected) {
+                throw new IOException("Snapshot checksum mismatch: " + file);
+            }
+            map.putAllSorted(keys, values);
+        }
+    }
+
+    /**
+     * Applies the records of a log segment to the map. A torn or corrupt record ends the replay;
+     * at the end of the last segment written to it is cut off, while anywhere else it is an error.
+     */
+    private void replay(Path file, boolean last) throws IOException {
+        long valid = 0;
+        boolean torn = false;
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(file), LOG_BUFFER_BYTES))) {
+            byte[] payload = new byte[64];
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                try {
+                    int checksum = in.readInt();
+                    if (length < 1) {
+                        torn = true;
+                        break;
+                    }
+                    if (payload.length < length) {
+                        payload = new byte[Math.max(length, payload.length * 2)];
+                    }
+                    in.readFully(payload, 0, length);
+                    crc.reset();
+                    crc.update(payload, 0, length);
+                    if ((int) crc.getValue() != checksum) {
+                        torn = true;
+                        break;
+                    }
+                } catch (EOFException e) {
+                    torn = true;
+                    break;
+                }
+                apply(new DataInputStream(new ByteArrayInputStream(payload, 0, length)));
+                valid += 8 + length;
+            }
+        }
+        if (torn) {
+            if (!last) {
+                throw new IOException("Corrupt record in " + file + " at offset " + valid);
+            }
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.truncate(valid);
+                channel.force(true);
+            }
+        }
+    }
+
+    private void apply(DataInput in) throws IOException {
+        byte op = in.readByte();
+        switch (op) {
+            case OP_PUT:
+                K key = keyCodec.read(in);
+                map.put(key, valueCodec.read(in));
+                break;
+            case OP_REMOVE:
+                map.remove(keyCodec.read(in));
+                break;
+            case OP_CLEAR:
+                map.clear();
+                break;
+            default:
+                throw new IOException("Unknown log record type " + op);
+        }
+    }
+
+    // ----- reads -----
+
+    @Override
+    public synchronized int size() {
+        return map.size();
+    }
+
+    @Override
+    public synchronized V get(Object key) {
+        return map.get(key);
+    }
+
+    @Override
+    public synchronized boolean containsKey(Object key) {
+        return map.containsKey(key);
+    }
+
+    @Override
+    public Comparator<? super K> comparator() {
+        return null;
+    }
+
+    @Override
+    public synchronized K firstKey() {
+        return map.firstKey();
+    }
+
+    @Override
+    public synchronized K lastKey() {
+        return map.lastKey();
+    }
+
+    /**
+     * Returns a read-only view of the mappings in ascending key order.
+     * @return a read-only set view of the mappings contained in this map
+     */
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        return Collections.unmodifiableSet(map.entrySet());
+    }
+
+    @Override
+    public SortedMap<K, V> subMap(K fromKey, K toKey) {
+        return Collections.unmodifiableSortedMap(map.subMap(fromKey, toKey));
+    }
+
+    @Override
+    public SortedMap<K, V> headMap(K toKey) {
+        return Collections.unmodifiableSortedMap(map.headMap(toKey));
+    }
+
+    @Override
+    public SortedMap<K, V> tailMap(K fromKey) {
+        return Collections.unmodifiableSortedMap(map.tailMap(fromKey));
+    }
+
+    // ----- updates -----
+
+    /**
+     * Associates the specified value with the specified key, logging the update first.
+     * @param key the key with which the specified value is to be associated
+     * @param value the value to be associated with the specified key
+     * @return the previous value associated with key, or null if there was no mapping for key
+     * @throws UncheckedIOException if the update cannot be logged
+     * @throws NullPointerException if the key or value is null
+     */
+    @Override
+    public V put(K key, V value) {
+        Objects.requireNonNull(key, "Key cannot be null");
+        Objects.requireNonNull(value, "Value cannot be null");
+        V previous;
+        long sequence;
+        synchronized (this) {
+            sequence = append(OP_PUT, key, value);
+            previous = map.put(key, value);
+        }
+        afterUpdate(sequence);
+        return previous;
+    }
+
+    /**
+     * Removes the mapping for a key if it is present, logging the removal first.
+     * @param key the key whose mapping is to be removed from the map
+     * @return the previous value associated with key, or null if there was no mapping for key
+     * @throws UncheckedIOException if the removal cannot be logged
+     */
+    @Override
+    public V remove(Object key) {
+        V previous;
+        long sequence;
+        synchronized (this) {
+            if (!map.containsKey(key)) {
+                return null;
+            }
+            @SuppressWarnings("unchecked")
+            K k = (K) key;
+            sequence = append(OP_REMOVE, k, null);
+            previous = map.remove(key);
+        }
+        afterUpdate(sequence);
+        return previous;
+    }
+
+    /**
+     * Copies all of the mappings from the specified map to this map, waiting for a single fsync.
+     * @param m the mappings to be stored in this map
+     * @throws UncheckedIOException if the updates cannot be logged
+     */
+    @Override
+    public void putAll(Map<? extends K, ? extends V> m) {
+        long sequence = 0;
+        synchronized (this) {
+            for (Map.Entry<? extends K, ? extends V> entry : m.entrySet()) {
+                K key = Objects.requireNonNull(entry.getKey(), "Key cannot be null");
+                V value = Objects.requireNonNull(entry.getValue(), "Value cannot be null");
+                sequence = append(OP_PUT, key, value);
+                map.put(key, value);
+            }
+        }
+        afterUpdate(sequence);
+    }
+
+    /**
+     * Removes all of the mappings from this map, logging a single record.
+     * @throws UncheckedIOException if the update cannot be logged
+     */
+    @Override
+    public void clear() {
+        long sequence;
+        synchronized (this) {
+            sequence = append(OP_CLEAR, null, null);
+            map.clear();
+        }
+        afterUpdate(sequence);
+    }
+
+    /**
+     * Encodes a record and appends it to the log buffer. Must hold this map's lock.
+     * @return the sequence number of the record
+     */
+    private long append(byte op, K key, V value) {
+        if (closed) {
+            throw new IllegalStateException("map is closed");
+        }
+        try {
+            recordBytes.reset();
+            record.writeByte(op);
+            if (key != null) {
+                keyCodec.write(key, record);
+            }
+            if (value != null) {
+                valueCodec.write(value, record);
+            }
+            int length = recordBytes.size();
+            byte[] payload = recordBytes.toByteArray();
+            crc.reset();
+            crc.update(payload, 0, length);
+            if (logBuffer.remaining() < 8 + length) {
+                flushBuffer();
+            }
+            if (logBuffer.remaining() < 8 + length) {
+                ByteBuffer large = ByteBuffer.allocate(8 + length);
+                large.putInt(length).putInt((int) crc.getValue()).put(payload, 0, length).flip();
+                writeFully(log, large);
+            } else {
+                logBuffer.putInt(length).putInt((int) crc.getValue()).put(payload, 0, length);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        recordsSinceCheckpoint++;
+        return ++appended;
+    }
+
+    private void flushBuffer() throws IOException {
+        logBuffer.flip();
+        writeFully(log, logBuffer);
+        logBuffer.clear();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    // Waits for the update to be durable if required, then checkpoints if one is due
+    private void afterUpdate(long sequence) {
+        try {
+            if (durability == Durability.GROUP_COMMIT) {
+                awaitSynced(sequence);
+            }
+            if (checkpointInterval > 0 && recordsSinceCheckpoint >= checkpointInterval && checkpointLock.tryLock()) {
+                try {
+                    if (recordsSinceCheckpoint >= checkpointInterval) {
+                        checkpointLocked();
+                    }
+                } finally {
+                    checkpointLock.unlock();
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Waits until every record up to the given sequence number is on disk. The first thread to
+     * find no fsync in progress forces the log for every record appended so far; threads arriving
+     * meanwhile wait and are covered by the next one.
+     */
+    private void awaitSynced(long sequence) throws IOException {
+        synchronized (syncLock) {
+            while (synced < sequence && syncing) {
+                try {
+                    syncLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("interrupted waiting for the log to sync");
+                }
+            }
+            if (synced >= sequence) {
+                return;
+            }
+            syncing = true;
+        }
+        long target = 0;
+        boolean done = false;
+        try {
+            FileChannel channel;
+            synchronized (this) {
+                flushBuffer();
+                target = appended;
+                channel = log;
+            }
+            try {
+                channel.force(false);
+            } catch (ClosedChannelException e) {
+                // A checkpoint forced and closed this segment after our records were written
+            }
+            done = true;
+        } finally {
+            synchronized (syncLock) {
+                syncing = false;
+                if (done) {
+                    synced = Math.max(synced, target);
+                }
+                syncLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Forces every update made so far to disk.
+     * @throws IOException if the log cannot be written
+     */
+    public void sync() throws IOException {
+        long sequence;
+        synchronized (this) {
+            sequence = appended;
+        }
+        awaitSynced(sequence);
+    }
+
+    /**
+     * Writes a snapshot of the map and deletes the log segments and snapshot it replaces, so
+     * that recovery only has to load the snapshot and replay what follows it. Updates are held up
+     * only while the mappings are copied; the snapshot is written while they continue.
+     * @throws IOException if the snapshot cannot be written
+     */
+    public void checkpoint() throws IOException {
+        checkpointLock.lock();
+        try {
+            checkpointLocked();
+        } finally {
+            checkpointLock.unlock();
+        }
+    }
+
+    private void checkpointLocked() throws IOException {
+        FileChannel previousLog;
+        long previousAppended;
+        long next;
+        K[] keys;
+        V[] values;
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("map is closed");
+            }
+            // Force the old segment before the new one exists, so that a segment followed by
+            // another is always complete on disk. Then start the new segment: everything after
+            // this point goes to it
+            flushBuffer();
+            log.force(false);
+            previousLog = log;
+            previousAppended = appended;
+            next = segment + 1;
+            log = FileChannel.open(logPath(next), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND);
+            // Make the new segment's directory entry durable while the lock is held, before any
+            // update appended to it can be acknowledged
+            forceDirectory();
+            segment = next;
+            recordsSinceCheckpoint = 0;
+            @SuppressWarnings("unchecked")
+            K[] k = (K[]) new Comparable[map.size()];
+            @SuppressWarnings("unchecked")
+            V[] v = (V[]) new Object[map.size()];
+            int i = 0;
+            for (Map.Entry<K, V> entry : map.entrySet()) {
+                k[i] = entry.getKey();
+                v[i++] = entry.getValue();
+            }
+            keys = k;
+            values = v;
+        }
+        previousLog.close();
+        synchronized (syncLock) {
+            synced = Math.max(synced, previousAppended);
+            syncLock.notifyAll();
+        }
+        writeSnapshot(next, keys, values);
+        for (long n : numbered("snapshot-", ".dat")) {
+            if (n < next) {
+                Files.deleteIfExists(snapshotPath(n));
+            }
+        }
+        for (long n : numbered("wal-", ".log")) {
+            if (n < next) {
+                Files.deleteIfExists(logPath(n));
+            }
+        }
+    }
+
+    private void writeSnapshot(long n, K[] keys, V[] values) throws IOException {
+        Path temporary = directory.resolve(snapshotPath(n).getFileName() + ".tmp");
+        CRC32 checksum = new CRC32();
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            CheckedOutputStream checked = new CheckedOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(channel), LOG_BUFFER_BYTES), checksum);
+            DataOutputStream out = new DataOutputStream(checked);
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeInt(keys.length);
+            for (int i = 0; i < keys.length; i++) {
+                keyCodec.write(keys[i], out);
+                valueCodec.write(values[i], out);
+            }
+            out.writeLong(checksum.getValue());
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(temporary, snapshotPath(n), StandardCopyOption.ATOMIC_MOVE);
+        forceDirectory();
+    }
+
+    // Makes file creations, renames and deletions in the directory durable where the platform allows it
+    private void forceDirectory() {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Some platforms cannot open or force a directory
+        }
+    }
+
+    /**
+     * Forces the log to disk and closes it. The map cannot be updated afterwards.
+     * @throws IOException if the log cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        checkpointLock.lock();
+        try {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                flushBuffer();
+                log.force(false);
+                log.close();
+                closed = true;
+            }
+        } finally {
+            checkpointLock.unlock();
+        }
+    }
+}
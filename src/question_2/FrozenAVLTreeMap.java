@@ -0,0 +1,188 @@
+package question_2;
+
+import common.EytzingerKeys;
+import java.util.*;
+
+/**
+ * An immutable sorted map made by {@link AVLTreeMap#freeze()}, for lookup tables that are built
+ * once and then only read. The keys are held in an {@link EytzingerKeys}, which searches them
+ * without following node pointers, and the values are in a second array in the same order.
+ *
+ * <p>The map uses 8 bytes per entry for its two arrays, and 8 more for integer keys, plus the
+ * keys and values themselves. It supports the Map interface, with every update throwing
+ * UnsupportedOperationException, and the navigation methods below. {@link #thaw()} turns it
+ * back into an AVLTreeMap in O(n) time.
+ * @param <K> the type of keys in this map
+ * @param <V> the type of values in this map
+ */
+public class FrozenAVLTreeMap<K extends Comparable<K>, V> extends AbstractMap<K, V> {
+
+    private final EytzingerKeys<K> keys;
+    // The value of the key in each slot of keys
+    private final Object[] values;
+    private Set<Map.Entry<K, V>> entrySet;
+
+    /**
+     * Packs entries given in ascending key order into Eytzinger order.
+     * @param sortedKeys the keys in strictly ascending order
+     * @param sortedValues the values of the keys
+     * @param size the number of entries
+     */
+    FrozenAVLTreeMap(Object[] sortedKeys, Object[] sortedValues, int size) {
+        this.keys = new EytzingerKeys<>(sortedKeys, size);
+        this.values = EytzingerKeys.layout(sortedValues, size);
+    }
+
+    private K key(int slot) {
+        return keys.key(slot);
+    }
+
+    @SuppressWarnings("unchecked")
+    private V value(int slot) {
+        return (V) values[slot];
+    }
+
+    // Returns the slot holding the key, or 0
+    @SuppressWarnings("unchecked")
+    private int findSlot(Object key) {
+        return keys.find((K) key);
+    }
+
+    @Override
+    public int size() {
+        return keys.size();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return findSlot(key) != 0;
+    }
+
+    @Override
+    public V get(Object key) {
+        int slot = findSlot(key);
+        return slot == 0 ? null : value(slot);
+    }
+
+    /**
+     * Returns the first (lowest) key in this map.
+     * @return the first key
+     * @throws NoSuchElementException if this map is empty
+     */
+    public K firstKey() {
+        if (keys.size() == 0) {
+            throw new NoSuchElementException();
+        }
+        return key(keys.first());
+    }
+
+    /**
+     * Returns the last (highest) key in this map.
+     * @return the last key
+     * @throws NoSuchElementException if this map is empty
+     */
+    public K lastKey() {
+        if (keys.size() == 0) {
+            throw new NoSuchElementException();
+        }
+        return key(keys.last());
+    }
+
+    /**
+     * Returns the greatest key less than or equal to the given key.
+     * @param key the key to search at or below
+     * @return the key found, or null if there is none
+     */
+    public K floorKey(K key) {
+        int slot = keys.floorSlot(key);
+        return slot == 0 ? null : key(slot);
+    }
+
+    /**
+     * Returns the least key greater than or equal to the given key.
+     * @param key the key to search at or above
+     * @return the key found, or null if there is none
+     */
+    public K ceilingKey(K key) {
+        int slot = keys.ceilingSlot(key);
+        return slot == 0 ? null : key(slot);
+    }
+
+    /**
+     * Returns the entry with the greatest key less than or equal to the given key.
+     * @param key the key to search at or below
+     * @return the entry found, or null if there is none
+     */
+    public Map.Entry<K, V> floorEntry(K key) {
+        return entry(keys.floorSlot(key));
+    }
+
+    /**
+     * Returns the entry with the least key greater than or equal to the given key.
+     * @param key the key to search at or above
+     * @return the entry found, or null if there is none
+     */
+    public Map.Entry<K, V> ceilingEntry(K key) {
+        return entry(keys.ceilingSlot(key));
+    }
+
+    private Map.Entry<K, V> entry(int slot) {
+        return slot == 0 ? null : new SimpleImmutableEntry<>(key(slot), value(slot));
+    }
+
+    /**
+     * Returns a new AVLTreeMap holding the entries of this map, built in O(n) time.
+     * @return a mutable copy of this map
+     */
+    public AVLTreeMap<K, V> thaw() {
+        @SuppressWarnings("unchecked")
+        K[] sortedKeys = (K[]) new Comparable[keys.size()];
+        @SuppressWarnings("unchecked")
+        V[] sortedValues = (V[]) new Object[keys.size()];
+        int i = 0;
+        for (int slot = keys.first(); slot != 0; slot = keys.next(slot)) {
+            sortedKeys[i] = key(slot);
+            sortedValues[i++] = value(slot);
+        }
+        AVLTreeMap<K, V> map = new AVLTreeMap<>();
+        map.putAllSorted(sortedKeys, sortedValues);
+        return map;
+    }
+
+    /**
+     * Returns a read-only set view of the mappings, in ascending key order.
+     * @return a set view of the mappings contained in this map
+     */
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        Set<Map.Entry<K, V>> view = entrySet;
+        return view != null ? view : (entrySet = new AbstractSet<Map.Entry<K, V>>() {
+            @Override
+            public Iterator<Map.Entry<K, V>> iterator() {
+                return new Iterator<Map.Entry<K, V>>() {
+                    private int slot = keys.first();
+
+                    @Override
+                    public boolean hasNext() {
+                        return slot != 0;
+                    }
+
+                    @Override
+                    public Map.Entry<K, V> next() {
+                        if (slot == 0) {
+                            throw new NoSuchElementException();
+                        }
+                        Map.Entry<K, V> entry = entry(slot);
+                        slot = keys.next(slot);
+                        return entry;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return keys.size();
+            }
+        });
+    }
+}
@@ -0,0 +1,317 @@
+package question_2;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * A sorted map from long keys to values, stored as an AVL tree in parallel arrays. Keys are kept
+ * unboxed in a long array and compared with {@code <}, and nodes are indices rather than
+ * objects, so an entry costs about 21 bytes plus its value instead of a node object and a boxed
+ * key, and lookups touch no objects but the value they return.
+ * @param <V> the type of values in this map
+ */
+public class LongAVLTreeMap<V> extends ArrayAVLTree {
+
+    /**
+     * Receives the entries of a map in key order.
+     * @param <V> the type of values in the map
+     */
+    @FunctionalInterface
+    public interface EntryConsumer<V> {
+        /**
+         * Accepts one entry.
+         * @param key the key of the entry
+         * @param value the value of the entry
+         */
+        void accept(long key, V value);
+    }
+
+    private long[] keys;
+    private Object[] values;
+
+    /**
+     * Constructs an empty LongAVLTreeMap.
+     */
+    public LongAVLTreeMap() {
+        this(16);
+    }
+
+    /**
+     * Constructs an empty LongAVLTreeMap with room for the given number of entries.
+     * @param initialCapacity the number of entries to make room for
+     */
+    public LongAVLTreeMap(int initialCapacity) {
+        super(initialCapacity);
+        keys = new long[left.length];
+        values = new Object[left.length];
+    }
+
+    @Override
+    void resize(int capacity) {
+        keys = Arrays.copyOf(keys, capacity);
+        values = Arrays.copyOf(values, capacity);
+    }
+
+    @Override
+    void relocate(int[] order, int capacity) {
+        long[] newKeys = new long[capacity];
+        Object[] newValues = new Object[capacity];
+        for (int i = 1; i < capacity; i++) {
+            newKeys[i] = keys[order[i]];
+            newValues[i] = values[order[i]];
+        }
+        keys = newKeys;
+        values = newValues;
+    }
+
+    @Override
+    void clearSlot(int node) {
+        values[node] = null;
+    }
+
+    @Override
+    int compareNodes(int a, int b) {
+        return Long.compare(keys[a], keys[b]);
+    }
+
+    // Returns the node holding the key, or NIL
+    private int find(long key) {
+        int node = root;
+        while (node != NIL) {
+            long k = keys[node];
+            if (key == k) {
+                return node;
+            }
+            node = key < k ? left[node] : right[node];
+        }
+        return NIL;
+    }
+
+    @SuppressWarnings("unchecked")
+    private V value(int node) {
+        return (V) values[node];
+    }
+
+    /**
+     * Returns true if this map contains a mapping for the specified key.
+     * @param key the key to look for
+     * @return true if this map contains a mapping for the key
+     */
+    public boolean containsKey(long key) {
+        return find(key) != NIL;
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped, or null if this map contains no mapping for the key.
+     * @param key the key whose associated value is to be returned
+     * @return the value to which the specified key is mapped, or null if this map contains no mapping for the key
+     */
+    public V get(long key) {
+        int node = find(key);
+        return node == NIL ? null : value(node);
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped, or a default if there is none.
+     * @param key the key whose associated value is to be returned
+     * @param defaultValue the value to return if the key is absent
+     * @return the value mapped to the key, or the default
+     */
+    public V getOrDefault(long key, V defaultValue) {
+        int node = find(key);
+        return node == NIL ? defaultValue : value(node);
+    }
+
+    /**
+     * Associates the specified value with the specified key in this map.
+     * If the map previously contained a mapping for the key, the old value is replaced.
+     * @param key the key with which the specified value is to be associated
+     * @param value the value to be associated with the specified key
+     * @return the previous value associated with key, or null if there was no mapping for key
+     */
+    public V put(long key, V value) {
+        int[] path = this.path;
+        int depth = 0;
+        int node = root;
+        boolean asLeft = false;
+        while (node != NIL) {
+            long k = keys[node];
+            if (key == k) {
+                V oldValue = value(node);
+                values[node] = value;
+                return oldValue;
+            }
+            path[depth++] = node;
+            asLeft = key < k;
+            node = asLeft ? left[node] : right[node];
+        }
+        int leaf = allocate();
+        keys[leaf] = key;
+        values[leaf] = value;
+        linkLeaf(depth, leaf, asLeft);
+        return null;
+    }
+
+    /**
+     * Removes the mapping for a key from this map if it is present.
+     * @param key the key whose mapping is to be removed from the map
+     * @return the previous value associated with key, or null if there was no mapping for key
+     */
+    public V remove(long key) {
+        int[] path = this.path;
+        int depth = 0;
+        int node = root;
+        while (node != NIL) {
+            long k = keys[node];
+            path[depth++] = node;
+            if (key == k) {
+                V oldValue = value(node);
+                unlink(depth);
+                return oldValue;
+            }
+            node = key < k ? left[node] : right[node];
+        }
+        return null;
+    }
+
+    /**
+     * Returns the first (lowest) key currently in this map.
+     * @return the first key
+     * @throws NoSuchElementException if this map is empty
+     */
+    public long firstKey() {
+        return keyOf(firstNode());
+    }
+
+    /**
+     * Returns the last (highest) key currently in this map.
+     * @return the last key
+     * @throws NoSuchElementException if this map is empty
+     */
+    public long lastKey() {
+        return keyOf(lastNode());
+    }
+
+    private long keyOf(int node) {
+        if (node == NIL) {
+            throw new NoSuchElementException();
+        }
+        return keys[node];
+    }
+
+    /**
+     * Returns the greatest key strictly less than the given key.
+     * @param key the key to search below
+     * @param absent the key to return if there is none
+     * @return the key found, or {@code absent}
+     */
+    public long lowerKey(long key, long absent) {
+        int node = nearNode(key, false, false);
+        return node == NIL ? absent : keys[node];
+    }
+
+    /**
+     * Returns the greatest key less than or equal to the given key.
+     * @param key the key to search at or below
+     * @param absent the key to return if there is none
+     * @return the key found, or {@code absent}
+     */
+    public long floorKey(long key, long absent) {
+        int node = nearNode(key, false, true);
+        return node == NIL ? absent : keys[node];
+    }
+
+    /**
+     * Returns the least key greater than or equal to the given key.
+     * @param key the key to search at or above
+     * @param absent the key to return if there is none
+     * @return the key found, or {@code absent}
+     */
+    public long ceilingKey(long key, long absent) {
+        int node = nearNode(key, true, true);
+        return node == NIL ? absent : keys[node];
+    }
+
+    /**
+     * Returns the least key strictly greater than the given key.
+     * @param key the key to search above
+     * @param absent the key to return if there is none
+     * @return the key found, or {@code absent}
+     */
+    public long higherKey(long key, long absent) {
+        int node = nearNode(key, true, false);
+        return node == NIL ? absent : keys[node];
+    }
+
+    // Returns the node whose key is closest to the given key in one direction, or NIL
+    private int nearNode(long key, boolean above, boolean inclusive) {
+        int best = NIL;
+        int node = root;
+        while (node != NIL) {
+            long k = keys[node];
+            if (key == k && inclusive) {
+                return node;
+            }
+            if (above ? key < k : key > k) {
+                best = node;
+                node = above ? left[node] : right[node];
+            } else {
+                node = above ? right[node] : left[node];
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns the keys of this map in ascending order.
+     * @return a new array holding every key
+     */
+    public long[] keys() {
+        long[] result = new long[size];
+        int i = 0;
+        for (PrimitiveIterator.OfLong it = keyIterator(); it.hasNext(); ) {
+            result[i++] = it.nextLong();
+        }
+        return result;
+    }
+
+    /**
+     * Returns an iterator over the keys of this map in ascending order. Its {@code remove}
+     * method removes the last key returned from the map.
+     * @return an iterator over the keys
+     */
+    public PrimitiveIterator.OfLong keyIterator() {
+        class KeyIterator extends NodeIterator implements PrimitiveIterator.OfLong {
+            @Override
+            public long nextLong() {
+                return keys[nextNode()];
+            }
+        }
+        return new KeyIterator();
+    }
+
+    /**
+     * Passes every entry of this map to the consumer in ascending key order.
+     * @param action the consumer of the entries
+     */
+    public void forEach(EntryConsumer<? super V> action) {
+        NodeIterator it = new NodeIterator() { };
+        while (it.hasNext()) {
+            int node = it.nextNode();
+            action.accept(keys[node], value(node));
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("{");
+        forEach((key, value) -> {
+            if (builder.length() > 1) {
+                builder.append(", ");
+            }
+            builder.append(key).append('=').append(value);
+        });
+        return builder.append('}').toString();
+    }
+}
@@ -0,0 +1,870 @@
+package question_2;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * A sorted map on a persistent AVL tree. Nodes are never changed once a tree has been published:
+ * {@code put} and {@code remove} copy the O(log n) nodes on the path from the root and share
+ * every other node with the previous version, then publish the new root. As a result:
+ * <ul>
+ *   <li>{@link #snapshot()} is O(1) and returns a read-only map that never changes, however
+ *       this map is updated afterwards;</li>
+ *   <li>every read, including iteration, works on the root it started with, so readers on other
+ *       threads see a consistent version without locking, and iterators never throw
+ *       {@link ConcurrentModificationException};</li>
+ *   <li>updates are serialized on the map's lock, and {@link #apply(Consumer)} publishes a whole
+ *       batch of them at once.</li>
+ * </ul>
+ *
+ * <p>Batches run on a {@link Transient}, which copies a node the first time the batch touches it
+ * and updates its own copies in place from then on, so a batch of m updates allocates at most one
+ * node per node it touches rather than O(log n) nodes per update.
+ *
+ * <p>Keys are ordered by their natural ordering and may not be null. The sub-map views are backed
+ * by this map, so they see every later update; like the entry set, each of their iterators walks
+ * the version current when it was created. Take a {@link #snapshot()} first for a range that
+ * does not change.
+ * @param <K> the type of keys in this map
+ * @param <V> the type of values in this map
+ */
+public class PersistentAVLTreeMap<K extends Comparable<K>, V> extends AbstractMap<K, V> implements SortedMap<K, V> {
+    private static final class Node<K, V> {
+        /**
+         * The key of this node.
+         */
+        final K key;
+        /**
+         * The value associated with this key.
+         */
+        V value;
+        /**
+         * The height of the subtree rooted at this node.
+         */
+        int height;
+        /**
+         * The number of nodes in the subtree rooted at this node.
+         */
+        int size;
+        /**
+         * The left child of this node.
+         */
+        Node<K, V> left;
+        /**
+         * The right child of this node.
+         */
+        Node<K, V> right;
+        /**
+         * The token of the batch that created this node and may still change it in place.
+         */
+        final Object owner;
+
+        Node(K key, V value, Object owner) {
+            this.key = key;
+            this.value = value;
+            this.height = 1;
+            this.size = 1;
+            this.owner = owner;
+        }
+
+        Node(Node<K, V> node, Object owner) {
+            this.key = node.key;
+            this.value = node.value;
+            this.height = node.height;
+            this.size = node.size;
+            this.left = node.left;
+            this.right = node.right;
+            this.owner = owner;
+        }
+    }
+
+    /**
+     * The current version of the tree. Every tree reachable from here is immutable.
+     */
+    private volatile Node<K, V> root;
+    /**
+     * True for snapshots, which reject updates.
+     */
+    private final boolean readOnly;
+
+    /**
+     * Constructs an empty PersistentAVLTreeMap.
+     */
+    public PersistentAVLTreeMap() {
+        this(null, false);
+    }
+
+    /**
+     * Constructs a new PersistentAVLTreeMap containing the same mappings as the given map.
+     * @param map the map whose mappings are to be placed in this map
+     */
+    public PersistentAVLTreeMap(Map<? extends K, ? extends V> map) {
+        this(null, false);
+        putAll(map);
+    }
+
+    private PersistentAVLTreeMap(Node<K, V> root, boolean readOnly) {
+        this.root = root;
+        this.readOnly = readOnly;
+    }
+
+    /**
+     * Returns a read-only view of this map as it is now, in O(1) time. Later updates to this map
+     * are not visible in the snapshot, and the snapshot stays readable for as long as it is
+     * referenced.
+     * @return a read-only snapshot of this map
+     */
+    public PersistentAVLTreeMap<K, V> snapshot() {
+        return readOnly ? this : new PersistentAVLTreeMap<>(root, true);
+    }
+
+    /**
+     * Returns true if this map is a snapshot, which cannot be updated.
+     * @return true if this map is read-only
+     */
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    /**
+     * Returns a transient copy of this map for a batch of updates. The copy shares every node
+     * with this map until it first changes it, and changes to the copy are never visible here.
+     * @return a new transient holding the current mappings of this map
+     */
+    public Transient<K, V> asTransient() {
+        return new Transient<>(root);
+    }
+
+    /**
+     * Runs a batch of updates on a transient copy of this map and then publishes the result as
+     * the new version, so readers see either none of the batch or all of it. Other updates to
+     * this map wait until the batch is done.
+     * @param batch the updates to apply
+     * @throws UnsupportedOperationException if this map is a snapshot
+     */
+    public void apply(Consumer<? super Transient<K, V>> batch) {
+        checkWritable();
+        synchronized (this) {
+            Transient<K, V> editor = new Transient<>(root);
+            batch.accept(editor);
+            root = editor.finish();
+        }
+    }
+
+    private void checkWritable() {
+        if (readOnly) {
+            throw new UnsupportedOperationException("snapshot is read-only");
+        }
+    }
+
+    /**
+     * Returns the number of key-value mappings in this map.
+     * @return the number of key-value mappings in this map
+     */
+    @Override
+    public int size() {
+        return size(root);
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped, or null if this map contains no mapping for the key.
+     * @param key the key whose associated value is to be returned
+     * @return the value to which the specified key is mapped, or null if this map contains no mapping for the key
+     * @throws ClassCastException if the specified key cannot be compared with the keys currently in the map
+     * @throws NullPointerException if the specified key is null
+     */
+    @Override
+    public V get(Object key) {
+        Node<K, V> node = find(root, key);
+        return node == null ? null : node.value;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return find(root, key) != null;
+    }
+
+    /**
+     * Associates the specified value with the specified key, copying the path from the root to
+     * the key and publishing the result as the new version.
+     * @param key the key with which the specified value is to be associated
+     * @param value the value to be associated with the specified key
+     * @return the previous value associated with key, or null if there was no mapping for key
+     * @throws UnsupportedOperationException if this map is a snapshot
+     * @throws NullPointerException if the specified key is null
+     */
+    @Override
+    public V put(K key, V value) {
+        checkWritable();
+        synchronized (this) {
+            Transient<K, V> editor = new Transient<>(root);
+            V previous = editor.put(key, value);
+            root = editor.finish();
+            return previous;
+        }
+    }
+
+    /**
+     * Removes the mapping for a key from this map if it is present, copying the path from the
+     * root to the key and publishing the result as the new version.
+     * @param key the key whose mapping is to be removed from the map
+     * @return the previous value associated with key, or null if there was no mapping for key
+     * @throws UnsupportedOperationException if this map is a snapshot
+     */
+    @Override
+    public V remove(Object key) {
+        checkWritable();
+        synchronized (this) {
+            Transient<K, V> editor = new Transient<>(root);
+            V previous = editor.remove(key);
+            root = editor.finish();
+            return previous;
+        }
+    }
+
+    /**
+     * Copies all of the mappings from the specified map to this map as a single batch.
+     * @param map the mappings to be stored in this map
+     * @throws UnsupportedOperationException if this map is a snapshot
+     */
+    @Override
+    public void putAll(Map<? extends K, ? extends V> map) {
+        apply(editor -> {
+            for (Map.Entry<? extends K, ? extends V> entry : map.entrySet()) {
+                editor.put(entry.getKey(), entry.getValue());
+            }
+        });
+    }
+
+    /**
+     * Removes all of the mappings from this map. Snapshots taken earlier keep their mappings.
+     * @throws UnsupportedOperationException if this map is a snapshot
+     */
+    @Override
+    public void clear() {
+        checkWritable();
+        synchronized (this) {
+            root = null;
+        }
+    }
+
+    /**
+     * Returns a set view of the mappings in this map, in ascending key order. Each iterator
+     * walks the version of the map current when it was created.
+     * @return a set view of the mappings contained in this map
+     */
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        return new AbstractSet<Map.Entry<K, V>>() {
+            @Override
+            public Iterator<Map.Entry<K, V>> iterator() {
+                return new EntryIterator<>(root, null, true, null, true, readOnly ? null : PersistentAVLTreeMap.this);
+            }
+
+            @Override
+            public int size() {
+                return PersistentAVLTreeMap.this.size();
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                if (!(o instanceof Map.Entry)) {
+                    return false;
+                }
+                Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+                Node<K, V> node = find(root, entry.getKey());
+                return node != null && Objects.equals(node.value, entry.getValue());
+            }
+        };
+    }
+
+    @Override
+    public Comparator<? super K> comparator() {
+        return null;
+    }
+
+    /**
+     * Returns the first (lowest) key currently in this map.
+     * @return the first key
+     * @throws NoSuchElementException if this map is empty
+     */
+    @Override
+    public K firstKey() {
+        return key(nearNode(root, null, true, true));
+    }
+
+    /**
+     * Returns the last (highest) key currently in this map.
+     * @return the last key
+     * @throws NoSuchElementException if this map is empty
+     */
+    @Override
+    public K lastKey() {
+        return key(nearNode(root, null, false, true));
+    }
+
+    /**
+     * Returns the mapping with the greatest key strictly less than the given key.
+     * @param key the key to search below
+     * @return the mapping found, or null if there is none
+     */
+    public Map.Entry<K, V> lowerEntry(K key) {
+        return export(nearNode(root, Objects.requireNonNull(key), false, false));
+    }
+
+    /**
+     * Returns the mapping with the greatest key less than or equal to the given key.
+     * @param key the key to search at or below
+     * @return the mapping found, or null if there is none
+     */
+    public Map.Entry<K, V> floorEntry(K key) {
+        return export(nearNode(root, Objects.requireNonNull(key), false, true));
+    }
+
+    /**
+     * Returns the mapping with the least key greater than or equal to the given key.
+     * @param key the key to search at or above
+     * @return the mapping found, or null if there is none
+     */
+    public Map.Entry<K, V> ceilingEntry(K key) {
+        return export(nearNode(root, Objects.requireNonNull(key), true, true));
+    }
+
+    /**
+     * Returns the mapping with the least key strictly greater than the given key.
+     * @param key the key to search above
+     * @return the mapping found, or null if there is none
+     */
+    public Map.Entry<K, V> higherEntry(K key) {
+        return export(nearNode(root, Objects.requireNonNull(key), true, false));
+    }
+
+    @Override
+    public SortedMap<K, V> subMap(K fromKey, K toKey) {
+        if (fromKey.compareTo(toKey) > 0) {
+            throw new IllegalArgumentException("fromKey > toKey");
+        }
+        return new SubMap<>(this, fromKey, true, toKey, false);
+    }
+
+    @Override
+    public SortedMap<K, V> headMap(K toKey) {
+        return new SubMap<>(this, null, true, Objects.requireNonNull(toKey), false);
+    }
+
+    @Override
+    public SortedMap<K, V> tailMap(K fromKey) {
+        return new SubMap<>(this, Objects.requireNonNull(fromKey), true, null, true);
+    }
+
+    // ----- tree reads, shared by the map, its snapshots and sub-maps -----
+
+    private static int size(Node<?, ?> node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static int height(Node<?, ?> node) {
+        return node == null ? 0 : node.height;
+    }
+
+    private static <K extends Comparable<K>, V> Node<K, V> find(Node<K, V> node, Object key) {
+        if (key == null) {
+            throw new NullPointerException("Key cannot be null");
+        }
+        @SuppressWarnings("unchecked")
+        K k = (K) key;
+        while (node != null) {
+            int cmp = k.compareTo(node.key);
+            if (cmp == 0) {
+                return node;
+            }
+            node = cmp < 0 ? node.left : node.right;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the node whose key is closest to the given key in one direction.
+     * @param node the root of the tree to search
+     * @param key the key to search from, or null to find the first or last node
+     * @param above true to find the nearest key above, false to find the nearest key below
+     * @param inclusive true if a node holding the key itself qualifies
+     * @return the nearest qualifying node, or null if there is none
+     */
+    private static <K extends Comparable<K>, V> Node<K, V> nearNode(Node<K, V> node, K key, boolean above,
+            boolean inclusive) {
+        Node<K, V> best = null;
+        while (node != null) {
+            int cmp = key == null ? (above ? -1 : 1) : key.compareTo(node.key);
+            if (cmp == 0 && inclusive) {
+                return node;
+            }
+            if (above ? cmp < 0 : cmp > 0) {
+                best = node;
+                node = above ? node.left : node.right;
+            } else {
+                node = above ? node.right : node.left;
+            }
+        }
+        return best;
+    }
+
+    // Returns the number of keys below the given key, counting the key itself if inclusive
+    private static <K extends Comparable<K>> int countBelow(Node<K, ?> node, K key, boolean inclusive) {
+        int count = 0;
+        while (node != null) {
+            int cmp = key.compareTo(node.key);
+            if (cmp > 0 || cmp == 0 && inclusive) {
+                count += size(node.left) + 1;
+                node = node.right;
+            } else {
+                node = node.left;
+            }
+        }
+        return count;
+    }
+
+    private static <K, V> Map.Entry<K, V> export(Node<K, V> node) {
+        return node == null ? null : new AbstractMap.SimpleImmutableEntry<>(node.key, node.value);
+    }
+
+    private static <K> K key(Node<K, ?> node) {
+        if (node == null) {
+            throw new NoSuchElementException();
+        }
+        return node.key;
+    }
+
+    /**
+     * A mutable copy of a map for a batch of updates, obtained from {@link #asTransient()} or
+     * passed to {@link #apply(Consumer)}. A transient copies each node the first time it changes
+     * it and marks the copy with its own token, so later updates in the batch change that copy in
+     * place. Once {@link #persistent()} is called the transient can no longer be used, which is
+     * what makes its nodes safe to share.
+     *
+     * <p>A transient is not thread-safe and should be confined to one thread.
+     * @param <K> the type of keys in the map
+     * @param <V> the type of values in the map
+     */
+    public static final class Transient<K extends Comparable<K>, V> {
+        private Node<K, V> root;
+        /**
+         * The token marking nodes this transient may change in place, or null once it is finished.
+         */
+        private Object owner = new Object();
+        // Results of the last update, set by the recursive helpers
+        private V previous;
+        private boolean found;
+        private Node<K, V> removedMin;
+
+        private Transient(Node<K, V> root) {
+            this.root = root;
+        }
+
+        /**
+         * Returns the number of key-value mappings in the transient.
+         * @return the number of key-value mappings
+         */
+        public int size() {
+            checkOwner();
+            return PersistentAVLTreeMap.size(root);
+        }
+
+        /**
+         * Returns the value to which the specified key is mapped, or null if there is none.
+         * @param key the key whose associated value is to be returned
+         * @return the value to which the specified key is mapped, or null if there is none
+         */
+        public V get(Object key) {
+            checkOwner();
+            Node<K, V> node = find(root, key);
+            return node == null ? null : node.value;
+        }
+
+        /**
+         * Associates the specified value with the specified key.
+         * @param key the key with which the specified value is to be associated
+         * @param value the value to be associated with the specified key
+         * @return the previous value associated with key, or null if there was no mapping for key
+         * @throws NullPointerException if the specified key is null
+         */
+        public V put(K key, V value) {
+            checkOwner();
+            if (key == null) {
+                throw new NullPointerException("Key cannot be null");
+            }
+            previous = null;
+            found = false;
+            root = put(root, key, value);
+            return previous;
+        }
+
+        /**
+         * Removes the mapping for a key if it is present.
+         * @param key the key whose mapping is to be removed
+         * @return the previous value associated with key, or null if there was no mapping for key
+         */
+        public V remove(Object key) {
+            checkOwner();
+            if (key == null) {
+                throw new NullPointerException("Key cannot be null");
+            }
+            @SuppressWarnings("unchecked")
+            K k = (K) key;
+            previous = null;
+            found = false;
+            root = remove(root, k);
+            removedMin = null;
+            return previous;
+        }
+
+        /**
+         * Ends the batch and returns a new map holding its result. The transient cannot be used
+         * afterwards.
+         * @return a new map holding the mappings of this transient
+         */
+        public PersistentAVLTreeMap<K, V> persistent() {
+            return new PersistentAVLTreeMap<>(finish(), false);
+        }
+
+        private Node<K, V> finish() {
+            checkOwner();
+            owner = null;
+            Node<K, V> result = root;
+            root = null;
+            return result;
+        }
+
+        private void checkOwner() {
+            if (owner == null) {
+                throw new IllegalStateException("transient used after persistent()");
+            }
+        }
+
+        // Returns the node itself if this transient owns it, otherwise a copy that it does own
+        private Node<K, V> editable(Node<K, V> node) {
+            return node.owner == owner ? node : new Node<>(node, owner);
+        }
+
+        private Node<K, V> put(Node<K, V> node, K key, V value) {
+            if (node == null) {
+                return new Node<>(key, value, owner);
+            }
+            int cmp = key.compareTo(node.key);
+            if (cmp == 0) {
+                found = true;
+                previous = node.value;
+                if (node.value == value) {
+                    return node;
+                }
+                Node<K, V> copy = editable(node);
+                copy.value = value;
+                return copy;
+            }
+            Node<K, V> oldChild = cmp < 0 ? node.left : node.right;
+            Node<K, V> child = put(oldChild, key, value);
+            if (found && child == oldChild) {
+                // Only a value changed, and it was changed in place below here
+                return node;
+            }
+            Node<K, V> copy = editable(node);
+            if (cmp < 0) {
+                copy.left = child;
+            } else {
+                copy.right = child;
+            }
+            return found ? copy : balance(copy);
+        }
+
+        private Node<K, V> remove(Node<K, V> node, K key) {
+            if (node == null) {
+                return null;
+            }
+            int cmp = key.compareTo(node.key);
+            if (cmp == 0) {
+                found = true;
+                previous = node.value;
+                if (node.left == null) {
+                    return node.right;
+                }
+                if (node.right == null) {
+                    return node.left;
+                }
+                // Replace the node with its successor, taken out of the right subtree
+                Node<K, V> right = removeMin(node.right);
+                Node<K, V> successor = editable(removedMin);
+                successor.left = node.left;
+                successor.right = right;
+                return balance(successor);
+            }
+            Node<K, V> child = remove(cmp < 0 ? node.left : node.right, key);
+            if (!found) {
+                return node;
+            }
+            Node<K, V> copy = editable(node);
+            if (cmp < 0) {
+                copy.left = child;
+            } else {
+                copy.right = child;
+            }
+            return balance(copy);
+        }
+
+        private Node<K, V> removeMin(Node<K, V> node) {
+            if (node.left == null) {
+                removedMin = node;
+                return node.right;
+            }
+            Node<K, V> copy = editable(node);
+            copy.left = removeMin(node.left);
+            return balance(copy);
+        }
+
+        // Updates an owned node and rotates its subtree if its children's heights differ by more than one
+        private Node<K, V> balance(Node<K, V> node) {
+            update(node);
+            int balance = height(node.left) - height(node.right);
+            if (balance > 1) {
+                if (height(node.left.left) < height(node.left.right)) {
+                    node.left = rotateLeft(editable(node.left));
+                }
+                return rotateRight(node);
+            }
+            if (balance < -1) {
+                if (height(node.right.right) < height(node.right.left)) {
+                    node.right = rotateRight(editable(node.right));
+                }
+                return rotateLeft(node);
+            }
+            return node;
+        }
+
+        private Node<K, V> rotateLeft(Node<K, V> node) {
+            Node<K, V> right = editable(node.right);
+            node.right = right.left;
+            right.left = node;
+            update(node);
+            update(right);
+            return right;
+        }
+
+        private Node<K, V> rotateRight(Node<K, V> node) {
+            Node<K, V> left = editable(node.left);
+            node.left = left.right;
+            left.right = node;
+            update(node);
+            update(left);
+            return left;
+        }
+
+        private static void update(Node<?, ?> node) {
+            node.height = Math.max(height(node.left), height(node.right)) + 1;
+            node.size = PersistentAVLTreeMap.size(node.left) + PersistentAVLTreeMap.size(node.right) + 1;
+        }
+    }
+
+    /**
+     * An in-order iterator over one version of a tree, optionally bounded.
+     */
+    private static final class EntryIterator<K extends Comparable<K>, V> implements Iterator<Map.Entry<K, V>> {
+        private final K hi;
+        private final boolean hiInclusive;
+        /**
+         * The map to remove from, or null if removal is not supported.
+         */
+        private final PersistentAVLTreeMap<K, V> owner;
+        private final ArrayDeque<Node<K, V>> stack = new ArrayDeque<>();
+        private Node<K, V> lastReturned;
+
+        EntryIterator(Node<K, V> root, K lo, boolean loInclusive, K hi, boolean hiInclusive,
+                PersistentAVLTreeMap<K, V> owner) {
+            this.hi = hi;
+            this.hiInclusive = hiInclusive;
+            this.owner = owner;
+            // Push the nodes at or after the low bound on the path to it
+            Node<K, V> node = root;
+            while (node != null) {
+                int cmp = lo == null ? -1 : lo.compareTo(node.key);
+                if (cmp < 0 || cmp == 0 && loInclusive) {
+                    stack.push(node);
+                    node = cmp == 0 ? null : node.left;
+                } else {
+                    node = node.right;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            Node<K, V> next = stack.peek();
+            if (next == null || hi == null) {
+                return next != null;
+            }
+            int cmp = next.key.compareTo(hi);
+            return cmp < 0 || cmp == 0 && hiInclusive;
+        }
+
+        @Override
+        public Map.Entry<K, V> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Node<K, V> node = stack.pop();
+            for (Node<K, V> child = node.right; child != null; child = child.left) {
+                stack.push(child);
+            }
+            lastReturned = node;
+            return export(node);
+        }
+
+        @Override
+        public void remove() {
+            if (owner == null) {
+                throw new UnsupportedOperationException("snapshot is read-only");
+            }
+            if (lastReturned == null) {
+                throw new IllegalStateException();
+            }
+            owner.remove(lastReturned.key);
+            lastReturned = null;
+        }
+    }
+
+    /**
+     * A view of a range of keys in a map. Every read starts from the map's current root, so the
+     * view follows updates to the map; updates through the view go to the map.
+     */
+    private static final class SubMap<K extends Comparable<K>, V> extends AbstractMap<K, V> implements SortedMap<K, V> {
+        private final PersistentAVLTreeMap<K, V> map;
+        private final K lo;
+        private final boolean loInclusive;
+        private final K hi;
+        private final boolean hiInclusive;
+
+        SubMap(PersistentAVLTreeMap<K, V> map, K lo, boolean loInclusive, K hi, boolean hiInclusive) {
+            this.map = map;
+            this.lo = lo;
+            this.loInclusive = loInclusive;
+            this.hi = hi;
+            this.hiInclusive = hiInclusive;
+        }
+
+        private boolean inRange(K key) {
+            if (lo != null) {
+                int cmp = key.compareTo(lo);
+                if (cmp < 0 || cmp == 0 && !loInclusive) {
+                    return false;
+                }
+            }
+            if (hi != null) {
+                int cmp = key.compareTo(hi);
+                return cmp < 0 || cmp == 0 && hiInclusive;
+            }
+            return true;
+        }
+
+        @Override
+        public V get(Object key) {
+            Node<K, V> node = find(map.root, key);
+            return node != null && inRange(node.key) ? node.value : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            Node<K, V> node = find(map.root, key);
+            return node != null && inRange(node.key);
+        }
+
+        // Puts into the backing map, which throws if it is a snapshot
+        @Override
+        public V put(K key, V value) {
+            if (!inRange(Objects.requireNonNull(key, "Key cannot be null"))) {
+                throw new IllegalArgumentException("key out of range");
+            }
+            return map.put(key, value);
+        }
+
+        @Override
+        public V remove(Object key) {
+            Node<K, V> node = find(map.root, key);
+            return node != null && inRange(node.key) ? map.remove(key) : null;
+        }
+
+        @Override
+        public int size() {
+            Node<K, V> root = map.root;
+            int below = hi == null ? PersistentAVLTreeMap.size(root) : countBelow(root, hi, hiInclusive);
+            int before = lo == null ? 0 : countBelow(root, lo, !loInclusive);
+            return Math.max(0, below - before);
+        }
+
+        @Override
+        public Set<Map.Entry<K, V>> entrySet() {
+            return new AbstractSet<Map.Entry<K, V>>() {
+                @Override
+                public Iterator<Map.Entry<K, V>> iterator() {
+                    return new EntryIterator<>(map.root, lo, loInclusive, hi, hiInclusive, map.readOnly ? null : map);
+                }
+
+                @Override
+                public int size() {
+                    return SubMap.this.size();
+                }
+            };
+        }
+
+        @Override
+        public Comparator<? super K> comparator() {
+            return null;
+        }
+
+        @Override
+        public K firstKey() {
+            Node<K, V> root = map.root;
+            Node<K, V> node = lo == null ? nearNode(root, null, true, true) : nearNode(root, lo, true, loInclusive);
+            if (node == null || !inRange(node.key)) {
+                throw new NoSuchElementException();
+            }
+            return node.key;
+        }
+
+        @Override
+        public K lastKey() {
+            Node<K, V> root = map.root;
+            Node<K, V> node = hi == null ? nearNode(root, null, false, true) : nearNode(root, hi, false, hiInclusive);
+            if (node == null || !inRange(node.key)) {
+                throw new NoSuchElementException();
+            }
+            return node.key;
+        }
+
+        // Checks a bound for a nested view, which may equal an exclusive bound of this view only if it is exclusive too
+        private K checkBound(K key, boolean inclusive) {
+            boolean outside = inclusive
+                    ? !inRange(key)
+                    : lo != null && key.compareTo(lo) < 0 || hi != null && key.compareTo(hi) > 0;
+            if (outside) {
+                throw new IllegalArgumentException("key out of range");
+            }
+            return key;
+        }
+
+        @Override
+        public SortedMap<K, V> subMap(K fromKey, K toKey) {
+            if (checkBound(fromKey, true).compareTo(checkBound(toKey, false)) > 0) {
+                throw new IllegalArgumentException("fromKey > toKey");
+            }
+            return new SubMap<>(map, fromKey, true, toKey, false);
+        }
+
+        @Override
+        public SortedMap<K, V> headMap(K toKey) {
+            return new SubMap<>(map, lo, loInclusive, checkBound(toKey, false), false);
+        }
+
+        @Override
+        public SortedMap<K, V> tailMap(K fromKey) {
+            return new SubMap<>(map, checkBound(fromKey, true), true, hi, hiInclusive);
+        }
+    }
+}
@@ -0,0 +1,543 @@
+package question_2;
+
+import java.util.*;
+
+/**
+ * An implementation of a SortedMap using an AVL tree whose nodes live in a pooled slab of
+ * parallel arrays instead of one object per entry. Children are referenced by int index, and the
+ * slots of removed entries go on a free list that later insertions reuse, so a map with steady
+ * churn stops allocating once its arrays have grown to fit and leaves nothing behind for the
+ * garbage collector. {@link #compact()} renumbers the nodes in search order and trims the slab.
+ *
+ * <p>The map behaves like {@link AVLTreeMap} through the SortedMap interface. Keys are ordered
+ * by their natural ordering and may not be null, and the iterators fail fast.
+ * @param <K> the type of keys in this map
+ * @param <V> the type of values in this map
+ */
+public class PooledAVLTreeMap<K extends Comparable<K>, V> extends AbstractMap<K, V> implements SortedMap<K, V> {
+
+    /**
+     * The slab: the tree shape from ArrayAVLTree plus arrays of keys and values.
+     */
+    private static final class Slab extends ArrayAVLTree {
+        Object[] keys;
+        Object[] values;
+
+        Slab(int initialCapacity) {
+            super(initialCapacity);
+            keys = new Object[left.length];
+            values = new Object[left.length];
+        }
+
+        @Override
+        void resize(int capacity) {
+            keys = Arrays.copyOf(keys, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+
+        @Override
+        void relocate(int[] order, int capacity) {
+            Object[] newKeys = new Object[capacity];
+            Object[] newValues = new Object[capacity];
+            for (int i = 1; i < capacity; i++) {
+                newKeys[i] = keys[order[i]];
+                newValues[i] = values[order[i]];
+            }
+            keys = newKeys;
+            values = newValues;
+        }
+
+        @Override
+        void clearSlot(int node) {
+            keys[node] = null;
+            values[node] = null;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        int compareNodes(int a, int b) {
+            return ((Comparable<Object>) keys[a]).compareTo(keys[b]);
+        }
+    }
+
+    private final Slab slab;
+
+    /**
+     * Constructs an empty PooledAVLTreeMap.
+     */
+    public PooledAVLTreeMap() {
+        this(16);
+    }
+
+    /**
+     * Constructs an empty PooledAVLTreeMap whose slab has room for the given number of entries.
+     * @param initialCapacity the number of entries to make room for
+     */
+    public PooledAVLTreeMap(int initialCapacity) {
+        slab = new Slab(initialCapacity);
+    }
+
+    /**
+     * Constructs a new PooledAVLTreeMap containing the same mappings as the given map.
+     * @param map the map whose mappings are to be placed in this map
+     */
+    public PooledAVLTreeMap(Map<? extends K, ? extends V> map) {
+        this(map.size());
+        putAll(map);
+    }
+
+    /**
+     * Renumbers the nodes in depth-first order and trims the slab to the current number of
+     * entries, so that searches and scans walk forward through memory. Takes O(n) time; the
+     * slab grows again as needed on later insertions.
+     */
+    public void compact() {
+        slab.compact();
+    }
+
+    @SuppressWarnings("unchecked")
+    private K key(int node) {
+        return (K) slab.keys[node];
+    }
+
+    @SuppressWarnings("unchecked")
+    private V value(int node) {
+        return (V) slab.values[node];
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K> K comparable(Object key) {
+        if (key == null) {
+            throw new NullPointerException("Key cannot be null");
+        }
+        return (K) key;
+    }
+
+    // Returns the node holding the key, or NIL
+    private int find(Object key) {
+        K k = comparable(key);
+        Slab slab = this.slab;
+        int node = slab.root;
+        while (node != ArrayAVLTree.NIL) {
+            int cmp = k.compareTo(key(node));
+            if (cmp == 0) {
+                return node;
+            }
+            node = cmp < 0 ? slab.left[node] : slab.right[node];
+        }
+        return ArrayAVLTree.NIL;
+    }
+
+    /**
+     * Returns the node whose key is closest to the given key in one direction.
+     * @param key the key to search from
+     * @param above true to find the nearest key above, false to find the nearest key below
+     * @param inclusive true if a node holding the key itself qualifies
+     * @return the nearest qualifying node, or NIL if there is none
+     */
+    private int nearNode(K key, boolean above, boolean inclusive) {
+        Slab slab = this.slab;
+        int best = ArrayAVLTree.NIL;
+        int node = slab.root;
+        while (node != ArrayAVLTree.NIL) {
+            int cmp = key.compareTo(key(node));
+            if (cmp == 0 && inclusive) {
+                return node;
+            }
+            if (above ? cmp < 0 : cmp > 0) {
+                best = node;
+                node = above ? slab.left[node] : slab.right[node];
+            } else {
+                node = above ? slab.right[node] : slab.left[node];
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns the number of key-value mappings in this map.
+     * @return the number of key-value mappings in this map
+     */
+    @Override
+    public int size() {
+        return slab.size();
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped, or null if this map contains no mapping for the key.
+     * @param key the key whose associated value is to be returned
+     * @return the value to which the specified key is mapped, or null if this map contains no mapping for the key
+     * @throws ClassCastException if the specified key cannot be compared with the keys currently in the map
+     * @throws NullPointerException if the specified key is null
+     */
+    @Override
+    public V get(Object key) {
+        int node = find(key);
+        return node == ArrayAVLTree.NIL ? null : value(node);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return find(key) != ArrayAVLTree.NIL;
+    }
+
+    /**
+     * Associates the specified value with the specified key in this map, taking a slot from the
+     * free list if there is one.
+     * @param key the key with which the specified value is to be associated
+     * @param value the value to be associated with the specified key
+     * @return the previous value associated with key, or null if there was no mapping for key
+     * @throws NullPointerException if the specified key is null
+     */
+    @Override
+    public V put(K key, V value) {
+        comparable(key);
+        Slab slab = this.slab;
+        int[] path = slab.path;
+        int depth = 0;
+        int node = slab.root;
+        boolean asLeft = false;
+        while (node != ArrayAVLTree.NIL) {
+            int cmp = key.compareTo(key(node));
+            if (cmp == 0) {
+                V oldValue = value(node);
+                slab.values[node] = value;
+                return oldValue;
+            }
+            path[depth++] = node;
+            asLeft = cmp < 0;
+            node = asLeft ? slab.left[node] : slab.right[node];
+        }
+        int leaf = slab.allocate();
+        slab.keys[leaf] = key;
+        slab.values[leaf] = value;
+        slab.linkLeaf(depth, leaf, asLeft);
+        return null;
+    }
+
+    /**
+     * Removes the mapping for a key from this map if it is present, returning its slot to the free list.
+     * @param key the key whose mapping is to be removed from the map
+     * @return the previous value associated with key, or null if there was no mapping for key
+     */
+    @Override
+    public V remove(Object key) {
+        K k = comparable(key);
+        Slab slab = this.slab;
+        int[] path = slab.path;
+        int depth = 0;
+        int node = slab.root;
+        while (node != ArrayAVLTree.NIL) {
+            int cmp = k.compareTo(key(node));
+            path[depth++] = node;
+            if (cmp == 0) {
+                V oldValue = value(node);
+                slab.unlink(depth);
+                return oldValue;
+            }
+            node = cmp < 0 ? slab.left[node] : slab.right[node];
+        }
+        return null;
+    }
+
+    /**
+     * Removes all of the mappings from this map, keeping the slab for reuse.
+     */
+    @Override
+    public void clear() {
+        slab.clear();
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        return new EntrySet(null, null);
+    }
+
+    @Override
+    public Comparator<? super K> comparator() {
+        return null;
+    }
+
+    /**
+     * Returns the first (lowest) key currently in this map.
+     * @return the first key
+     * @throws NoSuchElementException if this map is empty
+     */
+    @Override
+    public K firstKey() {
+        return keyOf(slab.firstNode());
+    }
+
+    /**
+     * Returns the last (highest) key currently in this map.
+     * @return the last key
+     * @throws NoSuchElementException if this map is empty
+     */
+    @Override
+    public K lastKey() {
+        return keyOf(slab.lastNode());
+    }
+
+    private K keyOf(int node) {
+        if (node == ArrayAVLTree.NIL) {
+            throw new NoSuchElementException();
+        }
+        return key(node);
+    }
+
+    @Override
+    public SortedMap<K, V> subMap(K fromKey, K toKey) {
+        if (fromKey.compareTo(toKey) > 0) {
+            throw new IllegalArgumentException("fromKey > toKey");
+        }
+        return new SubMap(fromKey, toKey);
+    }
+
+    @Override
+    public SortedMap<K, V> headMap(K toKey) {
+        return new SubMap(null, comparable(toKey));
+    }
+
+    @Override
+    public SortedMap<K, V> tailMap(K fromKey) {
+        return new SubMap(comparable(fromKey), null);
+    }
+
+    /**
+     * A map entry that reads and writes through to a slot, as long as the slot still holds its key.
+     */
+    private final class Entry implements Map.Entry<K, V> {
+        private final int node;
+        private final K key;
+
+        Entry(int node) {
+            this.node = node;
+            this.key = key(node);
+        }
+
+        @Override
+        public K getKey() {
+            return key;
+        }
+
+        @Override
+        public V getValue() {
+            return slab.keys[node] == key ? value(node) : get(key);
+        }
+
+        @Override
+        public V setValue(V value) {
+            if (slab.keys[node] != key) {
+                return put(key, value);
+            }
+            V oldValue = value(node);
+            slab.values[node] = value;
+            return oldValue;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            return key.equals(e.getKey()) && Objects.equals(getValue(), e.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return key.hashCode() ^ Objects.hashCode(getValue());
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + getValue();
+        }
+    }
+
+    /**
+     * Iterates over the entries from a start key up to but excluding a fence key.
+     */
+    private final class EntryIterator extends ArrayAVLTree.NodeIterator implements Iterator<Map.Entry<K, V>> {
+        private final K fence;
+
+        EntryIterator(K start, K fence) {
+            slab.super(start == null ? slab.firstNode() : nearNode(start, true, true));
+            this.fence = fence;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (!super.hasNext()) {
+                return false;
+            }
+            return fence == null || key(peek()).compareTo(fence) < 0;
+        }
+
+        @Override
+        public Map.Entry<K, V> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return new Entry(nextNode());
+        }
+    }
+
+    /**
+     * The entries of the map or of a sub-map, with keys from an inclusive low bound up to an
+     * exclusive high bound, where a null bound means unbounded.
+     */
+    private final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+        private final K lo;
+        private final K hi;
+
+        EntrySet(K lo, K hi) {
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        public Iterator<Map.Entry<K, V>> iterator() {
+            return new EntryIterator(lo, hi);
+        }
+
+        @Override
+        public int size() {
+            if (lo == null && hi == null) {
+                return slab.size();
+            }
+            int count = 0;
+            for (Iterator<Map.Entry<K, V>> it = iterator(); it.hasNext(); it.next()) {
+                count++;
+            }
+            return count;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+            Object key = entry.getKey();
+            if (key == null || !inRange(comparable(key), lo, hi)) {
+                return false;
+            }
+            int node = find(key);
+            return node != ArrayAVLTree.NIL && Objects.equals(value(node), entry.getValue());
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            if (!contains(o)) {
+                return false;
+            }
+            PooledAVLTreeMap.this.remove(((Map.Entry<?, ?>) o).getKey());
+            return true;
+        }
+    }
+
+    private static <K extends Comparable<K>> boolean inRange(K key, K lo, K hi) {
+        return (lo == null || key.compareTo(lo) >= 0) && (hi == null || key.compareTo(hi) < 0);
+    }
+
+    /**
+     * A view of the mappings whose keys fall between an inclusive low bound and an exclusive high
+     * bound, backed by the map.
+     */
+    private final class SubMap extends AbstractMap<K, V> implements SortedMap<K, V> {
+        private final K lo;
+        private final K hi;
+
+        SubMap(K lo, K hi) {
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        private boolean inRange(Object key) {
+            return PooledAVLTreeMap.inRange(PooledAVLTreeMap.<K>comparable(key), lo, hi);
+        }
+
+        @Override
+        public int size() {
+            return entrySet().size();
+        }
+
+        @Override
+        public V get(Object key) {
+            return inRange(key) ? PooledAVLTreeMap.this.get(key) : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return inRange(key) && PooledAVLTreeMap.this.containsKey(key);
+        }
+
+        @Override
+        public V put(K key, V value) {
+            if (!inRange(key)) {
+                throw new IllegalArgumentException("key out of range");
+            }
+            return PooledAVLTreeMap.this.put(key, value);
+        }
+
+        @Override
+        public V remove(Object key) {
+            return inRange(key) ? PooledAVLTreeMap.this.remove(key) : null;
+        }
+
+        @Override
+        public Set<Map.Entry<K, V>> entrySet() {
+            return new EntrySet(lo, hi);
+        }
+
+        @Override
+        public Comparator<? super K> comparator() {
+            return null;
+        }
+
+        @Override
+        public K firstKey() {
+            int node = lo == null ? slab.firstNode() : nearNode(lo, true, true);
+            if (node == ArrayAVLTree.NIL || !inRange(key(node))) {
+                throw new NoSuchElementException();
+            }
+            return key(node);
+        }
+
+        @Override
+        public K lastKey() {
+            int node = hi == null ? slab.lastNode() : nearNode(hi, false, false);
+            if (node == ArrayAVLTree.NIL || !inRange(key(node))) {
+                throw new NoSuchElementException();
+            }
+            return key(node);
+        }
+
+        // Checks a bound for a nested view, which may equal this view's high bound
+        private K checkBound(K key, boolean isHigh) {
+            if (!inRange(key) && !(isHigh && hi != null && key.compareTo(hi) == 0)) {
+                throw new IllegalArgumentException("key out of range");
+            }
+            return key;
+        }
+
+        @Override
+        public SortedMap<K, V> subMap(K fromKey, K toKey) {
+            if (checkBound(fromKey, false).compareTo(checkBound(toKey, true)) > 0) {
+                throw new IllegalArgumentException("fromKey > toKey");
+            }
+            return new SubMap(fromKey, toKey);
+        }
+
+        @Override
+        public SortedMap<K, V> headMap(K toKey) {
+            return new SubMap(lo, checkBound(toKey, true));
+        }
+
+        @Override
+        public SortedMap<K, V> tailMap(K fromKey) {
+            return new SubMap(checkBound(fromKey, false), hi);
+        }
+    }
+}